@@ -2,20 +2,34 @@ package com.bocrace;
 
 import com.bocrace.command.BOCRaceCommand;
 import com.bocrace.command.CourseCommandHandler;
+import com.bocrace.db.CourseAnalytics;
 import com.bocrace.db.DatabaseManager;
+import com.bocrace.db.DatabaseMigrator;
 import com.bocrace.db.DbDispatcher;
+import com.bocrace.db.LeaderboardCache;
 import com.bocrace.db.PlayerDao;
+import com.bocrace.db.PlayerProfileCache;
 import com.bocrace.db.QueryDao;
+import com.bocrace.db.RankIndex;
 import com.bocrace.db.RunDao;
+import com.bocrace.db.RunExporter;
+import com.bocrace.db.RunRetention;
+import com.bocrace.db.SchemaBackfill;
+import com.bocrace.db.SqliteBackup;
+import com.bocrace.db.SqliteMaintenance;
 import com.bocrace.listener.CourseButtonListener;
 import com.bocrace.listener.PlayerLifecycleListener;
 import com.bocrace.listener.SetupListener;
 import com.bocrace.runtime.DropBlockManager;
+import com.bocrace.runtime.DropJournal;
 import com.bocrace.runtime.RaceDetectionTask;
 import com.bocrace.runtime.RaceManager;
+import com.bocrace.runtime.RaceStandings;
 import com.bocrace.setup.SetupSessionManager;
 import com.bocrace.storage.CourseManager;
 import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitTask;
 
@@ -25,6 +39,8 @@ public class BOCRacingV2 extends JavaPlugin {
     private CourseManager courseManager;
     private RaceManager raceManager;
     private DropBlockManager dropBlockManager;
+    private DropJournal dropJournal;
+    private RaceStandings raceStandings;
     private com.bocrace.util.BoatManager boatManager;
     private BukkitTask detectionTask;
     private DebugLog debugLog;
@@ -33,6 +49,16 @@ public class BOCRacingV2 extends JavaPlugin {
     private RunDao runDao;
     private PlayerDao playerDao;
     private QueryDao queryDao;
+    private SchemaBackfill schemaBackfill;
+    private CourseAnalytics courseAnalytics;
+    private RunRetention runRetention;
+    private SqliteMaintenance sqliteMaintenance;
+    private SqliteBackup sqliteBackup;
+    private DatabaseMigrator databaseMigrator;
+    private LeaderboardCache leaderboardCache;
+    private RankIndex rankIndex;
+    private PlayerProfileCache playerProfileCache;
+    private RunExporter runExporter;
 
     @Override
     public void onEnable() {
@@ -51,7 +77,46 @@ public class BOCRacingV2 extends JavaPlugin {
             databaseManager.initialize();
             this.runDao = new RunDao(this, databaseManager.getDataSource(), dbDispatcher);
             this.playerDao = new PlayerDao(this, databaseManager.getDataSource(), dbDispatcher);
-            this.queryDao = new QueryDao(this, databaseManager.getDataSource(), dbDispatcher);
+            this.queryDao = new QueryDao(this, databaseManager.getReadDataSource());
+            this.leaderboardCache = new LeaderboardCache(this, queryDao);
+            this.rankIndex = new RankIndex(this, queryDao);
+            rankIndex.load();
+            this.playerProfileCache = new PlayerProfileCache(this, queryDao);
+            runDao.addListener(playerProfileCache);
+            // Players already online (plugin reload) never fire a join event
+            for (Player online : Bukkit.getOnlinePlayers()) {
+                playerProfileCache.prefetch(online.getUniqueId(), online.getName());
+            }
+            this.runExporter = new RunExporter(this, databaseManager.getReadDataSource());
+            // Copy pre-v2 history in the background (no-op once finished)
+            this.schemaBackfill = new SchemaBackfill(this, databaseManager.getDataSource(), dbDispatcher);
+            schemaBackfill.start();
+            // Roll settled runs up into per-course analytics in the background
+            this.courseAnalytics = new CourseAnalytics(this, databaseManager.getReadDataSource(),
+                databaseManager.getDataSource(), dbDispatcher);
+            courseAnalytics.start();
+            // Retire old aborted/DQ runs into counters (only if database.retention.enabled)
+            this.runRetention = new RunRetention(this, databaseManager.getDataSource(), dbDispatcher);
+            runRetention.start();
+            if (databaseManager.getSqliteProfile() != null) {
+                // WAL checkpoint/optimize when idle, plus the optional startup benchmark
+                this.sqliteMaintenance = new SqliteMaintenance(this, databaseManager.getDataSource(), dbDispatcher,
+                    databaseManager.getSqliteProfile());
+                sqliteMaintenance.start();
+                if (getConfig().getBoolean("database.sqlite.benchmark.onStartup", true)) {
+                    sqliteMaintenance.benchmark(getConfig().getInt("database.sqlite.benchmark.rows", 2000))
+                        .thenAccept(result -> getLogger().info(String.format(
+                            "SQLite benchmark (%d rows): %d inserts/s, %d lookups/s, %d top-10 queries/s",
+                            result.getRows(), result.getInsertsPerSecond(), result.getLookupsPerSecond(),
+                            result.getTopTenPerSecond())));
+                }
+                // Online backups (VACUUM INTO from a read connection) on a schedule, rotated in backups/
+                this.sqliteBackup = new SqliteBackup(this, databaseManager.getReadDataSource(),
+                    databaseManager.getSqliteProfile());
+                sqliteBackup.start();
+                // /bocrace db migrate: copy this database into the database.mysql block
+                this.databaseMigrator = new DatabaseMigrator(this, databaseManager);
+            }
         } catch (Exception e) {
             getLogger().severe("Failed to initialize database: " + e.getMessage());
             e.printStackTrace();
@@ -62,7 +127,11 @@ public class BOCRacingV2 extends JavaPlugin {
         this.setupSessionManager = new SetupSessionManager();
         this.courseManager = new CourseManager(this);
         this.raceManager = new RaceManager();
-        this.dropBlockManager = new DropBlockManager(this);
+        // Heal any drop holes left by a crash, then journal new drops
+        this.dropJournal = new DropJournal(this);
+        dropJournal.replay();
+        this.dropBlockManager = new DropBlockManager(this, dropJournal);
+        this.raceStandings = new RaceStandings(this);
         this.boatManager = new com.bocrace.util.BoatManager(this);
         
         // Create command handler
@@ -112,6 +181,12 @@ public class BOCRacingV2 extends JavaPlugin {
         if (dropBlockManager != null) {
             dropBlockManager.clearAll();
         }
+        if (dropJournal != null) {
+            dropJournal.close();
+        }
+        if (raceStandings != null) {
+            raceStandings.clearAll();
+        }
         if (boatManager != null) {
             boatManager.cleanupAllRaceBoats();
         }
@@ -119,11 +194,49 @@ public class BOCRacingV2 extends JavaPlugin {
             raceManager.clearAll();
         }
         
+        if (schemaBackfill != null) {
+            schemaBackfill.stop();
+        }
+        if (playerProfileCache != null) {
+            playerProfileCache.close();
+        }
+        if (runExporter != null) {
+            runExporter.stop();
+        }
+        if (courseAnalytics != null) {
+            courseAnalytics.close();
+        }
+        if (runRetention != null) {
+            runRetention.close();
+        }
+        if (sqliteMaintenance != null) {
+            sqliteMaintenance.close();
+        }
+        if (sqliteBackup != null) {
+            sqliteBackup.close();
+        }
+        if (databaseMigrator != null) {
+            databaseMigrator.stop();
+        }
+        
+        // Queue the final last_seen batch before the dispatcher drains
+        if (playerDao != null) {
+            playerDao.close();
+        }
+        
         // Shutdown database dispatcher
         if (dbDispatcher != null) {
             dbDispatcher.shutdown();
         }
         
+        // Keep run writes that never reached the database in the outbox for next startup
+        if (runDao != null) {
+            runDao.close();
+        }
+        if (queryDao != null) {
+            queryDao.close();
+        }
+        
         // Close database
         if (databaseManager != null) {
             databaseManager.close();
@@ -153,6 +266,10 @@ public class BOCRacingV2 extends JavaPlugin {
         return dropBlockManager;
     }
     
+    public RaceStandings getRaceStandings() {
+        return raceStandings;
+    }
+    
     public com.bocrace.util.BoatManager getBoatManager() {
         return boatManager;
     }
@@ -180,4 +297,44 @@ public class BOCRacingV2 extends JavaPlugin {
     public QueryDao getQueryDao() {
         return queryDao;
     }
+    
+    public SchemaBackfill getSchemaBackfill() {
+        return schemaBackfill;
+    }
+    
+    public CourseAnalytics getCourseAnalytics() {
+        return courseAnalytics;
+    }
+    
+    public RunRetention getRunRetention() {
+        return runRetention;
+    }
+    
+    public SqliteMaintenance getSqliteMaintenance() {
+        return sqliteMaintenance;
+    }
+    
+    public SqliteBackup getSqliteBackup() {
+        return sqliteBackup;
+    }
+    
+    public DatabaseMigrator getDatabaseMigrator() {
+        return databaseMigrator;
+    }
+    
+    public LeaderboardCache getLeaderboardCache() {
+        return leaderboardCache;
+    }
+    
+    public RankIndex getRankIndex() {
+        return rankIndex;
+    }
+    
+    public PlayerProfileCache getPlayerProfileCache() {
+        return playerProfileCache;
+    }
+    
+    public RunExporter getRunExporter() {
+        return runExporter;
+    }
 }
@@ -1,13 +1,23 @@
 package com.bocrace.command;
 
 import com.bocrace.BOCRacingV2;
+import com.bocrace.db.DatabaseMigrator;
+import com.bocrace.db.Period;
+import com.bocrace.db.PeriodCalendar;
 import com.bocrace.db.QueryDao;
+import com.bocrace.db.RankIndex;
+import com.bocrace.db.RunExporter;
 import com.bocrace.model.CourseType;
 import com.bocrace.model.Course;
 import com.bocrace.setup.SetupSession;
 import com.bocrace.setup.SetupSessionManager;
 import com.bocrace.storage.CourseManager;
 import com.bocrace.util.CourseValidator;
+import com.bocrace.util.MainThreadExecutor;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.event.ClickEvent;
+import net.kyori.adventure.text.event.HoverEvent;
+import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
@@ -20,8 +30,10 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -29,14 +41,20 @@ import java.util.stream.Collectors;
  */
 public class CourseCommandHandler implements CommandExecutor, TabCompleter {
     
+    private static final int PAGE_SIZE = 10;
+    
     private final BOCRacingV2 plugin;
     private final SetupSessionManager sessionManager;
     private final CourseManager courseManager;
+    private final MainThreadExecutor mainThread;
+    private final PageCursors pageCursors;
     
     public CourseCommandHandler(BOCRacingV2 plugin, SetupSessionManager sessionManager, CourseManager courseManager) {
         this.plugin = plugin;
         this.sessionManager = sessionManager;
         this.courseManager = courseManager;
+        this.mainThread = new MainThreadExecutor(plugin);
+        this.pageCursors = new PageCursors();
     }
     
     @Override
@@ -63,8 +81,12 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
                 return handleStats(sender, args);
             case "player":
                 return handlePlayer(sender, args);
+            case "analytics":
+                return handleAnalytics(sender, args);
             case "delete":
                 return handleDelete(sender, args);
+            case "db":
+                return handleDb(sender, args);
             default:
                 sendHelp(sender);
                 return true;
@@ -80,8 +102,15 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
         sender.sendMessage("§a/bocrace validate <name> §7- Check course validation");
         sender.sendMessage("§a/bocrace delete <name> §7- Delete a course");
         sender.sendMessage("§a/bocrace cancel §7- Cancel current armed action");
-        sender.sendMessage("§a/bocrace stats <course> §7- Show top times for a course");
-        sender.sendMessage("§a/bocrace player <name|uuid> [course] §7- Show player stats");
+        sender.sendMessage("§a/bocrace stats <course> [daily|weekly|season | page <n>] §7- Show top times for a course");
+        sender.sendMessage("§a/bocrace player <name|uuid> [course | page <n>] §7- Show player stats");
+        sender.sendMessage("§a/bocrace analytics <course> §7- Show completion/DQ rates and median/p90 times");
+        sender.sendMessage("§a/bocrace db stats §7- Show database queue and read metrics");
+        sender.sendMessage("§a/bocrace db rebuildpb §7- Rebuild personal bests from run history");
+        sender.sendMessage("§a/bocrace db export <csv|jsonl> [gzip] §7- Export run history to plugins/BOCRacingV2/exports");
+        sender.sendMessage("§a/bocrace db benchmark [rows] §7- Measure SQLite insert/query throughput on a scratch file");
+        sender.sendMessage("§a/bocrace db backup §7- Back up the SQLite database to plugins/BOCRacingV2/backups");
+        sender.sendMessage("§a/bocrace db migrate [verify] §7- Copy the SQLite database into the database.mysql server");
         sender.sendMessage("§7Note: Setup actions are filtered by course mode (SOLO/MP)");
         sender.sendMessage("§7Note: Courses are saved immediately. Incomplete courses are blocked from use.");
     }
@@ -555,7 +584,7 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
         }
         
         if (args.length < 2) {
-            sender.sendMessage("§cUsage: /bocrace stats <course>");
+            sender.sendMessage("§cUsage: /bocrace stats <course> [daily|weekly|season | page <n>]");
             return true;
         }
         
@@ -567,36 +596,139 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
         }
         
         String courseKey = course.getName();
-        Future<List<QueryDao.TopTime>> future = plugin.getQueryDao().getTopTimes(courseKey, 10);
-        
-        // Wait for result (with timeout)
+        Period period = args.length == 3 ? Period.fromName(args[2]) : null;
+        if (period != null) {
+            return handlePeriodStats(sender, courseKey, period);
+        }
+        int page = parsePage(sender, args, 2, "/bocrace stats <course> [daily|weekly|season | page <n>]");
+        if (page < 1) {
+            return true;
+        }
+        String view = "stats:" + courseKey;
+        PageCursors.Cursor cursor = page > 1 ? pageCursors.get(sender, view, page) : null;
+        if (page > 1 && cursor == null) {
+            sender.sendMessage("§7That page has expired. Showing page 1.");
+            page = 1;
+        }
+        int shownPage = page;
         sender.sendMessage("§7Loading top times for §e" + courseKey + "§7...");
         
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                List<QueryDao.TopTime> topTimes = future.get(5, TimeUnit.SECONDS);
-                
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    sender.sendMessage("§6=== Top Times: " + courseKey + " ===");
-                    if (topTimes.isEmpty()) {
-                        sender.sendMessage("§7No finished runs yet.");
-                    } else {
-                        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-                        for (int i = 0; i < topTimes.size(); i++) {
-                            QueryDao.TopTime entry = topTimes.get(i);
-                            String timeStr = formatTime(entry.getDurationMillis());
-                            String dateStr = dateFormat.format(new Date(entry.getFinishMillis()));
-                            sender.sendMessage("§e" + (i + 1) + ". §f" + entry.getPlayerName() + " §7- §a" + timeStr + " §7(" + dateStr + ")");
-                        }
-                    }
-                });
-            } catch (Exception e) {
-                plugin.getLogger().warning("Failed to get top times: " + e.getMessage());
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    sender.sendMessage("§cFailed to load stats.");
-                });
+        // Page 1 is served from the leaderboard cache when warm; later pages continue after the cursor (keyset, no OFFSET)
+        CompletableFuture<List<QueryDao.TopTime>> load = cursor == null
+            ? plugin.getLeaderboardCache().getTopTimes(courseKey, PAGE_SIZE)
+            : plugin.getQueryDao().getTopTimesAfter(courseKey, cursor.getSortMillis(), cursor.getRunId(), PAGE_SIZE + 1);
+        load.whenCompleteAsync((topTimes, error) -> {
+            if (error != null) {
+                sendQueryFailure(sender, "top times", error);
+                return;
             }
-        });
+            // Later pages read one extra row to know if there is more; a full first page offers "Next" anyway
+            boolean hasMore = shownPage == 1 ? topTimes.size() == PAGE_SIZE : topTimes.size() > PAGE_SIZE;
+            List<QueryDao.TopTime> rows = topTimes.subList(0, Math.min(PAGE_SIZE, topTimes.size()));
+            sender.sendMessage("§6=== Top Times: " + courseKey + (shownPage > 1 ? " (page " + shownPage + ")" : "") + " ===");
+            if (rows.isEmpty()) {
+                sender.sendMessage(shownPage == 1 ? "§7No finished runs yet." : "§7No more times.");
+            } else {
+                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+                int first = (shownPage - 1) * PAGE_SIZE;
+                for (int i = 0; i < rows.size(); i++) {
+                    QueryDao.TopTime entry = rows.get(i);
+                    String timeStr = formatTime(entry.getDurationMillis());
+                    String dateStr = dateFormat.format(new Date(entry.getFinishMillis()));
+                    sender.sendMessage("§e" + (first + i + 1) + ". §f" + entry.getPlayerName() + " §7- §a" + timeStr + " §7(" + dateStr + ")");
+                }
+                if (hasMore) {
+                    QueryDao.TopTime last = rows.get(rows.size() - 1);
+                    pageCursors.put(sender, view, shownPage + 1, new PageCursors.Cursor(last.getDurationMillis(), last.getRunId()));
+                }
+            }
+            sendPageLinks(sender, "/bocrace stats " + courseKey, shownPage, hasMore && !rows.isEmpty());
+        }, mainThread.forSender(sender));
+        
+        return true;
+    }
+    
+    /**
+     * Current day/week/season board for a course, one best per player (from period_bests)
+     */
+    private boolean handlePeriodStats(CommandSender sender, String courseKey, Period period) {
+        if (plugin.getRunDao() == null) {
+            sender.sendMessage("§cDatabase is not available.");
+            return true;
+        }
+        PeriodCalendar calendar = plugin.getRunDao().getPeriodCalendar();
+        int bucket = calendar.bucket(period, System.currentTimeMillis());
+        String title = period.name().charAt(0) + period.name().substring(1).toLowerCase();
+        sender.sendMessage("§7Loading " + title.toLowerCase() + " top times for §e" + courseKey + "§7...");
+        
+        plugin.getQueryDao().getPeriodTopTimes(courseKey, period, bucket, PAGE_SIZE).whenCompleteAsync((topTimes, error) -> {
+            if (error != null) {
+                sendQueryFailure(sender, "top times", error);
+                return;
+            }
+            sender.sendMessage("§6=== " + title + " Top Times: " + courseKey + " (" + calendar.label(period, bucket) + ") ===");
+            if (topTimes.isEmpty()) {
+                sender.sendMessage("§7No finished runs in this period yet.");
+                return;
+            }
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+            for (int i = 0; i < topTimes.size(); i++) {
+                QueryDao.TopTime entry = topTimes.get(i);
+                String timeStr = formatTime(entry.getDurationMillis());
+                String dateStr = dateFormat.format(new Date(entry.getFinishMillis()));
+                sender.sendMessage("§e" + (i + 1) + ". §f" + entry.getPlayerName() + " §7- §a" + timeStr + " §7(" + dateStr + ")");
+            }
+        }, mainThread.forSender(sender));
+        
+        return true;
+    }
+    
+    private boolean handleAnalytics(CommandSender sender, String[] args) {
+        if (!hasPermission(sender, "bocrace.admin")) {
+            sender.sendMessage("§cYou don't have permission to view analytics!");
+            return true;
+        }
+        
+        if (plugin.getQueryDao() == null) {
+            sender.sendMessage("§cDatabase is not available.");
+            return true;
+        }
+        
+        if (args.length < 2) {
+            sender.sendMessage("§cUsage: /bocrace analytics <course>");
+            return true;
+        }
+        
+        Course course = courseManager.findCourse(args[1]);
+        if (course == null) {
+            sender.sendMessage("§cCourse not found: " + args[1]);
+            return true;
+        }
+        
+        String courseKey = course.getName();
+        plugin.getQueryDao().getCourseStats(courseKey).whenCompleteAsync((stats, error) -> {
+            if (error != null) {
+                sendQueryFailure(sender, "course analytics", error);
+                return;
+            }
+            sender.sendMessage("§6=== Analytics: " + courseKey + " ===");
+            if (stats == null || stats.getTotalRuns() == 0) {
+                sender.sendMessage("§7No runs rolled up yet. Runs are counted once they are "
+                    + plugin.getConfig().getLong("database.analytics.settleMinutes", 60) + " minutes old.");
+                return;
+            }
+            double total = stats.getTotalRuns();
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+            sender.sendMessage("§7Runs: §f" + stats.getTotalRuns() + " §7(started before "
+                + dateFormat.format(new Date(stats.getRolledUpToMillis())) + ")");
+            sender.sendMessage(String.format("§7Completion: §a%.1f%% §7| DQ: §c%.1f%% §7| Aborted: §e%.1f%% §7| Unfinished: §f%.1f%%",
+                stats.getFinishedRuns() * 100 / total, stats.getDqRuns() * 100 / total,
+                stats.getAbortedRuns() * 100 / total, stats.getUnfinishedRuns() * 100 / total));
+            if (stats.getMedianMillis() >= 0) {
+                sender.sendMessage("§7Median: §f~" + formatTime(stats.getMedianMillis())
+                    + " §7| p90: §f~" + formatTime(stats.getP90Millis()));
+            }
+        }, mainThread.forSender(sender));
         
         return true;
     }
@@ -607,13 +739,13 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        if (plugin.getQueryDao() == null) {
+        if (plugin.getPlayerProfileCache() == null) {
             sender.sendMessage("§cDatabase is not available.");
             return true;
         }
         
         if (args.length < 2) {
-            sender.sendMessage("§cUsage: /bocrace player <name|uuid> [course]");
+            sender.sendMessage("§cUsage: /bocrace player <name|uuid> [course | page <n>]");
             return true;
         }
         
@@ -634,7 +766,8 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
             }
         }
         
-        if (args.length >= 3) {
+        UUID lookupUuid = playerUuid;
+        if (args.length >= 3 && !args[2].equalsIgnoreCase("page")) {
             // Show best time for specific course
             String courseName = args[2];
             Course course = courseManager.findCourse(courseName);
@@ -644,78 +777,432 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
             }
             
             String courseKey = course.getName();
-            Future<QueryDao.TopTime> future = plugin.getQueryDao().getPlayerBest(courseKey, playerUuid);
-            
             sender.sendMessage("§7Loading best time for §e" + identifier + " §7on §e" + courseKey + "§7...");
             
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-                try {
-                    QueryDao.TopTime best = future.get(5, TimeUnit.SECONDS);
-                    
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        sender.sendMessage("§6=== Best Time: " + identifier + " ===");
-                        sender.sendMessage("§7Course: §e" + courseKey);
-                        if (best == null) {
-                            sender.sendMessage("§7No finished runs yet.");
-                        } else {
-                            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-                            String timeStr = formatTime(best.getDurationMillis());
-                            String dateStr = dateFormat.format(new Date(best.getFinishMillis()));
-                            sender.sendMessage("§aBest: §f" + timeStr + " §7(" + dateStr + ")");
-                        }
-                    });
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to get player best: " + e.getMessage());
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        sender.sendMessage("§cFailed to load stats.");
-                    });
+            plugin.getPlayerProfileCache().getOrLoad(playerUuid).whenCompleteAsync((profile, error) -> {
+                if (error != null) {
+                    sendQueryFailure(sender, "player best", error);
+                    return;
+                }
+                QueryDao.TopTime best = profile.getBests().get(courseKey);
+                sender.sendMessage("§6=== Best Time: " + identifier + " ===");
+                sender.sendMessage("§7Course: §e" + courseKey);
+                if (best == null) {
+                    sender.sendMessage("§7No finished runs yet.");
+                } else {
+                    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+                    String timeStr = formatTime(best.getDurationMillis());
+                    String dateStr = dateFormat.format(new Date(best.getFinishMillis()));
+                    sender.sendMessage("§aBest: §f" + timeStr + " §7(" + dateStr + ")");
+                    RankIndex.Rank rank = plugin.getRankIndex() != null ? plugin.getRankIndex().getRank(courseKey, lookupUuid) : null;
+                    if (rank != null) {
+                        sender.sendMessage(String.format("§7Rank: §e#%d §7of §f%d §7(top %.1f%%)",
+                            rank.getRank(), rank.getTotal(), rank.getTopPercent()));
+                    }
                 }
-            });
+            }, mainThread.forSender(sender));
         } else {
-            // Show recent runs
-            Future<List<QueryDao.PlayerRun>> future = plugin.getQueryDao().getPlayerRecentRuns(playerUuid, 10);
-            
+            // Show run history, newest first
+            int page = parsePage(sender, args, 2, "/bocrace player <name|uuid> [course | page <n>]");
+            if (page < 1) {
+                return true;
+            }
+            String view = "player:" + playerUuid;
+            PageCursors.Cursor cursor = page > 1 ? pageCursors.get(sender, view, page) : null;
+            if (page > 1 && cursor == null) {
+                sender.sendMessage("§7That page has expired. Showing page 1.");
+                page = 1;
+            }
+            int shownPage = page;
+            String baseCommand = "/bocrace player " + identifier;
             sender.sendMessage("§7Loading recent runs for §e" + identifier + "§7...");
             
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-                try {
-                    List<QueryDao.PlayerRun> runs = future.get(5, TimeUnit.SECONDS);
-                    
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        sender.sendMessage("§6=== Recent Runs: " + identifier + " ===");
-                        if (runs.isEmpty()) {
-                            sender.sendMessage("§7No runs found.");
-                        } else {
-                            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-                            for (int i = 0; i < runs.size(); i++) {
-                                QueryDao.PlayerRun run = runs.get(i);
-                                String statusColor = run.getStatus().equals("FINISHED") ? "§a" : 
-                                                    run.getStatus().equals("ABORTED") ? "§c" : "§7";
-                                String statusStr = statusColor + run.getStatus();
-                                String courseKey = run.getCourseKey();
-                                
-                                if (run.getStatus().equals("FINISHED")) {
-                                    String timeStr = formatTime(run.getDurationMillis());
-                                    String dateStr = dateFormat.format(new Date(run.getFinishMillis()));
-                                    sender.sendMessage("§e" + (i + 1) + ". §f" + courseKey + " §7- §a" + timeStr + " §7(" + dateStr + ") " + statusStr);
-                                } else {
-                                    sender.sendMessage("§e" + (i + 1) + ". §f" + courseKey + " §7- " + statusStr);
-                                }
-                            }
+            if (cursor == null) {
+                // Page 1 comes from the profile cache (warm for online players)
+                plugin.getPlayerProfileCache().getOrLoad(playerUuid).whenCompleteAsync((profile, error) -> {
+                    if (error != null) {
+                        sendQueryFailure(sender, "player recent runs", error);
+                        return;
+                    }
+                    List<QueryDao.PlayerRun> recent = profile.getRecentRuns();
+                    List<QueryDao.PlayerRun> rows = recent.subList(0, Math.min(PAGE_SIZE, recent.size()));
+                    sender.sendMessage("§6=== Recent Runs: " + identifier + " ===");
+                    sender.sendMessage("§7Runs: §f" + profile.getTotalRuns() + " §7(§a" + profile.getFinishedRuns()
+                        + " §7finished, §f" + profile.getBests().size() + " §7courses)");
+                    sendRunsPage(sender, view, baseCommand, 1, rows, profile.getTotalRuns() > rows.size());
+                }, mainThread.forSender(sender));
+            } else {
+                plugin.getQueryDao().getPlayerRunsBefore(lookupUuid, cursor.getSortMillis(), cursor.getRunId(), PAGE_SIZE + 1)
+                    .whenCompleteAsync((runs, error) -> {
+                        if (error != null) {
+                            sendQueryFailure(sender, "player runs", error);
+                            return;
                         }
-                    });
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to get player recent runs: " + e.getMessage());
-                    Bukkit.getScheduler().runTask(plugin, () -> {
-                        sender.sendMessage("§cFailed to load stats.");
-                    });
+                        sender.sendMessage("§6=== Recent Runs: " + identifier + " (page " + shownPage + ") ===");
+                        sendRunsPage(sender, view, baseCommand, shownPage, runs.subList(0, Math.min(PAGE_SIZE, runs.size())),
+                            runs.size() > PAGE_SIZE);
+                    }, mainThread.forSender(sender));
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * One page of a player's run history, plus the cursor and links for the next page
+     */
+    private void sendRunsPage(CommandSender sender, String view, String baseCommand, int page,
+                              List<QueryDao.PlayerRun> runs, boolean hasMore) {
+        if (runs.isEmpty()) {
+            sender.sendMessage(page == 1 ? "§7No runs found." : "§7No more runs.");
+        } else {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+            int first = (page - 1) * PAGE_SIZE;
+            for (int i = 0; i < runs.size(); i++) {
+                QueryDao.PlayerRun run = runs.get(i);
+                String statusColor = run.getStatus().equals("FINISHED") ? "§a" : 
+                                    run.getStatus().equals("ABORTED") ? "§c" : "§7";
+                String statusStr = statusColor + run.getStatus();
+                String courseKey = run.getCourseKey();
+                
+                if (run.getStatus().equals("FINISHED")) {
+                    String timeStr = formatTime(run.getDurationMillis());
+                    String dateStr = dateFormat.format(new Date(run.getFinishMillis()));
+                    sender.sendMessage("§e" + (first + i + 1) + ". §f" + courseKey + " §7- §a" + timeStr + " §7(" + dateStr + ") " + statusStr);
+                } else {
+                    sender.sendMessage("§e" + (first + i + 1) + ". §f" + courseKey + " §7- " + statusStr);
+                }
+            }
+            if (hasMore) {
+                QueryDao.PlayerRun last = runs.get(runs.size() - 1);
+                pageCursors.put(sender, view, page + 1, new PageCursors.Cursor(last.getCreatedMillis(), last.getRunId()));
+            }
+        }
+        sendPageLinks(sender, baseCommand, page, hasMore && !runs.isEmpty());
+    }
+    
+    /**
+     * Page number from a trailing "page <n>" argument (1 if absent, -1 after sending usage if malformed)
+     */
+    private int parsePage(CommandSender sender, String[] args, int index, String usage) {
+        if (args.length <= index) {
+            return 1;
+        }
+        if (args[index].equalsIgnoreCase("page") && args.length == index + 2) {
+            try {
+                int page = Integer.parseInt(args[index + 1]);
+                if (page >= 1) {
+                    return page;
+                }
+            } catch (NumberFormatException ignored) {
+                // Falls through to usage
+            }
+        }
+        sender.sendMessage("§cUsage: " + usage);
+        return -1;
+    }
+    
+    /**
+     * Clickable "« Prev | Page n | Next »" line under paged output (each link runs baseCommand + " page <n>")
+     */
+    private void sendPageLinks(CommandSender sender, String baseCommand, int page, boolean hasMore) {
+        if (page == 1 && !hasMore) {
+            return;
+        }
+        Component prev = page > 1
+            ? pageLink("« Prev", baseCommand + " page " + (page - 1))
+            : Component.text("« Prev", NamedTextColor.DARK_GRAY);
+        Component next = hasMore
+            ? pageLink("Next »", baseCommand + " page " + (page + 1))
+            : Component.text("Next »", NamedTextColor.DARK_GRAY);
+        sender.sendMessage(Component.text()
+            .append(prev)
+            .append(Component.text(" | Page " + page + " | ", NamedTextColor.GRAY))
+            .append(next)
+            .build());
+    }
+    
+    private Component pageLink(String label, String command) {
+        return Component.text(label, NamedTextColor.AQUA)
+            .clickEvent(ClickEvent.runCommand(command))
+            .hoverEvent(HoverEvent.showText(Component.text(command, NamedTextColor.GRAY)));
+    }
+    
+    /**
+     * The real failure behind an async error (CompletableFuture wraps it in a CompletionException)
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+    
+    /**
+     * Report a failed stats query (timeout, busy read path or database error)
+     */
+    private void sendQueryFailure(CommandSender sender, String what, Throwable error) {
+        Throwable cause = unwrap(error);
+        plugin.getLogger().warning("Failed to get " + what + ": " + cause);
+        if (cause instanceof TimeoutException) {
+            sender.sendMessage("§cStats query timed out. Try again shortly.");
+        } else if (cause instanceof RejectedExecutionException) {
+            sender.sendMessage("§cDatabase is busy. Try again shortly.");
+        } else {
+            sender.sendMessage("§cFailed to load stats.");
+        }
+    }
+    
+    private boolean handleDb(CommandSender sender, String[] args) {
+        if (!hasPermission(sender, "bocrace.admin")) {
+            sender.sendMessage("§cYou don't have permission to manage the database!");
+            return true;
+        }
+        
+        if (plugin.getDbDispatcher() == null) {
+            sender.sendMessage("§cDatabase is not available.");
+            return true;
+        }
+        
+        String action = args.length >= 2 ? args[1].toLowerCase() : "";
+        switch (action) {
+            case "stats":
+                sender.sendMessage("§6=== Database Queue ===");
+                sendMetrics(sender, plugin.getDbDispatcher().getMetrics());
+                if (plugin.getQueryDao() != null) {
+                    sender.sendMessage("§6=== Database Reads ===");
+                    sendMetrics(sender, plugin.getQueryDao().getMetrics());
+                }
+                if (plugin.getLeaderboardCache() != null) {
+                    sender.sendMessage("§6=== Leaderboard Cache ===");
+                    sendMetrics(sender, plugin.getLeaderboardCache().getMetrics());
+                }
+                if (plugin.getRankIndex() != null) {
+                    sender.sendMessage("§6=== Rank Index ===");
+                    sendMetrics(sender, plugin.getRankIndex().getMetrics());
+                }
+                if (plugin.getPlayerProfileCache() != null) {
+                    sender.sendMessage("§6=== Profile Cache ===");
+                    sendMetrics(sender, plugin.getPlayerProfileCache().getMetrics());
+                }
+                if (plugin.getRunExporter() != null && plugin.getRunExporter().isRunning()) {
+                    sender.sendMessage("§6=== Run Export ===");
+                    sendMetrics(sender, plugin.getRunExporter().getMetrics());
+                }
+                if (plugin.getCourseAnalytics() != null) {
+                    sender.sendMessage("§6=== Course Analytics ===");
+                    sendMetrics(sender, plugin.getCourseAnalytics().getMetrics());
+                }
+                if (plugin.getRunRetention() != null && plugin.getRunRetention().isEnabled()) {
+                    sender.sendMessage("§6=== Run Retention ===");
+                    sendMetrics(sender, plugin.getRunRetention().getMetrics());
+                }
+                if (plugin.getSqliteMaintenance() != null) {
+                    sender.sendMessage("§6=== SQLite ===");
+                    sendMetrics(sender, plugin.getSqliteMaintenance().getMetrics());
                 }
-            });
+                if (plugin.getSqliteBackup() != null) {
+                    sender.sendMessage("§6=== Backups ===");
+                    sendMetrics(sender, plugin.getSqliteBackup().getMetrics());
+                }
+                if (plugin.getDatabaseMigrator() != null && plugin.getDatabaseMigrator().isRunning()) {
+                    sender.sendMessage("§6=== MySQL Migration ===");
+                    sendMetrics(sender, plugin.getDatabaseMigrator().getMetrics());
+                }
+                if (plugin.getSchemaBackfill() != null && !plugin.getSchemaBackfill().isDone()) {
+                    sender.sendMessage("§6=== Schema Backfill ===");
+                    sendMetrics(sender, plugin.getSchemaBackfill().getMetrics());
+                }
+                return true;
+            case "rebuildpb":
+                if (plugin.getRunDao() == null) {
+                    sender.sendMessage("§cDatabase is not available.");
+                    return true;
+                }
+                sender.sendMessage("§7Rebuilding personal bests from run history...");
+                plugin.getRunDao().rebuildPersonalBests().whenCompleteAsync((rows, error) -> {
+                    if (error != null) {
+                        plugin.getLogger().warning("Failed to rebuild personal bests: " + error);
+                        sender.sendMessage("§cFailed to rebuild personal bests. See the server log.");
+                        return;
+                    }
+                    sender.sendMessage("§aRebuilt §f" + rows + " §apersonal bests.");
+                    if (plugin.getRankIndex() != null) {
+                        plugin.getRankIndex().load();
+                    }
+                    if (plugin.getPlayerProfileCache() != null) {
+                        plugin.getPlayerProfileCache().clear();
+                    }
+                }, mainThread.forSender(sender));
+                return true;
+            case "export":
+                return handleDbExport(sender, args);
+            case "benchmark":
+                return handleDbBenchmark(sender, args);
+            case "backup":
+                return handleDbBackup(sender);
+            case "migrate":
+                return handleDbMigrate(sender, args);
+            default:
+                sender.sendMessage("§cUsage: /bocrace db <stats|rebuildpb|export|benchmark|backup|migrate>");
+                return true;
+        }
+    }
+    
+    /**
+     * /bocrace db benchmark [rows] - run the SQLite profile benchmark and report the result to the sender
+     */
+    private boolean handleDbBenchmark(CommandSender sender, String[] args) {
+        if (plugin.getSqliteMaintenance() == null) {
+            sender.sendMessage("§cThe benchmark is only available with SQLite.");
+            return true;
+        }
+        int rows = plugin.getConfig().getInt("database.sqlite.benchmark.rows", 2000);
+        if (args.length >= 3) {
+            try {
+                rows = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage("§cUsage: /bocrace db benchmark [rows]");
+                return true;
+            }
         }
         
+        sender.sendMessage("§7Running SQLite benchmark...");
+        plugin.getSqliteMaintenance().benchmark(rows).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                sender.sendMessage("§cBenchmark failed: " + cause.getMessage());
+                return;
+            }
+            sender.sendMessage("§6=== SQLite Benchmark (" + result.getRows() + " rows) ===");
+            sendMetrics(sender, result.describe());
+        }, mainThread.forSender(sender));
         return true;
     }
     
+    /**
+     * /bocrace db backup - take an online backup of the SQLite database and report it to the sender
+     */
+    private boolean handleDbBackup(CommandSender sender) {
+        if (plugin.getSqliteBackup() == null) {
+            sender.sendMessage("§cOnline backups are only available with SQLite.");
+            return true;
+        }
+        
+        sender.sendMessage("§7Backing up the database...");
+        plugin.getSqliteBackup().backup().whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                if (cause instanceof IllegalStateException) {
+                    sender.sendMessage("§cA backup is already running.");
+                } else {
+                    plugin.getLogger().warning("Database backup failed: " + cause);
+                    sender.sendMessage("§cBackup failed. See the server log.");
+                }
+                return;
+            }
+            sender.sendMessage(String.format("§aBacked up the database to §f%s §7(%.1f MB in %.1fs)",
+                result.getFile().getName(), result.getBytes() / (1024.0 * 1024.0), result.getElapsedMillis() / 1000.0));
+        }, mainThread.forSender(sender));
+        return true;
+    }
+    
+    /**
+     * /bocrace db migrate [verify] - copy the SQLite database into MySQL (resumable), then verify both sides
+     */
+    private boolean handleDbMigrate(CommandSender sender, String[] args) {
+        if (plugin.getDatabaseMigrator() == null) {
+            sender.sendMessage("§cMigration copies the SQLite database into MySQL; the server is not using SQLite.");
+            return true;
+        }
+        boolean verifyOnly = args.length >= 3 && args[2].equalsIgnoreCase("verify");
+        if ((args.length >= 3 && !verifyOnly) || args.length > 3) {
+            sender.sendMessage("§cUsage: /bocrace db migrate [verify]");
+            return true;
+        }
+        
+        sender.sendMessage(verifyOnly
+            ? "§7Comparing the SQLite database with MySQL..."
+            : "§7Migrating the SQLite database to MySQL (database.mysql)...");
+        plugin.getDatabaseMigrator().migrate(verifyOnly, (table, rows) ->
+            mainThread.forSender(sender).execute(() -> sender.sendMessage("§7Copied §f" + rows + " §7rows of §e" + table))
+        ).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                if (cause instanceof IllegalStateException) {
+                    sender.sendMessage("§c" + cause.getMessage() + ".");
+                } else {
+                    plugin.getLogger().warning("Database migration failed: " + cause);
+                    sender.sendMessage("§cMigration failed. See the server log; run it again to resume.");
+                }
+                return;
+            }
+            sender.sendMessage("§6=== Verification (" + result.getTarget() + ") ===");
+            for (DatabaseMigrator.TableReport table : result.getTables()) {
+                sender.sendMessage(String.format("%s%s§7: §f%d§7/§f%d §7rows, checksum §f%s§7/§f%s",
+                    table.matches() ? "§a" : "§c", table.getTable(), table.getSourceRows(), table.getTargetRows(),
+                    table.getSourceChecksum(), table.getTargetChecksum()));
+            }
+            if (result.isVerified()) {
+                sender.sendMessage(String.format("§aMySQL matches SQLite (%.1fs). Set database.type to MYSQL and restart.",
+                    result.getElapsedMillis() / 1000.0));
+            } else {
+                sender.sendMessage("§cSome tables differ. Rows written or deleted while copying are caught up by " +
+                                   "the next run; migrate again with no races running.");
+            }
+        }, mainThread.forSender(sender));
+        return true;
+    }
+    
+    /**
+     * /bocrace db export <csv|jsonl> [gzip] - stream the run history to a file, reporting progress to the sender
+     */
+    private boolean handleDbExport(CommandSender sender, String[] args) {
+        if (plugin.getRunExporter() == null) {
+            sender.sendMessage("§cDatabase is not available.");
+            return true;
+        }
+        RunExporter.Format format = null;
+        if (args.length >= 3) {
+            for (RunExporter.Format candidate : RunExporter.Format.values()) {
+                if (candidate.getExtension().equalsIgnoreCase(args[2])) {
+                    format = candidate;
+                }
+            }
+        }
+        boolean gzip = args.length >= 4 && args[3].equalsIgnoreCase("gzip");
+        if (format == null || (args.length >= 4 && !gzip) || args.length > 4) {
+            sender.sendMessage("§cUsage: /bocrace db export <csv|jsonl> [gzip]");
+            return true;
+        }
+        
+        sender.sendMessage("§7Exporting run history as §e" + format.getExtension() + (gzip ? ".gz" : "") + "§7...");
+        plugin.getRunExporter().export(format, gzip, (written, total) ->
+            mainThread.forSender(sender).execute(() -> sender.sendMessage(String.format(
+                "§7Export: §f%d§7/§f%d §7runs (%.0f%%)", written, total, total > 0 ? written * 100.0 / total : 100.0)))
+        ).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                Throwable cause = unwrap(error);
+                if (cause instanceof IllegalStateException) {
+                    sender.sendMessage("§cAn export is already running.");
+                } else {
+                    plugin.getLogger().warning("Run export failed: " + cause);
+                    sender.sendMessage("§cExport failed. See the server log.");
+                }
+                return;
+            }
+            sender.sendMessage(String.format("§aExported §f%d §aruns (§f%d §asplits) to §f%s §7(%.1f MB in %.1fs)",
+                result.getRuns(), result.getSplits(), result.getFile().getName(),
+                result.getBytes() / (1024.0 * 1024.0), result.getElapsedMillis() / 1000.0));
+        }, mainThread.forSender(sender));
+        return true;
+    }
+    
+    private void sendMetrics(CommandSender sender, Map<String, Object> metrics) {
+        for (Map.Entry<String, Object> e : metrics.entrySet()) {
+            Object value = e.getValue();
+            String valueStr = value instanceof Double ? String.format("%.2f", (Double) value) : String.valueOf(value);
+            sender.sendMessage("§7" + e.getKey() + ": §f" + valueStr);
+        }
+    }
+    
     /**
      * Handle SetBoatType command (special: command-based, not click-based)
      */
@@ -831,7 +1318,7 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
         }
         
         if (args.length == 1) {
-            return Arrays.asList("create", "setup", "status", "validate", "delete", "cancel", "stats", "player").stream()
+            return Arrays.asList("create", "setup", "status", "validate", "delete", "cancel", "stats", "player", "analytics", "db").stream()
                 .filter(cmd -> cmd.startsWith(args[0].toLowerCase()))
                 .collect(Collectors.toList());
         }
@@ -844,11 +1331,15 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
                     .collect(Collectors.toList());
             } else if (subCommand.equals("setup") || subCommand.equals("status") || 
                        subCommand.equals("validate") || subCommand.equals("stats") ||
-                       subCommand.equals("delete")) {
+                       subCommand.equals("analytics") || subCommand.equals("delete")) {
                 // Complete course names
                 return courseManager.listAllCourses().stream()
                     .filter(name -> name.toLowerCase().startsWith(args[1].toLowerCase()))
                     .collect(Collectors.toList());
+            } else if (subCommand.equals("db")) {
+                return Arrays.asList("stats", "rebuildpb", "export", "benchmark", "backup", "migrate").stream()
+                    .filter(action -> action.startsWith(args[1].toLowerCase()))
+                    .collect(Collectors.toList());
             } else if (subCommand.equals("player")) {
                 // Complete player names (only online players for simplicity)
                 return Bukkit.getOnlinePlayers().stream()
@@ -900,10 +1391,20 @@ public class CourseCommandHandler implements CommandExecutor, TabCompleter {
                     }
                 }
             } else if (subCommand.equals("player") && args.length == 3) {
-                // Complete course names for player command
-                return courseManager.listAllCourses().stream()
+                // Complete course names (or "page") for player command
+                List<String> options = new ArrayList<>(courseManager.listAllCourses());
+                options.add("page");
+                return options.stream()
                     .filter(name -> name.toLowerCase().startsWith(args[2].toLowerCase()))
                     .collect(Collectors.toList());
+            } else if (subCommand.equals("stats")) {
+                return Arrays.asList("daily", "weekly", "season", "page").stream()
+                    .filter(option -> option.startsWith(args[2].toLowerCase()))
+                    .collect(Collectors.toList());
+            } else if (subCommand.equals("db") && args[1].equalsIgnoreCase("export")) {
+                return Arrays.asList("csv", "jsonl").stream()
+                    .filter(format -> format.startsWith(args[2].toLowerCase()))
+                    .collect(Collectors.toList());
             }
         }
         
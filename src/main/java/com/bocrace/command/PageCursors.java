@@ -0,0 +1,83 @@
+package com.bocrace.command;
+
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Short-lived keyset cursors for paged command output, per viewer and view
+ * After showing page n, the position of its last row is stored as the start of page n + 1, so
+ * next/prev links can continue with a keyset query instead of an OFFSET scan. Sessions expire
+ * a few minutes after they were last used
+ */
+class PageCursors {
+    
+    private static final long TTL_MILLIS = 5 * 60 * 1000L;
+    
+    /**
+     * Position of the last row shown: its sort value (duration or created time) and run id
+     */
+    static final class Cursor {
+        private final long sortMillis;
+        private final String runId;
+        
+        Cursor(long sortMillis, String runId) {
+            this.sortMillis = sortMillis;
+            this.runId = runId;
+        }
+        
+        long getSortMillis() { return sortMillis; }
+        String getRunId() { return runId; }
+    }
+    
+    private static final class Session {
+        private final Map<Integer, Cursor> pageStarts = new HashMap<>();
+        private long touchedMillis;
+    }
+    
+    private final Map<String, Session> sessions = new HashMap<>();
+    
+    /**
+     * Cursor to start the given page from (null if the viewer never reached it or it expired)
+     */
+    synchronized Cursor get(CommandSender viewer, String view, int page) {
+        long now = System.currentTimeMillis();
+        Session session = sessions.get(key(viewer, view));
+        if (session == null || now - session.touchedMillis > TTL_MILLIS) {
+            return null;
+        }
+        session.touchedMillis = now;
+        return session.pageStarts.get(page);
+    }
+    
+    /**
+     * Remember where the given page starts (storing page 2 means page 1 was shown again, which restarts the session)
+     */
+    synchronized void put(CommandSender viewer, String view, int page, Cursor cursor) {
+        long now = System.currentTimeMillis();
+        purgeExpired(now);
+        Session session = sessions.computeIfAbsent(key(viewer, view), k -> new Session());
+        if (page == 2) {
+            session.pageStarts.clear();
+        }
+        session.pageStarts.put(page, cursor);
+        session.touchedMillis = now;
+    }
+    
+    private void purgeExpired(long now) {
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().touchedMillis > TTL_MILLIS) {
+                it.remove();
+            }
+        }
+    }
+    
+    private static String key(CommandSender viewer, String view) {
+        String viewerId = viewer instanceof Player ? ((Player) viewer).getUniqueId().toString() : viewer.getName();
+        return viewerId + "|" + view;
+    }
+}
@@ -0,0 +1,295 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background rollup of runs into course_stats and course_duration_histogram (/bocrace analytics)
+ * Every intervalSeconds, runs past the stored runs.id high-water mark are read from the read pool in id
+ * order up to the first one younger than settleMinutes, summed per course in memory, and applied together
+ * with the new high-water mark in one low-priority writer transaction, so each run is counted exactly once,
+ * in the status it had when it settled. The mark is the insert order, not created_millis: runs held in the
+ * outbox through an outage arrive with an old created_millis but a new id, and are still counted.
+ * Waits for the v1 backfill, whose copied runs keep their old created_millis
+ */
+public class CourseAnalytics {
+    
+    /**
+     * Width of a course_duration_histogram bucket (median and p90 are accurate to half of this)
+     */
+    public static final long BUCKET_MILLIS = 100;
+    
+    private static final String STATE = "course_stats";
+    
+    /**
+     * Counts added to one course by a batch
+     */
+    private static final class Delta {
+        private long total;
+        private long finished;
+        private long aborted;
+        private long dq;
+        private final Map<Integer, Long> histogram = new HashMap<>();
+    }
+    
+    /**
+     * Runs read by one batch and the high-water mark before and after them
+     * (high_water_millis only records how far the rollup has got, for display)
+     */
+    private static final class Batch {
+        private final Map<Long, Delta> courses = new HashMap<>();
+        private long fromMillis;
+        private long fromId;
+        private long toMillis;
+        private long toId;
+        private int runs;
+        private boolean caughtUp; // Stopped at a run that has not settled, or at the newest run
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final DataSource readDataSource;
+    private final DataSource writeDataSource;
+    private final DbDispatcher dispatcher;
+    private final int batchSize;
+    private final long intervalTicks;
+    private final long settleMillis;
+    private final String statsSql;
+    private final String histogramSql;
+    private final AtomicBoolean running;
+    private final AtomicLong rolledUpRuns;
+    private volatile long highWaterMillis;
+    private volatile long lastRollupMillis;
+    private BukkitTask task;
+    
+    public CourseAnalytics(BOCRacingV2 plugin, DataSource readDataSource, DataSource writeDataSource, DbDispatcher dispatcher) {
+        this.plugin = plugin;
+        this.readDataSource = readDataSource;
+        this.writeDataSource = writeDataSource;
+        this.dispatcher = dispatcher;
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("database.analytics.batchSize", 1000));
+        this.intervalTicks = Math.max(1, plugin.getConfig().getLong("database.analytics.intervalSeconds", 60)) * 20L;
+        this.settleMillis = Math.max(1, plugin.getConfig().getLong("database.analytics.settleMinutes", 60)) * 60_000L;
+        
+        boolean mysql = "MYSQL".equalsIgnoreCase(plugin.getConfig().getString("database.type", "SQLITE"));
+        this.statsSql = "INSERT INTO course_stats (course_id, total_runs, finished_runs, aborted_runs, dq_runs) " +
+            "VALUES (?, ?, ?, ?, ?) " + (mysql
+                ? "ON DUPLICATE KEY UPDATE total_runs = total_runs + VALUES(total_runs), " +
+                  "finished_runs = finished_runs + VALUES(finished_runs), aborted_runs = aborted_runs + VALUES(aborted_runs), " +
+                  "dq_runs = dq_runs + VALUES(dq_runs)"
+                : "ON CONFLICT(course_id) DO UPDATE SET total_runs = total_runs + excluded.total_runs, " +
+                  "finished_runs = finished_runs + excluded.finished_runs, aborted_runs = aborted_runs + excluded.aborted_runs, " +
+                  "dq_runs = dq_runs + excluded.dq_runs");
+        this.histogramSql = "INSERT INTO course_duration_histogram (course_id, bucket, runs) VALUES (?, ?, ?) " + (mysql
+            ? "ON DUPLICATE KEY UPDATE runs = runs + VALUES(runs)"
+            : "ON CONFLICT(course_id, bucket) DO UPDATE SET runs = runs + excluded.runs");
+        
+        this.running = new AtomicBoolean();
+        this.rolledUpRuns = new AtomicLong();
+    }
+    
+    /**
+     * Start the periodic rollup (first pass after one interval)
+     */
+    public void start() {
+        this.task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::rollup, intervalTicks, intervalTicks);
+    }
+    
+    public void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    /**
+     * Snapshot of rollup progress (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("rolledUpRuns", rolledUpRuns.get());
+        metrics.put("highWaterAgeSeconds", highWaterMillis > 0 ? (now - highWaterMillis) / 1000 : -1);
+        metrics.put("lastRollupSecondsAgo", lastRollupMillis > 0 ? (now - lastRollupMillis) / 1000 : -1);
+        metrics.put("settleMinutes", settleMillis / 60_000L);
+        return metrics;
+    }
+    
+    /**
+     * Roll up every settled run past the high-water mark (Bukkit async thread)
+     */
+    private void rollup() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            SchemaBackfill backfill = plugin.getSchemaBackfill();
+            if (backfill != null && !backfill.isDone()) {
+                return;
+            }
+            long cutoff = System.currentTimeMillis() - settleMillis;
+            int total = 0;
+            Batch batch;
+            do {
+                batch = read(cutoff);
+                if (batch.runs > 0 && !apply(batch)) {
+                    break;
+                }
+                total += batch.runs;
+            } while (!batch.caughtUp && !dispatcher.isShutdown());
+            lastRollupMillis = System.currentTimeMillis();
+            
+            if (total > 0) {
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("runs", total);
+                kv.put("highWaterMillis", highWaterMillis);
+                plugin.getDebugLog().debug(DebugLog.Tag.DATA, "CourseAnalytics", "Runs rolled up", kv);
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                // Shed while the writer is busy (or shut down); the next interval picks up from the same mark
+                return;
+            }
+            plugin.getDebugLog().error("CourseAnalytics", "Rollup failed (will retry)", e);
+        } catch (SQLException e) {
+            plugin.getDebugLog().error("CourseAnalytics", "Rollup failed (will retry)", e);
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Read and sum the next batch of settled runs (read pool, runs primary key)
+     */
+    private Batch read(long cutoff) throws SQLException {
+        Batch batch = new Batch();
+        try (Connection conn = readDataSource.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT high_water_millis, high_water_id FROM rollup_state WHERE name = ?")) {
+                stmt.setString(1, STATE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        batch.fromMillis = rs.getLong("high_water_millis");
+                        batch.fromId = rs.getLong("high_water_id");
+                    }
+                }
+            }
+            batch.toMillis = batch.fromMillis;
+            batch.toId = batch.fromId;
+            highWaterMillis = batch.fromMillis;
+            
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT id, created_millis, course_id, status, duration_millis FROM runs " +
+                     "WHERE id > ? ORDER BY id LIMIT ?")) {
+                stmt.setLong(1, batch.fromId);
+                stmt.setInt(2, batchSize);
+                
+                batch.caughtUp = true;
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int read = 0;
+                    while (rs.next()) {
+                        read++;
+                        if (rs.getLong("created_millis") >= cutoff) {
+                            // Not settled yet, and everything after it may not be either: resume here next time
+                            break;
+                        }
+                        if (read == batchSize) {
+                            batch.caughtUp = false;
+                        }
+                        batch.runs++;
+                        batch.toId = rs.getLong("id");
+                        batch.toMillis = Math.max(batch.toMillis, rs.getLong("created_millis"));
+                        Delta delta = batch.courses.computeIfAbsent(rs.getLong("course_id"), id -> new Delta());
+                        delta.total++;
+                        RunStatus status = RunStatus.fromCode(rs.getShort("status"));
+                        long duration = rs.getLong("duration_millis");
+                        if (status == RunStatus.FINISHED && !rs.wasNull()) {
+                            delta.finished++;
+                            delta.histogram.merge((int) (duration / BUCKET_MILLIS), 1L, Long::sum);
+                        } else if (status == RunStatus.ABORTED) {
+                            delta.aborted++;
+                        } else if (status == RunStatus.DQ) {
+                            delta.dq++;
+                        }
+                    }
+                }
+            }
+        }
+        return batch;
+    }
+    
+    /**
+     * Add a batch to the rollup tables and move the high-water mark in one writer transaction
+     * @return false if the mark had already moved (another server on a shared MySQL applied it first)
+     */
+    private boolean apply(Batch batch) {
+        Boolean applied = dispatcher.submit(DbDispatcher.Priority.LOW, () -> {
+            try (Connection conn = writeDataSource.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    // Compare-and-set on the mark, so a batch can never be counted twice
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                             "UPDATE rollup_state SET high_water_millis = ?, high_water_id = ?, updated_millis = ? " +
+                             "WHERE name = ? AND high_water_id = ?")) {
+                        stmt.setLong(1, batch.toMillis);
+                        stmt.setLong(2, batch.toId);
+                        stmt.setLong(3, System.currentTimeMillis());
+                        stmt.setString(4, STATE);
+                        stmt.setLong(5, batch.fromId);
+                        if (stmt.executeUpdate() == 0) {
+                            conn.rollback();
+                            return false;
+                        }
+                    }
+                    
+                    try (PreparedStatement stats = conn.prepareStatement(statsSql);
+                         PreparedStatement histogram = conn.prepareStatement(histogramSql)) {
+                        for (Map.Entry<Long, Delta> course : batch.courses.entrySet()) {
+                            Delta delta = course.getValue();
+                            stats.setLong(1, course.getKey());
+                            stats.setLong(2, delta.total);
+                            stats.setLong(3, delta.finished);
+                            stats.setLong(4, delta.aborted);
+                            stats.setLong(5, delta.dq);
+                            stats.addBatch();
+                            for (Map.Entry<Integer, Long> bucket : delta.histogram.entrySet()) {
+                                histogram.setLong(1, course.getKey());
+                                histogram.setInt(2, bucket.getKey());
+                                histogram.setLong(3, bucket.getValue());
+                                histogram.addBatch();
+                            }
+                        }
+                        stats.executeBatch();
+                        histogram.executeBatch();
+                    }
+                    conn.commit();
+                    return true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+        }).join();
+        
+        if (!applied) {
+            return false; // The mark moved
+        }
+        rolledUpRuns.addAndGet(batch.runs);
+        highWaterMillis = batch.toMillis;
+        return true;
+    }
+}
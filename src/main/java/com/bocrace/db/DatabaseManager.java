@@ -6,21 +6,30 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.CoreErrorCode;
 import org.flywaydb.core.api.MigrationInfo;
 import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.flywaydb.core.api.output.ValidateOutput;
 
 import javax.sql.DataSource;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * Manages database connections and migrations
  */
 public class DatabaseManager {
     
+    // Applied migrations whose script was corrected afterwards (V4: personal_bests seed picks one winning run)
+    private static final Set<String> CORRECTED_VERSIONS = Set.of("4");
+    
     private final BOCRacingV2 plugin;
     private HikariDataSource dataSource;
+    private HikariDataSource readDataSource; // Small read-only pool for QueryDao
+    private SqliteProfile sqliteProfile; // Per-connection PRAGMAs (SQLite only)
     private boolean initialized;
     
     public DatabaseManager(BOCRacingV2 plugin) {
@@ -62,14 +71,10 @@ public class DatabaseManager {
         String jdbcUrl;
         if ("MYSQL".equals(dbType)) {
             // MySQL configuration
-            String host = config.getString("database.mysql.host", "localhost");
-            int port = config.getInt("database.mysql.port", 3306);
-            String database = config.getString("database.mysql.database", "bocracing");
             String username = config.getString("database.mysql.username", "root");
             String password = config.getString("database.mysql.password", "password");
             
-            jdbcUrl = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC", 
-                                   host, port, database);
+            jdbcUrl = mysqlJdbcUrl(config);
             hikariConfig.setJdbcUrl(jdbcUrl);
             hikariConfig.setUsername(username);
             hikariConfig.setPassword(password);
@@ -81,8 +86,9 @@ public class DatabaseManager {
             File dbFile = new File(dataFolder, fileName);
             
             jdbcUrl = "jdbc:sqlite:" + dbFile.getAbsolutePath();
-            hikariConfig.setJdbcUrl(jdbcUrl);
-            hikariConfig.setDriverClassName("org.sqlite.JDBC");
+            // Every pooled connection gets the PRAGMA profile as it is opened
+            sqliteProfile = new SqliteProfile(config);
+            hikariConfig.setDataSource(sqliteProfile.dataSource(jdbcUrl, new Properties(), true));
         }
         
         try {
@@ -94,7 +100,10 @@ public class DatabaseManager {
             }
             
             // Run Flyway migrations
-            runMigrations();
+            runMigrations(dataSource, dbType);
+            
+            // Read-only pool (opened after migrations so readers see the final schema)
+            readDataSource = createReadPool(config, dbType, jdbcUrl, hikariConfig);
             
             initialized = true;
             
@@ -112,20 +121,31 @@ public class DatabaseManager {
     }
     
     /**
-     * Run Flyway migrations
+     * JDBC URL of the database.mysql block (also the target of /bocrace db migrate)
      */
-    private void runMigrations() {
+    static String mysqlJdbcUrl(FileConfiguration config) {
+        return String.format("jdbc:mysql://%s:%d/%s?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC",
+                             config.getString("database.mysql.host", "localhost"),
+                             config.getInt("database.mysql.port", 3306),
+                             config.getString("database.mysql.database", "bocracing"));
+    }
+    
+    /**
+     * Run Flyway migrations (scripts are per dialect under db/migration/sqlite and db/migration/mysql)
+     */
+    void runMigrations(DataSource target, String dbType) {
         try {
             // CRITICAL: Use plugin's classloader so Flyway can find migration files in JAR
             // According to Flyway docs for Paper plugins, configure() should take the classloader
             ClassLoader pluginClassLoader = plugin.getClass().getClassLoader();
             
             FluentConfiguration flywayConfig = Flyway.configure(pluginClassLoader)
-                    .dataSource(dataSource)
-                    .locations("classpath:db/migration")
+                    .dataSource(target)
+                    .locations("classpath:db/migration/" + dbType.toLowerCase())
                     .baselineOnMigrate(true);
             
             Flyway flyway = flywayConfig.load();
+            realignCorrectedMigrations(flyway);
             
             // Get migration info before migration
             MigrationInfo[] pending = flyway.info().pending();
@@ -150,6 +170,76 @@ public class DatabaseManager {
         }
     }
     
+    /**
+     * Accept the new checksum of a corrected migration that already ran, so existing databases still validate
+     * Only done when every checksum mismatch is in CORRECTED_VERSIONS; anything else is left for migrate() to refuse
+     */
+    private void realignCorrectedMigrations(Flyway flyway) {
+        boolean corrected = false;
+        for (ValidateOutput invalid : flyway.validateWithResult().invalidMigrations) {
+            if (invalid.errorDetails == null || invalid.errorDetails.errorCode != CoreErrorCode.CHECKSUM_MISMATCH) {
+                continue; // Pending migrations are reported here too
+            }
+            if (!CORRECTED_VERSIONS.contains(invalid.version)) {
+                return;
+            }
+            corrected = true;
+        }
+        if (corrected) {
+            flyway.repair();
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("versions", CORRECTED_VERSIONS.toString());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "DatabaseManager", "Realigned checksums of corrected migrations", kv);
+        }
+    }
+    
+    /**
+     * Create the read-only pool used by QueryDao
+     * SQLite readers open the file read-only; in WAL mode each read runs on its own snapshot and
+     * never blocks (or waits for) the writer. MySQL readers use read-only connections
+     */
+    private HikariDataSource createReadPool(FileConfiguration config, String dbType, String jdbcUrl, HikariConfig writeConfig) {
+        HikariConfig readConfig = new HikariConfig();
+        int readPoolSize = Math.max(1, config.getInt("database.readPool.maxConnections", 3));
+        readConfig.setPoolName("BOCRacingV2-Read");
+        readConfig.setMaximumPoolSize(readPoolSize);
+        readConfig.setMinimumIdle(1);
+        readConfig.setConnectionTimeout(5000); // Reads fail fast instead of queuing behind a stalled database
+        readConfig.setIdleTimeout(600000);
+        readConfig.setMaxLifetime(1800000);
+        
+        if ("MYSQL".equals(dbType)) {
+            readConfig.setJdbcUrl(jdbcUrl);
+            readConfig.setDriverClassName(writeConfig.getDriverClassName());
+            readConfig.setUsername(writeConfig.getUsername());
+            readConfig.setPassword(writeConfig.getPassword());
+            readConfig.setReadOnly(true);
+            // Server-side cursors: a statement with a fetch size (rank index load, run export) streams
+            // in batches of that size instead of buffering the whole result in memory
+            readConfig.addDataSourceProperty("useCursorFetch", "true");
+        } else {
+            // sqlite-jdbc cannot switch an open connection to read-only, so open it that way
+            Properties properties = new Properties();
+            properties.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+            readConfig.setDataSource(sqliteProfile.dataSource(jdbcUrl, properties, false));
+        }
+        
+        HikariDataSource pool = new HikariDataSource(readConfig);
+        
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("type", dbType);
+        kv.put("maxConnections", readPoolSize);
+        plugin.getDebugLog().info(DebugLog.Tag.DATA, "DatabaseManager", "Read pool initialized", kv);
+        return pool;
+    }
+    
+    /**
+     * Per-connection PRAGMA profile (null on MySQL)
+     */
+    public SqliteProfile getSqliteProfile() {
+        return sqliteProfile;
+    }
+    
     /**
      * Get the datasource
      */
@@ -160,6 +250,16 @@ public class DatabaseManager {
         return dataSource;
     }
     
+    /**
+     * Get the read-only datasource (queries only)
+     */
+    public DataSource getReadDataSource() {
+        if (!initialized) {
+            throw new IllegalStateException("Database not initialized. Call initialize() first.");
+        }
+        return readDataSource;
+    }
+    
     /**
      * Health check - test database connection
      */
@@ -180,6 +280,9 @@ public class DatabaseManager {
      * Close database connections
      */
     public void close() {
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
             plugin.getDebugLog().info(DebugLog.Tag.DATA, "DatabaseManager", "Database closed", null);
@@ -189,25 +292,22 @@ public class DatabaseManager {
     }
     
     /**
-     * Configure SQLite PRAGMAs for better concurrency
+     * Configure database-wide SQLite settings (stored in the file; per-connection PRAGMAs come from SqliteProfile)
      */
     private void configureSqlite() {
         try (var conn = dataSource.getConnection();
              var stmt = conn.createStatement()) {
             
+            // Lets RunRetention hand freed pages back with incremental_vacuum. Only takes effect on a new
+            // (empty) database; an existing file keeps its mode until a one-time offline VACUUM
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            
             // Enable Write-Ahead Logging (WAL) mode for better concurrency
             stmt.execute("PRAGMA journal_mode=WAL");
             
-            // Use NORMAL synchronous mode (safest that still allows WAL)
-            stmt.execute("PRAGMA synchronous=NORMAL");
-            
-            // Set busy timeout to 5 seconds (retry locked operations)
-            stmt.execute("PRAGMA busy_timeout=5000");
-            
-            Map<String, Object> kv = new HashMap<>();
+            Map<String, Object> kv = new HashMap<>(sqliteProfile.describe());
+            kv.put("auto_vacuum", "INCREMENTAL");
             kv.put("journal_mode", "WAL");
-            kv.put("synchronous", "NORMAL");
-            kv.put("busy_timeout", "5000");
             plugin.getDebugLog().info(DebugLog.Tag.DATA, "DatabaseManager", "SQLite PRAGMAs configured", kv);
             
             plugin.getLogger().info("SQLite configured with WAL mode for better concurrency");
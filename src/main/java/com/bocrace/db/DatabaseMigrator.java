@@ -0,0 +1,722 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies the SQLite database into the MySQL database configured under database.mysql (/bocrace db migrate)
+ * Each table is read in primary key order in chunks of chunkRows from the read pool and upserted into MySQL
+ * with one JDBC batch per chunk (rewriteBatchedStatements turns it into multi-row INSERTs). The chunk and the
+ * table's new key high-water mark in migration_state commit in the same MySQL transaction. Append-only tables
+ * (courses, runs, run_checkpoints) resume after their mark, rewound to the oldest run that was still in
+ * progress on the last pass; tables updated in place (players, bests, rollups) are re-upserted on every pass.
+ * Target rows whose key no longer exists on the source (runs retired by RunRetention, rebuilt bests) are deleted
+ * with each chunk's key range, and on a resumed pass a key-only walk prunes the range below the mark as well.
+ * Afterwards every table is verified by row count and a SHA-256 over all rows in key order on both sides
+ */
+public class DatabaseMigrator {
+    
+    private static final String STATE_TABLE = "migration_state";
+    
+    /**
+     * How a table is copied on a repeated pass
+     */
+    private enum Mode {
+        RESUME,   // Continue after the stored high-water mark
+        RUNS,     // Keyed by run id: continue after the mark or the oldest run in progress on the last pass
+        RECOPY,   // Updated in place: copy in chunks from the start
+        WHOLE     // Small state table: copy in one transaction
+    }
+    
+    /**
+     * One copied table (keys == null for WHOLE tables)
+     */
+    private static final class Table {
+        private final String name;
+        private final Mode mode;
+        private final String[] columns;
+        private final String[] keys;
+        private final int[] keyIndexes; // Position of each key in columns
+        
+        private Table(String name, Mode mode, String[] keys, String... columns) {
+            this.name = name;
+            this.mode = mode;
+            this.keys = keys;
+            this.columns = columns;
+            this.keyIndexes = new int[keys != null ? keys.length : 0];
+            for (int i = 0; i < keyIndexes.length; i++) {
+                keyIndexes[i] = List.of(columns).indexOf(keys[i]);
+            }
+        }
+        
+        private List<Long> keyOf(Object[] row) {
+            List<Long> key = new ArrayList<>(keyIndexes.length);
+            for (int index : keyIndexes) {
+                key.add(((Number) row[index]).longValue());
+            }
+            return key;
+        }
+        
+        private String orderBy() {
+            return String.join(", ", keys != null ? keys : new String[] {columns[0]});
+        }
+    }
+    
+    /**
+     * Parents before children, so the copy is also valid with foreign key checks on
+     */
+    private static final List<Table> TABLES = List.of(
+        new Table("courses", Mode.RESUME, new String[] {"id"}, "id", "course_key"),
+        new Table("players", Mode.RECOPY, new String[] {"id"}, "id", "uuid", "last_name", "last_seen"),
+        new Table("runs", Mode.RUNS, new String[] {"id"}, "id", "run_uuid", "course_id", "player_id", "course_type", "course_file",
+            "start_mode", "require_checkpoints", "drop_shape", "status", "dq_reason", "start_millis", "finish_millis",
+            "duration_millis", "created_millis"),
+        new Table("run_checkpoints", Mode.RUNS, new String[] {"run_id", "checkpoint_index"},
+            "run_id", "checkpoint_index", "split_millis"),
+        new Table("personal_bests", Mode.RECOPY, new String[] {"course_id", "player_id"},
+            "course_id", "player_id", "run_id", "duration_millis", "finish_millis"),
+        new Table("period_bests", Mode.RECOPY, new String[] {"course_id", "period_type", "bucket", "player_id"},
+            "course_id", "period_type", "bucket", "player_id", "run_id", "duration_millis", "finish_millis"),
+        new Table("course_stats", Mode.RECOPY, new String[] {"course_id"},
+            "course_id", "total_runs", "finished_runs", "aborted_runs", "dq_runs"),
+        new Table("course_duration_histogram", Mode.RECOPY, new String[] {"course_id", "bucket"}, "course_id", "bucket", "runs"),
+        new Table("retired_runs", Mode.RECOPY, new String[] {"player_id", "course_id", "status"},
+            "player_id", "course_id", "status", "runs", "last_created_millis"),
+        new Table("rollup_state", Mode.WHOLE, null, "name", "high_water_millis", "high_water_id", "updated_millis"),
+        new Table("backfill_state", Mode.WHOLE, null, "name", "cursor_value", "done")
+    );
+    
+    /**
+     * Called from the migration thread after each table is copied
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onTableCopied(String table, long rowsCopied);
+    }
+    
+    /**
+     * Copy and verification outcome of one table
+     */
+    public static final class TableReport {
+        private final String table;
+        private final long copied;
+        private final long sourceRows;
+        private final long targetRows;
+        private final String sourceChecksum;
+        private final String targetChecksum;
+        
+        private TableReport(String table, long copied, long sourceRows, long targetRows, String sourceChecksum, String targetChecksum) {
+            this.table = table;
+            this.copied = copied;
+            this.sourceRows = sourceRows;
+            this.targetRows = targetRows;
+            this.sourceChecksum = sourceChecksum;
+            this.targetChecksum = targetChecksum;
+        }
+        
+        public String getTable() { return table; }
+        public long getCopied() { return copied; }
+        public long getSourceRows() { return sourceRows; }
+        public long getTargetRows() { return targetRows; }
+        public String getSourceChecksum() { return sourceChecksum; }
+        public String getTargetChecksum() { return targetChecksum; }
+        
+        public boolean matches() {
+            return sourceRows == targetRows && sourceChecksum.equals(targetChecksum);
+        }
+    }
+    
+    /**
+     * Outcome of a finished migration (or verification)
+     */
+    public static final class Result {
+        private final String target;
+        private final List<TableReport> tables;
+        private final long elapsedMillis;
+        
+        private Result(String target, List<TableReport> tables, long elapsedMillis) {
+            this.target = target;
+            this.tables = Collections.unmodifiableList(tables);
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public String getTarget() { return target; }
+        public List<TableReport> getTables() { return tables; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        
+        public boolean isVerified() {
+            return tables.stream().allMatch(TableReport::matches);
+        }
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final DatabaseManager databaseManager;
+    private final DataSource sourceDataSource;
+    private final int chunkRows;
+    private final AtomicBoolean running;
+    private final AtomicLong rowsCopied;
+    private final AtomicLong rowsPruned;
+    private volatile String phase = "idle";
+    private volatile String currentTable = "-";
+    private volatile boolean stopped;
+    
+    public DatabaseMigrator(BOCRacingV2 plugin, DatabaseManager databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+        this.sourceDataSource = databaseManager.getReadDataSource();
+        this.chunkRows = Math.max(100, plugin.getConfig().getInt("database.migrate.chunkRows", 5000));
+        this.running = new AtomicBoolean();
+        this.rowsCopied = new AtomicLong();
+        this.rowsPruned = new AtomicLong();
+    }
+    
+    /**
+     * Copy (unless verifyOnly) and then verify every table in the background
+     * @return the per-table report, or a failed future (IllegalStateException if one is already running
+     *         or the database cannot be migrated yet)
+     */
+    public CompletableFuture<Result> migrate(boolean verifyOnly, ProgressListener progress) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        if (!running.compareAndSet(false, true)) {
+            future.completeExceptionally(new IllegalStateException("A migration is already running"));
+            return future;
+        }
+        rowsCopied.set(0);
+        rowsPruned.set(0);
+        Thread.ofVirtual().name("BOCRacingV2-DB-Migrate").start(() -> {
+            try {
+                future.complete(run(verifyOnly, progress));
+            } catch (Exception e) {
+                plugin.getDebugLog().error("DatabaseMigrator", "Migration failed", e);
+                future.completeExceptionally(e);
+            } finally {
+                phase = "idle";
+                currentTable = "-";
+                running.set(false);
+            }
+        });
+        return future;
+    }
+    
+    public boolean isRunning() {
+        return running.get();
+    }
+    
+    /**
+     * Abort a running migration (on plugin disable; committed chunks are kept and resumed next time)
+     */
+    public void stop() {
+        stopped = true;
+    }
+    
+    /**
+     * Snapshot of migration progress (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("phase", phase);
+        metrics.put("table", currentTable);
+        metrics.put("rowsCopied", rowsCopied.get());
+        metrics.put("rowsPruned", rowsPruned.get());
+        metrics.put("chunkRows", chunkRows);
+        return metrics;
+    }
+    
+    private Result run(boolean verifyOnly, ProgressListener progress) throws SQLException {
+        long started = System.currentTimeMillis();
+        SchemaBackfill backfill = plugin.getSchemaBackfill();
+        if (backfill != null && !backfill.isDone()) {
+            throw new IllegalStateException("The schema backfill has not finished yet");
+        }
+        FileConfiguration config = plugin.getConfig();
+        String target = config.getString("database.mysql.host", "localhost") + ":" + config.getInt("database.mysql.port", 3306)
+                        + "/" + config.getString("database.mysql.database", "bocracing");
+        
+        try (HikariDataSource targetDataSource = createTargetPool(config)) {
+            Map<String, Long> copied = new HashMap<>();
+            if (!verifyOnly) {
+                phase = "schema";
+                databaseManager.runMigrations(targetDataSource, "MYSQL");
+                prepareTarget(targetDataSource);
+                // Runs that were ACTIVE/STARTED when last copied may have finished and gained checkpoints since
+                long rewindRunId = oldestRunInProgress(targetDataSource);
+                
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("target", target);
+                kv.put("chunkRows", chunkRows);
+                plugin.getDebugLog().info(DebugLog.Tag.DATA, "DatabaseMigrator", "Migration started", kv);
+                
+                phase = "copy";
+                for (Table table : TABLES) {
+                    currentTable = table.name;
+                    long rows = table.mode == Mode.WHOLE
+                        ? copyWhole(table, targetDataSource)
+                        : copyKeyset(table, targetDataSource, rewindRunId);
+                    copied.put(table.name, rows);
+                    if (progress != null) {
+                        progress.onTableCopied(table.name, rows);
+                    }
+                }
+            }
+            
+            phase = "verify";
+            List<TableReport> reports = new ArrayList<>();
+            for (Table table : TABLES) {
+                currentTable = table.name;
+                reports.add(verify(table, targetDataSource, copied.getOrDefault(table.name, 0L)));
+            }
+            
+            Result result = new Result(target, reports, System.currentTimeMillis() - started);
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("target", target);
+            kv.put("rowsCopied", rowsCopied.get());
+            kv.put("rowsPruned", rowsPruned.get());
+            kv.put("verified", result.isVerified());
+            kv.put("elapsedMs", result.getElapsedMillis());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "DatabaseMigrator", "Migration finished", kv);
+            return result;
+        }
+    }
+    
+    /**
+     * Small dedicated pool for the target (closed when the migration ends)
+     */
+    private HikariDataSource createTargetPool(FileConfiguration config) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("BOCRacingV2-Migrate");
+        hikariConfig.setMaximumPoolSize(2); // One writer plus the verification cursor
+        hikariConfig.setMinimumIdle(0);
+        hikariConfig.setConnectionTimeout(30000);
+        hikariConfig.setJdbcUrl(DatabaseManager.mysqlJdbcUrl(config));
+        hikariConfig.setUsername(config.getString("database.mysql.username", "root"));
+        hikariConfig.setPassword(config.getString("database.mysql.password", "password"));
+        hikariConfig.setDriverClassName("com.mysql.cj.jdbc.Driver");
+        // A batch goes over the wire as multi-row INSERTs instead of one round trip per row
+        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
+        // Verification streams whole tables with a fetch size instead of buffering them
+        hikariConfig.addDataSourceProperty("useCursorFetch", "true");
+        // SQLite never enforced the foreign keys (foreign_keys is off), so rows may reference deleted parents
+        hikariConfig.setConnectionInitSql("SET FOREIGN_KEY_CHECKS=0");
+        return new HikariDataSource(hikariConfig);
+    }
+    
+    /**
+     * Create migration_state, and refuse a target that already holds runs not copied by a migration
+     */
+    private void prepareTarget(DataSource target) throws SQLException {
+        try (Connection conn = target.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + STATE_TABLE + " (" +
+                         "table_name VARCHAR(64) PRIMARY KEY, " +
+                         "high_water VARCHAR(255) NOT NULL, " +
+                         "rows_copied BIGINT NOT NULL, " +
+                         "updated_millis BIGINT NOT NULL" +
+                         ") ENGINE=InnoDB");
+            long started;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + STATE_TABLE)) {
+                started = rs.next() ? rs.getLong(1) : 0;
+            }
+            if (started == 0) {
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM runs LIMIT 1")) {
+                    if (rs.next()) {
+                        // Copied ids would overwrite another server's runs
+                        throw new IllegalStateException("The MySQL database already contains runs; migrate into an empty database");
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copy rows past the table's starting key (see Mode), one chunk per target transaction
+     * @return rows copied by this run
+     */
+    private long copyKeyset(Table table, DataSource target, long rewindRunId) throws SQLException {
+        long[] mark = new long[table.keys.length];
+        Arrays.fill(mark, Long.MIN_VALUE);
+        if (table.mode != Mode.RECOPY) {
+            long[] stored = readMark(table, target);
+            if (stored != null && table.mode == Mode.RUNS && stored[0] >= rewindRunId) {
+                mark[0] = rewindRunId - 1;
+            } else if (stored != null) {
+                mark = stored;
+            }
+        }
+        if (mark[0] != Long.MIN_VALUE) {
+            // Rows copied by an earlier pass may have been deleted on the source since
+            pruneCopied(table, target, mark);
+        }
+        String keyList = String.join(", ", table.keys);
+        String select = "SELECT " + String.join(", ", table.columns) + " FROM " + table.name +
+                        " WHERE (" + keyList + ") > (" + placeholders(table.keys.length) + ")" +
+                        " ORDER BY " + keyList + " LIMIT ?";
+        
+        long total = 0;
+        List<Object[]> rows;
+        do {
+            if (stopped) {
+                throw new IllegalStateException("Migration aborted (plugin disabled)");
+            }
+            rows = new ArrayList<>(chunkRows);
+            try (Connection conn = sourceDataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(select)) {
+                for (int i = 0; i < mark.length; i++) {
+                    stmt.setLong(i + 1, mark[i]);
+                }
+                stmt.setInt(mark.length + 1, chunkRows);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(readRow(rs, table.columns.length));
+                    }
+                }
+            }
+            if (rows.isEmpty()) {
+                // Nothing left on the source past the mark, so nothing past it belongs on the target either
+                try (Connection conn = target.getConnection()) {
+                    rowsPruned.addAndGet(deleteMissing(conn, table, mark, null, Set.of()));
+                }
+                break;
+            }
+            
+            long[] from = mark.clone();
+            Object[] last = rows.get(rows.size() - 1);
+            for (int i = 0; i < table.keyIndexes.length; i++) {
+                mark[i] = ((Number) last[table.keyIndexes[i]]).longValue();
+            }
+            // The last chunk's range is open-ended, so target rows past the source's last key go too
+            writeChunk(table, target, rows, from, rows.size() == chunkRows ? mark : null, encodeMark(mark));
+            total += rows.size();
+        } while (rows.size() == chunkRows);
+        return total;
+    }
+    
+    /**
+     * Delete target rows up to the starting mark whose key is gone from the source (runs retired by
+     * RunRetention after an earlier pass copied them), reading only keys, chunkRows at a time
+     */
+    private void pruneCopied(Table table, DataSource target, long[] upTo) throws SQLException {
+        String keyList = String.join(", ", table.keys);
+        String select = "SELECT " + keyList + " FROM " + table.name +
+                        " WHERE (" + keyList + ") > (" + placeholders(table.keys.length) + ")" +
+                        " AND (" + keyList + ") <= (" + placeholders(table.keys.length) + ")" +
+                        " ORDER BY " + keyList + " LIMIT ?";
+        long[] from = new long[table.keys.length];
+        Arrays.fill(from, Long.MIN_VALUE);
+        while (true) {
+            if (stopped) {
+                throw new IllegalStateException("Migration aborted (plugin disabled)");
+            }
+            Set<List<Long>> keys = new HashSet<>();
+            long[] last = null;
+            try (Connection conn = sourceDataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(select)) {
+                for (int i = 0; i < from.length; i++) {
+                    stmt.setLong(i + 1, from[i]);
+                    stmt.setLong(from.length + i + 1, upTo[i]);
+                }
+                stmt.setInt(from.length * 2 + 1, chunkRows);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        last = new long[from.length];
+                        List<Long> key = new ArrayList<>(from.length);
+                        for (int i = 0; i < from.length; i++) {
+                            last[i] = rs.getLong(i + 1);
+                            key.add(last[i]);
+                        }
+                        keys.add(key);
+                    }
+                }
+            }
+            boolean lastChunk = keys.size() < chunkRows;
+            try (Connection conn = target.getConnection()) {
+                rowsPruned.addAndGet(deleteMissing(conn, table, from, lastChunk ? upTo : last, keys));
+            }
+            if (lastChunk) {
+                return;
+            }
+            from = last;
+        }
+    }
+    
+    /**
+     * Delete target rows keyed in (from, to] (no upper bound if to is null) that are not in sourceKeys
+     * @return rows deleted
+     */
+    private int deleteMissing(Connection conn, Table table, long[] from, long[] to, Set<List<Long>> sourceKeys)
+            throws SQLException {
+        // Expanded bounds: MySQL does not reliably range-scan (a, b) > (?, ?) row constructors on the target
+        String select = "SELECT " + String.join(", ", table.keys) + " FROM " + table.name +
+                        " WHERE " + keyBound(table.keys, ">", ">") +
+                        (to != null ? " AND " + keyBound(table.keys, "<", "<=") : "");
+        List<List<Long>> missing = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(select)) {
+            int index = bindKeyBound(stmt, 1, from);
+            if (to != null) {
+                bindKeyBound(stmt, index, to);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    List<Long> key = new ArrayList<>(from.length);
+                    for (int i = 0; i < from.length; i++) {
+                        key.add(rs.getLong(i + 1));
+                    }
+                    if (!sourceKeys.contains(key)) {
+                        missing.add(key);
+                    }
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        
+        try (PreparedStatement stmt = conn.prepareStatement(
+                 "DELETE FROM " + table.name + " WHERE " + String.join(" = ? AND ", table.keys) + " = ?")) {
+            for (List<Long> key : missing) {
+                for (int i = 0; i < key.size(); i++) {
+                    stmt.setLong(i + 1, key.get(i));
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("table", table.name);
+        kv.put("rows", missing.size());
+        plugin.getDebugLog().debug(DebugLog.Tag.DATA, "DatabaseMigrator", "Deleted rows no longer on the source", kv);
+        return missing.size();
+    }
+    
+    /**
+     * Copy a small state table in one transaction (its rows are updated in place, so there is no mark)
+     */
+    private long copyWhole(Table table, DataSource target) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        try (Connection conn = sourceDataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + String.join(", ", table.columns) + " FROM " + table.name)) {
+            while (rs.next()) {
+                rows.add(readRow(rs, table.columns.length));
+            }
+        }
+        writeChunk(table, target, rows, null, null, "");
+        return rows.size();
+    }
+    
+    /**
+     * Upsert a chunk and store the table's new mark in one target transaction
+     * With a `from` key, target rows in (from, to] that are not in the chunk are deleted in the same transaction
+     */
+    private void writeChunk(Table table, DataSource target, List<Object[]> rows, long[] from, long[] to, String mark)
+            throws SQLException {
+        StringBuilder upsert = new StringBuilder("INSERT INTO ").append(table.name)
+            .append(" (").append(String.join(", ", table.columns)).append(") VALUES (")
+            .append(placeholders(table.columns.length)).append(") ON DUPLICATE KEY UPDATE ");
+        for (int i = 0; i < table.columns.length; i++) {
+            upsert.append(i > 0 ? ", " : "").append(table.columns[i]).append(" = VALUES(").append(table.columns[i]).append(")");
+        }
+        
+        try (Connection conn = target.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int pruned = 0;
+                if (from != null) {
+                    Set<List<Long>> keys = new HashSet<>();
+                    for (Object[] row : rows) {
+                        keys.add(table.keyOf(row));
+                    }
+                    pruned = deleteMissing(conn, table, from, to, keys);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(upsert.toString())) {
+                    for (Object[] row : rows) {
+                        for (int i = 0; i < row.length; i++) {
+                            stmt.setObject(i + 1, row[i]);
+                        }
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                         "INSERT INTO " + STATE_TABLE + " (table_name, high_water, rows_copied, updated_millis) VALUES (?, ?, ?, ?) " +
+                         "ON DUPLICATE KEY UPDATE high_water = VALUES(high_water), " +
+                         "rows_copied = rows_copied + VALUES(rows_copied), updated_millis = VALUES(updated_millis)")) {
+                    stmt.setString(1, table.name);
+                    stmt.setString(2, mark);
+                    stmt.setLong(3, rows.size());
+                    stmt.setLong(4, System.currentTimeMillis());
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+                rowsCopied.addAndGet(rows.size());
+                rowsPruned.addAndGet(pruned);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * Count and hash the table on both sides, streaming rows in key order
+     */
+    private TableReport verify(Table table, DataSource target, long copied) throws SQLException {
+        String select = "SELECT " + String.join(", ", table.columns) + " FROM " + table.name + " ORDER BY " + table.orderBy();
+        long[] sourceRows = new long[1];
+        long[] targetRows = new long[1];
+        String sourceChecksum = checksum(sourceDataSource, select, table.columns.length, sourceRows);
+        String targetChecksum = checksum(target, select, table.columns.length, targetRows);
+        return new TableReport(table.name, copied, sourceRows[0], targetRows[0], sourceChecksum, targetChecksum);
+    }
+    
+    private String checksum(DataSource dataSource, String select, int columns, long[] rows) throws SQLException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer number = ByteBuffer.allocate(Long.BYTES);
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(select, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(chunkRows);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (stopped) {
+                        throw new IllegalStateException("Migration aborted (plugin disabled)");
+                    }
+                    rows[0]++;
+                    // Type-tagged values, so SQLite INTEGER and MySQL INT/BIGINT (or BLOB and BINARY) hash the same
+                    for (int i = 1; i <= columns; i++) {
+                        Object value = rs.getObject(i);
+                        if (value == null) {
+                            digest.update((byte) 0);
+                        } else if (value instanceof Number n) {
+                            digest.update((byte) 1);
+                            digest.update(number.clear().putLong(n.longValue()).array());
+                        } else if (value instanceof byte[] bytes) {
+                            digest.update((byte) 2);
+                            digest.update(number.clear().putLong(bytes.length).array());
+                            digest.update(bytes);
+                        } else {
+                            byte[] text = value.toString().getBytes(StandardCharsets.UTF_8);
+                            digest.update((byte) 3);
+                            digest.update(number.clear().putLong(text.length).array());
+                            digest.update(text);
+                        }
+                    }
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest(), 0, 8);
+    }
+    
+    /**
+     * Stored high-water mark of a table, or null before its first chunk
+     */
+    private long[] readMark(Table table, DataSource target) throws SQLException {
+        try (Connection conn = target.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT high_water FROM " + STATE_TABLE + " WHERE table_name = ?")) {
+            stmt.setString(1, table.name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getString(1).isEmpty()) {
+                    return null;
+                }
+                String[] parts = rs.getString(1).split(",");
+                long[] mark = new long[table.keys.length];
+                for (int i = 0; i < mark.length; i++) {
+                    mark[i] = Long.parseLong(parts[i]);
+                }
+                return mark;
+            }
+        }
+    }
+    
+    /**
+     * Lowest id of a run copied while ACTIVE or STARTED (Long.MAX_VALUE if none)
+     */
+    private long oldestRunInProgress(DataSource target) throws SQLException {
+        try (Connection conn = target.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT MIN(id) FROM runs WHERE status IN (?, ?)")) {
+            stmt.setShort(1, RunStatus.ACTIVE.getCode());
+            stmt.setShort(2, RunStatus.STARTED.getCode());
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next(); // MIN always returns one row
+                long id = rs.getLong(1);
+                return rs.wasNull() ? Long.MAX_VALUE : id;
+            }
+        }
+    }
+    
+    /**
+     * Keyset bound without row constructors: (a > ? OR (a = ? AND (b > ?))) for keys (a, b), where `strict`
+     * compares every key but the last and `last` the last one. Takes 2 * keys - 1 parameters (bindKeyBound)
+     */
+    private static String keyBound(String[] keys, String strict, String last) {
+        StringBuilder bound = new StringBuilder("(");
+        for (int i = 0; i < keys.length - 1; i++) {
+            bound.append(keys[i]).append(' ').append(strict).append(" ? OR (").append(keys[i]).append(" = ? AND (");
+        }
+        bound.append(keys[keys.length - 1]).append(' ').append(last).append(" ?");
+        bound.append("))".repeat(keys.length - 1)).append(')');
+        return bound.toString();
+    }
+    
+    /**
+     * Bind a keyBound from parameter `index`
+     * @return the next parameter index
+     */
+    private static int bindKeyBound(PreparedStatement stmt, int index, long[] key) throws SQLException {
+        for (int i = 0; i < key.length - 1; i++) {
+            stmt.setLong(index++, key[i]);
+            stmt.setLong(index++, key[i]);
+        }
+        stmt.setLong(index++, key[key.length - 1]);
+        return index;
+    }
+    
+    private static String encodeMark(long[] mark) {
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < mark.length; i++) {
+            encoded.append(i > 0 ? "," : "").append(mark[i]);
+        }
+        return encoded.toString();
+    }
+    
+    private static Object[] readRow(ResultSet rs, int columns) throws SQLException {
+        Object[] row = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            row[i] = rs.getObject(i + 1);
+        }
+        return row;
+    }
+    
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -2,66 +2,306 @@ package com.bocrace.db;
 
 import com.bocrace.BOCRacingV2;
 import com.bocrace.util.DebugLog;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.configuration.file.FileConfiguration;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Single-threaded database dispatcher for ordered execution
- * Ensures all database operations execute in order on a dedicated thread
+ * Database dispatcher for ordered execution
+ * Work runs on one or more lanes, each a dedicated thread that executes its tasks in order.
+ * Keyed work (run writes) is hashed by key so each run stays ordered within its lane while
+ * different runs commit in parallel; MySQL uses several lanes, SQLite keeps a single lane
+ * Lane queues are bounded: low-priority work (player upserts) is shed first so
+ * run writes keep headroom, and writes are only rejected once a lane's queue is full
  */
 public class DbDispatcher {
     
+    /**
+     * Task priority (decides what is shed when the queue backs up)
+     */
+    public enum Priority {
+        WRITE, // Run records - only rejected when the queue is full
+        LOW    // Player upserts - shed once the queue passes the shed threshold
+    }
+    
+    /**
+     * One ordered lane (single thread over a bounded queue)
+     */
+    private static class Lane {
+        private final ThreadPoolExecutor executor;
+        private final BlockingQueue<Runnable> queue;
+        
+        private Lane(ThreadPoolExecutor executor, BlockingQueue<Runnable> queue) {
+            this.executor = executor;
+            this.queue = queue;
+        }
+    }
+    
     private final BOCRacingV2 plugin;
-    private final ExecutorService executor;
+    private final Lane[] lanes;
     private final AtomicBoolean shutdown;
+    private final int queueCapacity;
+    private final int shedThreshold;
+    private final long slowTaskNanos;
+    
+    // Metrics
+    private final LongAdder submitted;
+    private final LongAdder completed;
+    private final LongAdder failed;
+    private final LongAdder shedLow;
+    private final LongAdder rejectedWrites;
+    private final AtomicLong maxDepth;
+    private final AtomicLong totalWaitNanos;
+    private final AtomicLong maxWaitNanos;
+    private final AtomicLong totalExecNanos;
+    private final AtomicLong maxExecNanos;
     
     public DbDispatcher(BOCRacingV2 plugin) {
         this.plugin = plugin;
-        this.executor = Executors.newSingleThreadExecutor(r -> {
-            Thread t = new Thread(r, "BOCRacingV2-DB");
-            t.setDaemon(true);
-            return t;
-        });
+        FileConfiguration config = plugin.getConfig();
+        this.queueCapacity = Math.max(16, config.getInt("database.dispatcher.queueCapacity", 2000));
+        int shedPercent = Math.max(1, Math.min(100, config.getInt("database.dispatcher.shedLowPriorityAtPercent", 75)));
+        this.shedThreshold = Math.max(1, queueCapacity * shedPercent / 100);
+        this.slowTaskNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getLong("database.dispatcher.slowTaskMillis", 250)));
+        
+        // SQLite has a single writer, so extra lanes would only contend for the lock
+        boolean mysql = "MYSQL".equalsIgnoreCase(config.getString("database.type", "SQLITE"));
+        int laneCount = mysql ? Math.max(1, Math.min(16, config.getInt("database.dispatcher.writeLanes", 4))) : 1;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String threadName = laneCount == 1 ? "BOCRacingV2-DB" : "BOCRacingV2-DB-" + i;
+            BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>(queueCapacity);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, r -> {
+                Thread t = new Thread(r, threadName);
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            lanes[i] = new Lane(executor, queue);
+        }
         this.shutdown = new AtomicBoolean(false);
+        
+        this.submitted = new LongAdder();
+        this.completed = new LongAdder();
+        this.failed = new LongAdder();
+        this.shedLow = new LongAdder();
+        this.rejectedWrites = new LongAdder();
+        this.maxDepth = new AtomicLong();
+        this.totalWaitNanos = new AtomicLong();
+        this.maxWaitNanos = new AtomicLong();
+        this.totalExecNanos = new AtomicLong();
+        this.maxExecNanos = new AtomicLong();
     }
     
     /**
-     * Submit a database operation (runs on DB thread, returns immediately)
+     * Submit a database write (runs on DB thread, returns immediately)
+     * @return false if the task was rejected (shutdown or queue full)
      */
-    public void submit(Runnable task) {
+    public boolean submit(Runnable task) {
+        return submit(Priority.WRITE, task);
+    }
+    
+    /**
+     * Submit a database operation with the given priority (runs on lane 0, returns immediately)
+     * @return false if the task was rejected (shutdown, shed or queue full)
+     */
+    public boolean submit(Priority priority, Runnable task) {
+        return submit(0, priority, task);
+    }
+    
+    /**
+     * Number of ordered lanes (1 for SQLite)
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+    
+    /**
+     * Lane for an ordering key (tasks with the same key always run in submission order)
+     */
+    public int laneFor(String key) {
+        return Math.floorMod(key.hashCode(), lanes.length);
+    }
+    
+    /**
+     * Submit a database operation to a specific lane (runs on that lane's thread, returns immediately)
+     * @return false if the task was rejected (shutdown, shed or queue full)
+     */
+    public boolean submit(int laneIndex, Priority priority, Runnable task) {
+        Lane lane = lanes[laneIndex];
         if (shutdown.get()) {
             plugin.getDebugLog().warn(DebugLog.Tag.ERROR, "DbDispatcher", "Rejected task after shutdown", null);
-            return;
+            return false;
+        }
+        if (!admit(lane, priority)) {
+            return false;
         }
         
-        executor.submit(() -> {
-            try {
-                task.run();
-            } catch (Exception e) {
-                plugin.getDebugLog().error("DbDispatcher", "Database task failed", e);
-            }
-        });
+        long enqueuedAt = System.nanoTime();
+        try {
+            lane.executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    failed.increment();
+                    plugin.getDebugLog().error("DbDispatcher", "Database task failed", e);
+                } finally {
+                    record(lane, priority, enqueuedAt, startedAt, System.nanoTime());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reject(lane, priority);
+            return false;
+        }
+        accepted(lane);
+        return true;
     }
     
     /**
-     * Submit a database operation with return value (runs on DB thread, returns Future)
+     * Submit a database operation with return value (runs on DB thread, returns CompletableFuture)
+     * A rejected task (queue full or dispatcher shut down) yields a future that fails with RejectedExecutionException
      */
-    public <T> Future<T> submit(Callable<T> task) {
+    public <T> CompletableFuture<T> submit(Priority priority, Callable<T> task) {
         if (shutdown.get()) {
             plugin.getDebugLog().warn(DebugLog.Tag.ERROR, "DbDispatcher", "Rejected task after shutdown", null);
-            return CompletableFuture.completedFuture(null);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Dispatcher shut down"));
         }
         
-        return executor.submit(() -> {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean queued = submit(priority, () -> {
             try {
-                return task.call();
+                future.complete(task.call());
             } catch (Exception e) {
                 plugin.getDebugLog().error("DbDispatcher", "Database task failed", e);
-                throw e;
+                future.completeExceptionally(e);
             }
         });
+        if (!queued) {
+            future.completeExceptionally(new RejectedExecutionException("Database queue is full"));
+        }
+        return future;
+    }
+    
+    /**
+     * Submit a database write with return value (runs on DB thread, returns CompletableFuture)
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(Priority.WRITE, task);
+    }
+    
+    /**
+     * Admission check: low-priority work is shed early so writes keep headroom
+     */
+    private boolean admit(Lane lane, Priority priority) {
+        if (priority == Priority.LOW && lane.queue.size() >= shedThreshold) {
+            shedLow.increment();
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("depth", lane.queue.size());
+            kv.put("shedThreshold", shedThreshold);
+            kv.put("shed", shedLow.sum());
+            plugin.getDebugLog().warn(DebugLog.Tag.PERF, "DbDispatcher", "Shed low-priority task (queue backed up)", kv);
+            return false;
+        }
+        return true;
+    }
+    
+    private void reject(Lane lane, Priority priority) {
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("priority", priority.name());
+        kv.put("depth", lane.queue.size());
+        kv.put("capacity", queueCapacity);
+        if (priority == Priority.WRITE) {
+            rejectedWrites.increment();
+            kv.put("rejectedWrites", rejectedWrites.sum());
+            plugin.getDebugLog().error("DbDispatcher", "Rejected write (queue full)", null, kv);
+        } else {
+            shedLow.increment();
+            kv.put("shed", shedLow.sum());
+            plugin.getDebugLog().warn(DebugLog.Tag.PERF, "DbDispatcher", "Shed low-priority task (queue full)", kv);
+        }
+    }
+    
+    private void accepted(Lane lane) {
+        submitted.increment();
+        maxDepth.accumulateAndGet(lane.queue.size(), Math::max);
+    }
+    
+    /**
+     * Record wait/exec timings for a finished task (DB thread)
+     */
+    private void record(Lane lane, Priority priority, long enqueuedAt, long startedAt, long finishedAt) {
+        long waitNanos = startedAt - enqueuedAt;
+        long execNanos = finishedAt - startedAt;
+        completed.increment();
+        totalWaitNanos.addAndGet(waitNanos);
+        totalExecNanos.addAndGet(execNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        maxExecNanos.accumulateAndGet(execNanos, Math::max);
+        
+        if (waitNanos >= slowTaskNanos || execNanos >= slowTaskNanos) {
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("priority", priority.name());
+            kv.put("waitMs", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            kv.put("execMs", TimeUnit.NANOSECONDS.toMillis(execNanos));
+            kv.put("depth", lane.queue.size());
+            plugin.getDebugLog().warn(DebugLog.Tag.PERF, "DbDispatcher", "Slow database task", kv);
+        }
+    }
+    
+    /**
+     * Tasks accepted since startup (unchanged between two reads = no database work in between)
+     */
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+    
+    /**
+     * Current queue depth across lanes (tasks waiting, excluding the ones running)
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes) {
+            depth += lane.queue.size();
+        }
+        return depth;
+    }
+    
+    /**
+     * Snapshot of dispatcher metrics (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        long done = completed.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("lanes", lanes.length);
+        metrics.put("depth", getQueueDepth());
+        if (lanes.length > 1) {
+            int[] laneDepths = new int[lanes.length];
+            for (int i = 0; i < lanes.length; i++) {
+                laneDepths[i] = lanes[i].queue.size();
+            }
+            metrics.put("laneDepths", Arrays.toString(laneDepths));
+        }
+        metrics.put("maxDepth", maxDepth.get());
+        metrics.put("capacity", queueCapacity);
+        metrics.put("shedThreshold", shedThreshold);
+        metrics.put("submitted", submitted.sum());
+        metrics.put("completed", done);
+        metrics.put("failed", failed.sum());
+        metrics.put("shedLow", shedLow.sum());
+        metrics.put("rejectedWrites", rejectedWrites.sum());
+        metrics.put("avgWaitMs", done == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / done);
+        metrics.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        metrics.put("avgExecMs", done == 0 ? 0.0 : totalExecNanos.get() / 1_000_000.0 / done);
+        metrics.put("maxExecMs", TimeUnit.NANOSECONDS.toMillis(maxExecNanos.get()));
+        return metrics;
     }
     
     /**
@@ -69,17 +309,32 @@ public class DbDispatcher {
      */
     public void shutdown() {
         if (shutdown.compareAndSet(false, true)) {
-            executor.shutdown();
+            for (Lane lane : lanes) {
+                lane.executor.shutdown();
+            }
+            int dropped = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
             try {
-                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
-                    executor.shutdownNow();
-                    plugin.getLogger().warning("Database dispatcher did not terminate gracefully");
+                for (Lane lane : lanes) {
+                    long remaining = deadline - System.nanoTime();
+                    if (!lane.executor.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                        List<Runnable> pending = lane.executor.shutdownNow();
+                        dropped += pending.size();
+                    }
                 }
             } catch (InterruptedException e) {
-                executor.shutdownNow();
+                for (Lane lane : lanes) {
+                    dropped += lane.executor.shutdownNow().size();
+                }
                 Thread.currentThread().interrupt();
             }
-            plugin.getDebugLog().info(DebugLog.Tag.DATA, "DbDispatcher", "Dispatcher shutdown", null);
+            if (dropped > 0) {
+                plugin.getLogger().warning("Database dispatcher did not terminate gracefully ("
+                    + dropped + " pending task(s) dropped)");
+            }
+            Map<String, Object> kv = getMetrics();
+            kv.put("dropped", dropped);
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "DbDispatcher", "Dispatcher shutdown", kv);
         }
     }
     
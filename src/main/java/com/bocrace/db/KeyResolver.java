@@ -0,0 +1,105 @@
+package com.bocrace.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves course keys and player UUIDs to their surrogate ids (write side)
+ * Ids never change once assigned, so they are cached for the life of the plugin; rows are
+ * created on first use with an insert-or-ignore, which is safe when several writer lanes race
+ */
+class KeyResolver {
+    
+    private final boolean mysql;
+    private final Map<String, Long> courseIds;
+    private final Map<UUID, Long> playerIds;
+    
+    KeyResolver(String dbType) {
+        this.mysql = "MYSQL".equalsIgnoreCase(dbType);
+        this.courseIds = new ConcurrentHashMap<>();
+        this.playerIds = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Dialect prefix for an insert that skips rows violating a unique key
+     */
+    String insertIgnore() {
+        return mysql ? "INSERT IGNORE INTO " : "INSERT OR IGNORE INTO ";
+    }
+    
+    /**
+     * Id for a course key (creates the courses row if missing)
+     */
+    long courseId(Connection conn, String courseKey) throws SQLException {
+        Long cached = courseIds.get(courseKey);
+        if (cached != null) {
+            return cached;
+        }
+        
+        Long id = selectId(conn, "SELECT id FROM courses WHERE course_key = ?", courseKey);
+        if (id == null) {
+            try (PreparedStatement stmt = conn.prepareStatement(insertIgnore() + "courses (course_key) VALUES (?)")) {
+                stmt.setString(1, courseKey);
+                stmt.executeUpdate();
+            }
+            id = selectId(conn, "SELECT id FROM courses WHERE course_key = ?", courseKey);
+            if (id == null) {
+                throw new SQLException("Could not create course row for " + courseKey);
+            }
+        }
+        courseIds.put(courseKey, id);
+        return id;
+    }
+    
+    /**
+     * Id for a player UUID
+     * A missing row (the player's upsert is on another lane, or was shed) is created with the UUID as a
+     * placeholder name; PlayerDao's next upsert fills in the real one
+     */
+    long playerId(Connection conn, UUID playerUuid) throws SQLException {
+        Long cached = playerIds.get(playerUuid);
+        if (cached != null) {
+            return cached;
+        }
+        
+        byte[] uuidBytes = UuidBytes.toBytes(playerUuid);
+        Long id = selectId(conn, "SELECT id FROM players WHERE uuid = ?", uuidBytes);
+        if (id == null) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     insertIgnore() + "players (uuid, last_name, last_seen) VALUES (?, ?, ?)")) {
+                stmt.setBytes(1, uuidBytes);
+                stmt.setString(2, playerUuid.toString());
+                stmt.setLong(3, System.currentTimeMillis());
+                stmt.executeUpdate();
+            }
+            id = selectId(conn, "SELECT id FROM players WHERE uuid = ?", uuidBytes);
+            if (id == null) {
+                throw new SQLException("Could not create player row for " + playerUuid);
+            }
+        }
+        playerIds.put(playerUuid, id);
+        return id;
+    }
+    
+    /**
+     * Forget cached ids (after a rolled-back transaction that may have created rows)
+     */
+    void clear() {
+        courseIds.clear();
+        playerIds.clear();
+    }
+    
+    private Long selectId(Connection conn, String sql, Object key) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setObject(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+}
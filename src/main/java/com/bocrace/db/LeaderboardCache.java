@@ -0,0 +1,174 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory top-N board per course in front of QueryDao.getTopTimes
+ * Boards are loaded lazily on first read and then kept current in place from finishes on this
+ * server (recordFinish), so a hit never touches the database. Cold courses are evicted LRU beyond
+ * maxCourses, and every board is reloaded after ttlSeconds to pick up writes from other servers
+ * sharing a MySQL database
+ */
+public class LeaderboardCache {
+    
+    /**
+     * One course's board (guarded by the cache lock)
+     */
+    private static final class Board extends LoadingEntry<List<QueryDao.TopTime>, QueryDao.TopTime> {
+        private final List<QueryDao.TopTime> times = new ArrayList<>(); // Sorted by (duration, run id) like the database, at most boardSize
+        private long loadedAtMillis;
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final QueryDao queryDao;
+    private final int boardSize;
+    private final int maxCourses;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Board> boards; // Access order = LRU
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder updates;
+    private final LongAdder evictions;
+    
+    public LeaderboardCache(BOCRacingV2 plugin, QueryDao queryDao) {
+        this.plugin = plugin;
+        this.queryDao = queryDao;
+        this.boardSize = Math.max(1, plugin.getConfig().getInt("database.leaderboardCache.size", 10));
+        this.maxCourses = Math.max(1, plugin.getConfig().getInt("database.leaderboardCache.maxCourses", 100));
+        this.ttlMillis = Math.max(1, plugin.getConfig().getLong("database.leaderboardCache.ttlSeconds", 300)) * 1000L;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.updates = new LongAdder();
+        this.evictions = new LongAdder();
+        this.boards = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Board> eldest) {
+                if (size() > maxCourses && !eldest.getValue().isLoading()) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Top times for a course (completes immediately on a hit; limits above the board size go to the database)
+     */
+    public CompletableFuture<List<QueryDao.TopTime>> getTopTimes(String courseKey, int limit) {
+        if (limit > boardSize) {
+            misses.increment();
+            return queryDao.getTopTimes(courseKey, limit);
+        }
+        
+        CompletableFuture<List<QueryDao.TopTime>> load;
+        synchronized (this) {
+            Board board = boards.get(courseKey);
+            if (board != null && !board.isLoading()
+                && System.currentTimeMillis() - board.loadedAtMillis < ttlMillis) {
+                hits.increment();
+                return CompletableFuture.completedFuture(copy(board.times, limit));
+            }
+            misses.increment();
+            if (board == null) {
+                board = new Board();
+                boards.put(courseKey, board);
+            }
+            load = board.isLoading() ? board.loading() : startLoad(courseKey, board);
+        }
+        return load.thenApply(times -> copy(times, limit));
+    }
+    
+    /**
+     * Apply a finish to the course's board if it is cached and the time qualifies (any thread)
+     */
+    public void recordFinish(String courseKey, String runId, UUID playerUuid, String playerName, long durationMillis, long finishMillis) {
+        QueryDao.TopTime time = new QueryDao.TopTime(runId, playerName, playerUuid, durationMillis, finishMillis);
+        synchronized (this) {
+            Board board = boards.get(courseKey);
+            if (board == null) {
+                return; // Loaded from the database (including this finish) on first read
+            }
+            if (board.bufferIfLoading(time)) {
+                return;
+            }
+            if (insert(board.times, time)) {
+                updates.increment();
+            }
+        }
+    }
+    
+    /**
+     * Snapshot of cache metrics (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("courses", boards.size());
+        }
+        metrics.put("maxCourses", maxCourses);
+        metrics.put("boardSize", boardSize);
+        metrics.put("hits", hitCount);
+        metrics.put("misses", misses.sum());
+        metrics.put("hitRatio", total > 0 ? (double) hitCount / total : 0.0);
+        metrics.put("inPlaceUpdates", updates.sum());
+        metrics.put("evictions", evictions.sum());
+        return metrics;
+    }
+    
+    private CompletableFuture<List<QueryDao.TopTime>> startLoad(String courseKey, Board board) {
+        return board.startLoad(this, queryDao.getTopTimes(courseKey, boardSize),
+            times -> {
+                board.times.clear();
+                board.times.addAll(times);
+            },
+            pending -> insert(board.times, pending),
+            () -> {
+                board.loadedAtMillis = System.currentTimeMillis();
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("courseKey", courseKey);
+                kv.put("entries", board.times.size());
+                plugin.getDebugLog().debug(DebugLog.Tag.DATA, "LeaderboardCache", "Board loaded", kv);
+                return copy(board.times, boardSize);
+            },
+            () -> boards.remove(courseKey, board));
+    }
+    
+    /**
+     * Insert in (duration, run id) order if it makes the board (skips a finish the load already returned)
+     * Ties are broken the same way as the database so a keyset page after this board lines up with it
+     */
+    private boolean insert(List<QueryDao.TopTime> times, QueryDao.TopTime time) {
+        if (times.size() >= boardSize && compare(time, times.get(times.size() - 1)) >= 0) {
+            return false;
+        }
+        int index = 0;
+        while (index < times.size() && compare(times.get(index), time) <= 0) {
+            if (times.get(index).getRunId().equals(time.getRunId())) {
+                return false;
+            }
+            index++;
+        }
+        times.add(index, time);
+        if (times.size() > boardSize) {
+            times.remove(times.size() - 1);
+        }
+        return true;
+    }
+    
+    private static int compare(QueryDao.TopTime a, QueryDao.TopTime b) {
+        int cmp = Long.compare(a.getDurationMillis(), b.getDurationMillis());
+        return cmp != 0 ? cmp : UuidBytes.compare(a.getRunId(), b.getRunId());
+    }
+    
+    private static List<QueryDao.TopTime> copy(List<QueryDao.TopTime> times, int limit) {
+        return new ArrayList<>(times.subList(0, Math.min(limit, times.size())));
+    }
+}
@@ -0,0 +1,73 @@
+package com.bocrace.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A cache entry filled by an asynchronous database read (PlayerProfileCache, LeaderboardCache)
+ * Events that arrive while the read is in flight are buffered and replayed onto the loaded value, since
+ * the read may have run before those writes landed. Guarded by the owning cache's lock
+ * @param <R> loaded value
+ * @param <E> update event
+ */
+abstract class LoadingEntry<R, E> {
+    
+    private CompletableFuture<R> loading; // Non-null while a load is in flight
+    private final List<E> eventsWhileLoading = new ArrayList<>();
+    
+    boolean isLoading() {
+        return loading != null;
+    }
+    
+    /**
+     * The load in flight, or null
+     */
+    CompletableFuture<R> loading() {
+        return loading;
+    }
+    
+    /**
+     * Hold an event for replay if a load is in flight
+     * @return false if nothing is loading (the caller applies the event itself)
+     */
+    boolean bufferIfLoading(E event) {
+        if (loading == null) {
+            return false;
+        }
+        eventsWhileLoading.add(event);
+        return true;
+    }
+    
+    /**
+     * Load from `source` (caller holds `lock`). On completion, under `lock`: install the value, replay the
+     * buffered events in order and complete with `loaded`; on failure, drop the events and run `failed`
+     */
+    CompletableFuture<R> startLoad(Object lock, CompletableFuture<R> source, Consumer<R> install, Consumer<E> replay,
+                                   Supplier<R> loaded, Runnable failed) {
+        CompletableFuture<R> load = source.handle((value, error) -> {
+            synchronized (lock) {
+                loading = null;
+                if (error != null) {
+                    // Nothing cached; the next read retries
+                    eventsWhileLoading.clear();
+                    failed.run();
+                    throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                }
+                install.accept(value);
+                for (E event : eventsWhileLoading) {
+                    replay.accept(event);
+                }
+                eventsWhileLoading.clear();
+                return loaded.get();
+            }
+        });
+        if (!load.isDone()) { // A rejected read completes (and cleans up) inline
+            loading = load;
+        }
+        return load;
+    }
+}
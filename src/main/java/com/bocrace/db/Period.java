@@ -0,0 +1,33 @@
+package com.bocrace.db;
+
+/**
+ * Leaderboard window as stored in period_bests.period_type (SMALLINT)
+ * Codes are persisted - never renumber, only append
+ */
+public enum Period {
+    DAILY(0),
+    WEEKLY(1),
+    SEASON(2);
+    
+    private final short code;
+    
+    Period(int code) {
+        this.code = (short) code;
+    }
+    
+    public short getCode() {
+        return code;
+    }
+    
+    /**
+     * Period for a command argument such as "weekly" (null if unknown)
+     */
+    public static Period fromName(String name) {
+        for (Period period : values()) {
+            if (period.name().equalsIgnoreCase(name)) {
+                return period;
+            }
+        }
+        return null;
+    }
+}
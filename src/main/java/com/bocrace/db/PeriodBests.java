@@ -0,0 +1,45 @@
+package com.bocrace.db;
+
+/**
+ * SQL for the period_bests table (one row per course, period bucket and player)
+ */
+final class PeriodBests {
+    
+    private static final String COLUMNS =
+        "INSERT INTO period_bests (course_id, period_type, bucket, player_id, run_id, duration_millis, finish_millis) ";
+    
+    private PeriodBests() {
+    }
+    
+    /**
+     * Insert-or-improve a bucket for a finished run (parameters: period_type, bucket, duration_millis, finish_millis, run_uuid)
+     */
+    static String upsertSql(String dbType) {
+        return COLUMNS + "SELECT course_id, ?, ?, player_id, id, ?, ? FROM runs WHERE run_uuid = ? " + onConflict(dbType);
+    }
+    
+    /**
+     * Same upsert for a stored run by id, taking its own duration and finish (parameters: period_type, bucket, id)
+     */
+    static String seedSql(String dbType) {
+        return COLUMNS + "SELECT course_id, ?, ?, player_id, id, duration_millis, finish_millis FROM runs " +
+               "WHERE id = ? AND status = " + RunStatus.FINISHED.getCode() + " AND duration_millis IS NOT NULL " +
+               "AND finish_millis IS NOT NULL " + onConflict(dbType);
+    }
+    
+    /**
+     * The existing row is only replaced when the new duration is strictly better (same rule as personal_bests)
+     */
+    private static String onConflict(String dbType) {
+        if ("MYSQL".equalsIgnoreCase(dbType)) {
+            // Assignments apply left to right, so duration_millis is compared before it is replaced
+            return "ON DUPLICATE KEY UPDATE " +
+                   "run_id = IF(VALUES(duration_millis) < duration_millis, VALUES(run_id), run_id), " +
+                   "finish_millis = IF(VALUES(duration_millis) < duration_millis, VALUES(finish_millis), finish_millis), " +
+                   "duration_millis = LEAST(duration_millis, VALUES(duration_millis))";
+        }
+        return "ON CONFLICT(course_id, period_type, bucket, player_id) DO UPDATE SET " +
+               "run_id = excluded.run_id, duration_millis = excluded.duration_millis, finish_millis = excluded.finish_millis " +
+               "WHERE excluded.duration_millis < period_bests.duration_millis";
+    }
+}
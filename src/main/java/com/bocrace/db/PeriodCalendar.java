@@ -0,0 +1,67 @@
+package com.bocrace.db;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.IsoFields;
+
+/**
+ * Maps finish times to period_bests buckets (database.periods)
+ * DAILY = yyyymmdd, WEEKLY = ISO week-based year * 100 + week, SEASON = year * 100 + season number,
+ * where seasons are seasonMonths-long blocks starting in January (1 = monthly, 3 = quarterly)
+ */
+public final class PeriodCalendar {
+    
+    private final ZoneId zone;
+    private final int seasonMonths;
+    
+    public PeriodCalendar(ZoneId zone, int seasonMonths) {
+        this.zone = zone;
+        this.seasonMonths = Math.min(12, Math.max(1, seasonMonths));
+    }
+    
+    /**
+     * Calendar from database.periods (timeZone, seasonMonths); an unknown zone falls back to UTC
+     */
+    public static PeriodCalendar fromConfig(FileConfiguration config) {
+        ZoneId zone;
+        try {
+            zone = ZoneId.of(config.getString("database.periods.timeZone", "UTC"));
+        } catch (DateTimeException e) {
+            zone = ZoneOffset.UTC;
+        }
+        return new PeriodCalendar(zone, config.getInt("database.periods.seasonMonths", 1));
+    }
+    
+    public int bucket(Period period, long millis) {
+        ZonedDateTime time = Instant.ofEpochMilli(millis).atZone(zone);
+        switch (period) {
+            case DAILY:
+                return time.getYear() * 10000 + time.getMonthValue() * 100 + time.getDayOfMonth();
+            case WEEKLY:
+                return time.get(IsoFields.WEEK_BASED_YEAR) * 100 + time.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            default:
+                return time.getYear() * 100 + (time.getMonthValue() - 1) / seasonMonths + 1;
+        }
+    }
+    
+    /**
+     * Display name for a bucket, e.g. 2026-10-19, 2026-W43, 2026-10 (monthly seasons) or 2026 S4
+     */
+    public String label(Period period, int bucket) {
+        switch (period) {
+            case DAILY:
+                return String.format("%d-%02d-%02d", bucket / 10000, bucket / 100 % 100, bucket % 100);
+            case WEEKLY:
+                return String.format("%d-W%02d", bucket / 100, bucket % 100);
+            default:
+                return seasonMonths == 1
+                    ? String.format("%d-%02d", bucket / 100, bucket % 100)
+                    : String.format("%d S%d", bucket / 100, bucket % 100);
+        }
+    }
+}
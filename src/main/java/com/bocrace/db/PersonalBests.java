@@ -0,0 +1,62 @@
+package com.bocrace.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQL for the personal_bests table (one row per course and player)
+ */
+final class PersonalBests {
+    
+    /**
+     * Best finished run per (course, player); ties on duration keep the earliest finish, then the lowest id
+     * (same as the V4__Personal_bests.sql seed)
+     */
+    private static final String REBUILD_SQL =
+        "INSERT INTO personal_bests (course_id, player_id, run_id, duration_millis, finish_millis) " +
+        "SELECT w.course_id, w.player_id, w.id, w.duration_millis, COALESCE(w.finish_millis, 0) " +
+        "FROM (SELECT DISTINCT course_id, player_id FROM runs " +
+        "      WHERE status = " + RunStatus.FINISHED.getCode() + " AND duration_millis IS NOT NULL) p " +
+        // One winning run per (course, player), so run_id, duration and finish always come from the same row
+        "JOIN runs w ON w.id = (" +
+        "  SELECT r.id FROM runs r " +
+        "  WHERE r.course_id = p.course_id AND r.player_id = p.player_id " +
+        "    AND r.status = " + RunStatus.FINISHED.getCode() + " AND r.duration_millis IS NOT NULL " +
+        "  ORDER BY r.duration_millis, r.finish_millis, r.id LIMIT 1)";
+    
+    private PersonalBests() {
+    }
+    
+    /**
+     * Insert-or-improve the PB for a finished run (parameters: duration_millis, finish_millis, run_uuid)
+     * The existing row is only replaced when the new duration is strictly better
+     */
+    static String upsertSql(String dbType) {
+        String insert = "INSERT INTO personal_bests (course_id, player_id, run_id, duration_millis, finish_millis) " +
+                        "SELECT course_id, player_id, id, ?, ? FROM runs WHERE run_uuid = ? ";
+        if ("MYSQL".equalsIgnoreCase(dbType)) {
+            // Assignments apply left to right, so duration_millis is compared before it is replaced
+            return insert +
+                   "ON DUPLICATE KEY UPDATE " +
+                   "run_id = IF(VALUES(duration_millis) < duration_millis, VALUES(run_id), run_id), " +
+                   "finish_millis = IF(VALUES(duration_millis) < duration_millis, VALUES(finish_millis), finish_millis), " +
+                   "duration_millis = LEAST(duration_millis, VALUES(duration_millis))";
+        }
+        return insert +
+               "ON CONFLICT(course_id, player_id) DO UPDATE SET " +
+               "run_id = excluded.run_id, duration_millis = excluded.duration_millis, finish_millis = excluded.finish_millis " +
+               "WHERE excluded.duration_millis < personal_bests.duration_millis";
+    }
+    
+    /**
+     * Recompute every PB from run history in the caller's transaction
+     * @return number of PB rows written
+     */
+    static int rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM personal_bests");
+            return stmt.executeUpdate(REBUILD_SQL);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.bocrace.db;
 
 import com.bocrace.BOCRacingV2;
 import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
@@ -10,66 +12,149 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Data Access Object for player records
- * All operations use DbDispatcher for ordered execution
+ * Writes a row only when a player is first seen this session or their name changed (native upsert);
+ * repeat joins just bump last_seen in memory and are flushed periodically as one batch.
+ * Known names are only held while the player is online (dropped on quit)
  */
 public class PlayerDao {
     
     private final BOCRacingV2 plugin;
     private final DataSource dataSource;
     private final DbDispatcher dispatcher;
+    private final String upsertSql;
+    private final Map<UUID, String> persistedNames; // Names known to be in the database, online players only ("" = not yet)
+    private final Map<UUID, Long> pendingLastSeen; // Coalesced last_seen updates awaiting the next flush
+    private BukkitTask flushTask;
     
     public PlayerDao(BOCRacingV2 plugin, DataSource dataSource, DbDispatcher dispatcher) {
         this.plugin = plugin;
         this.dataSource = dataSource;
         this.dispatcher = dispatcher;
+        this.upsertSql = upsertSql(plugin.getConfig().getString("database.type", "SQLITE"));
+        this.persistedNames = new ConcurrentHashMap<>();
+        this.pendingLastSeen = new ConcurrentHashMap<>();
+        
+        long flushTicks = Math.max(1, plugin.getConfig().getLong("database.players.lastSeenFlushSeconds", 60)) * 20L;
+        this.flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> flushLastSeen(DbDispatcher.Priority.LOW),
+            flushTicks, flushTicks);
     }
     
     /**
-     * Upsert player record (insert or update) (async-safe)
+     * Single-statement upsert for the configured database
+     */
+    static String upsertSql(String dbType) {
+        if ("MYSQL".equalsIgnoreCase(dbType)) {
+            // VALUES() form also works on MariaDB
+            return "INSERT INTO players (uuid, last_name, last_seen) VALUES (?, ?, ?) " +
+                   "ON DUPLICATE KEY UPDATE last_name = VALUES(last_name), last_seen = VALUES(last_seen)";
+        }
+        return "INSERT INTO players (uuid, last_name, last_seen) VALUES (?, ?, ?) " +
+               "ON CONFLICT(uuid) DO UPDATE SET last_name = excluded.last_name, last_seen = excluded.last_seen";
+    }
+    
+    /**
+     * Upsert player record (main thread, for an online player; low priority - shed under backpressure)
+     * Skips the write when the name is unchanged this session; last_seen is then coalesced
      */
     public void upsertPlayer(UUID uuid, String lastName) {
-        dispatcher.submit(() -> {
+        long now = System.currentTimeMillis();
+        if (lastName.equals(persistedNames.get(uuid))) {
+            pendingLastSeen.put(uuid, now);
+            return;
+        }
+        // Marks the session; onQuit removes it, so an upsert finishing after the quit caches nothing
+        persistedNames.putIfAbsent(uuid, "");
+        
+        dispatcher.submit(DbDispatcher.Priority.LOW, () -> {
+            try (Connection conn = dataSource.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(upsertSql)) {
+                stmt.setBytes(1, UuidBytes.toBytes(uuid));
+                stmt.setString(2, lastName);
+                stmt.setLong(3, now);
+                stmt.executeUpdate();
+                
+                // Only cache once persisted, so a shed or failed upsert is retried on the next join,
+                // and only while the player is still online (replace is a no-op after onQuit)
+                persistedNames.replace(uuid, lastName);
+                pendingLastSeen.remove(uuid, now);
+                
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("uuid", uuid.toString());
+                kv.put("lastName", lastName);
+                plugin.getDebugLog().debug(DebugLog.Tag.DATA, "PlayerDao", "Player upserted", kv);
+            } catch (SQLException e) {
+                plugin.getDebugLog().error("PlayerDao", "Failed to upsert player", e);
+            }
+        });
+    }
+    
+    /**
+     * Forget the player's persisted name (on quit); their next session upserts the row once again
+     * A pending last_seen is kept and goes out with the next flush
+     */
+    public void onQuit(UUID uuid) {
+        persistedNames.remove(uuid);
+    }
+    
+    /**
+     * Write all coalesced last_seen values in one batch
+     */
+    private void flushLastSeen(DbDispatcher.Priority priority) {
+        if (pendingLastSeen.isEmpty()) return;
+        
+        dispatcher.submit(priority, () -> {
+            Map<UUID, Long> batch = new HashMap<>();
+            for (UUID uuid : pendingLastSeen.keySet()) {
+                Long seen = pendingLastSeen.get(uuid);
+                // Conditional remove keeps a value that was bumped while we were collecting
+                if (seen != null && pendingLastSeen.remove(uuid, seen)) {
+                    batch.put(uuid, seen);
+                }
+            }
+            if (batch.isEmpty()) return;
+            
             try (Connection conn = dataSource.getConnection()) {
-                // Try update first (SQLite/MySQL compatible)
-                try (PreparedStatement updateStmt = conn.prepareStatement(
-                     "UPDATE players SET last_name = ?, last_seen = ? WHERE uuid = ?")) {
-                    long now = System.currentTimeMillis();
-                    updateStmt.setString(1, lastName);
-                    updateStmt.setLong(2, now);
-                    updateStmt.setString(3, uuid.toString());
-                    
-                    int rows = updateStmt.executeUpdate();
-                    if (rows > 0) {
-                        // Updated existing record
-                        Map<String, Object> kv = new HashMap<>();
-                        kv.put("uuid", uuid.toString());
-                        kv.put("lastName", lastName);
-                        plugin.getDebugLog().debug(DebugLog.Tag.DATA, "PlayerDao", "Player updated", kv);
-                        return;
+                conn.setAutoCommit(false);
+                try (PreparedStatement stmt = conn.prepareStatement("UPDATE players SET last_seen = ? WHERE uuid = ?")) {
+                    for (Map.Entry<UUID, Long> e : batch.entrySet()) {
+                        stmt.setLong(1, e.getValue());
+                        stmt.setBytes(2, UuidBytes.toBytes(e.getKey()));
+                        stmt.addBatch();
                     }
+                    stmt.executeBatch();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
                 }
                 
-                // If no rows updated, insert new record
-                try (PreparedStatement insertStmt = conn.prepareStatement(
-                     "INSERT INTO players (uuid, last_name, last_seen) VALUES (?, ?, ?)")) {
-                    long now = System.currentTimeMillis();
-                    insertStmt.setString(1, uuid.toString());
-                    insertStmt.setString(2, lastName);
-                    insertStmt.setLong(3, now);
-                    
-                    insertStmt.executeUpdate();
-                    
-                    Map<String, Object> kv = new HashMap<>();
-                    kv.put("uuid", uuid.toString());
-                    kv.put("lastName", lastName);
-                    plugin.getDebugLog().debug(DebugLog.Tag.DATA, "PlayerDao", "Player inserted", kv);
-                }
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("players", batch.size());
+                plugin.getDebugLog().debug(DebugLog.Tag.DATA, "PlayerDao", "last_seen batch flushed", kv);
             } catch (SQLException e) {
-                plugin.getDebugLog().error("PlayerDao", "Failed to upsert player", e);
+                // Put values back (newer in-memory values win) so the next flush retries them
+                for (Map.Entry<UUID, Long> e2 : batch.entrySet()) {
+                    pendingLastSeen.merge(e2.getKey(), e2.getValue(), Math::max);
+                }
+                plugin.getDebugLog().error("PlayerDao", "Failed to flush last_seen batch", e);
             }
         });
     }
+    
+    /**
+     * Stop the flush timer and queue a final flush (on plugin disable, before the dispatcher shuts down)
+     */
+    public void close() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flushLastSeen(DbDispatcher.Priority.WRITE);
+    }
 }
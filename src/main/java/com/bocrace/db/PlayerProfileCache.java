@@ -0,0 +1,344 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-player profile (best per course, recent runs, run counts) kept in memory while the player is online
+ * Warmed asynchronously on join, kept current in place from RunDao events, and evicted
+ * evictAfterQuitSeconds after quit. Offline lookups are cached as already-quit entries; an insert
+ * beyond maxProfiles evicts the longest-quit entry (online players are never evicted)
+ */
+public class PlayerProfileCache implements RunDao.RunListener {
+    
+    /**
+     * A run event that arrived while the profile was loading (replayed once the load completes)
+     */
+    private static final class RunEvent {
+        private final String runId;
+        private final String courseKey;
+        private final RunStatus status; // null = created
+        private final long createdMillis;
+        private final long durationMillis;
+        private final long finishMillis;
+        
+        private RunEvent(String runId, String courseKey, RunStatus status, long createdMillis, long durationMillis,
+                         long finishMillis) {
+            this.runId = runId;
+            this.courseKey = courseKey;
+            this.status = status;
+            this.createdMillis = createdMillis;
+            this.durationMillis = durationMillis;
+            this.finishMillis = finishMillis;
+        }
+    }
+    
+    /**
+     * One player's cached profile (guarded by the cache lock)
+     */
+    private static final class Entry extends LoadingEntry<QueryDao.PlayerProfile, RunEvent> {
+        private final Map<String, QueryDao.TopTime> bests = new HashMap<>();
+        private final LinkedList<QueryDao.PlayerRun> recentRuns = new LinkedList<>(); // Newest first
+        private long totalRuns;
+        private long finishedRuns;
+        private String playerName;
+        private long quitAtMillis; // 0 while online
+        private boolean loaded;
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final QueryDao queryDao;
+    private final int maxProfiles;
+    private final int recentLimit;
+    private final long evictAfterQuitMillis;
+    private final Map<UUID, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder updates;
+    private final LongAdder evictions;
+    private BukkitTask sweepTask;
+    
+    public PlayerProfileCache(BOCRacingV2 plugin, QueryDao queryDao) {
+        this.plugin = plugin;
+        this.queryDao = queryDao;
+        this.maxProfiles = Math.max(1, plugin.getConfig().getInt("database.profileCache.maxProfiles", 500));
+        this.recentLimit = Math.max(1, plugin.getConfig().getInt("database.profileCache.recentRuns", 10));
+        this.evictAfterQuitMillis = Math.max(0, plugin.getConfig().getLong("database.profileCache.evictAfterQuitSeconds", 300)) * 1000L;
+        this.entries = new HashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.updates = new LongAdder();
+        this.evictions = new LongAdder();
+        
+        this.sweepTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::sweep, 400L, 400L);
+    }
+    
+    /**
+     * Start loading an online player's profile (on join; no-op if already cached)
+     */
+    public void prefetch(UUID playerUuid, String playerName) {
+        synchronized (this) {
+            Entry entry = entries.get(playerUuid);
+            boolean added = entry == null;
+            if (added) {
+                entry = new Entry();
+                entries.put(playerUuid, entry);
+            }
+            entry.playerName = playerName;
+            entry.quitAtMillis = 0;
+            if (!entry.loaded && !entry.isLoading()) {
+                startLoad(playerUuid, entry);
+            }
+            if (added) {
+                evictOverCap();
+            }
+        }
+    }
+    
+    /**
+     * Mark a player offline; the profile is evicted evictAfterQuitSeconds later unless they rejoin
+     */
+    public synchronized void onQuit(UUID playerUuid) {
+        Entry entry = entries.get(playerUuid);
+        if (entry != null) {
+            entry.quitAtMillis = System.currentTimeMillis();
+        }
+    }
+    
+    /**
+     * Cached profile snapshot, or null if not loaded (never touches the database)
+     */
+    public synchronized QueryDao.PlayerProfile get(UUID playerUuid) {
+        Entry entry = entries.get(playerUuid);
+        if (entry == null || !entry.loaded) {
+            return null;
+        }
+        return snapshot(entry);
+    }
+    
+    /**
+     * Profile for any player (completes immediately on a hit; offline players are cached as already quit)
+     */
+    public CompletableFuture<QueryDao.PlayerProfile> getOrLoad(UUID playerUuid) {
+        CompletableFuture<QueryDao.PlayerProfile> load;
+        synchronized (this) {
+            Entry entry = entries.get(playerUuid);
+            if (entry != null && entry.loaded) {
+                hits.increment();
+                return CompletableFuture.completedFuture(snapshot(entry));
+            }
+            misses.increment();
+            if (entry != null) {
+                return entry.isLoading() ? entry.loading() : startLoad(playerUuid, entry);
+            }
+            entry = new Entry();
+            entry.quitAtMillis = System.currentTimeMillis();
+            entries.put(playerUuid, entry);
+            load = startLoad(playerUuid, entry);
+            evictOverCap();
+        }
+        return load;
+    }
+    
+    /**
+     * Drop every cached profile (after personal bests are rebuilt); online players are reloaded
+     */
+    public synchronized void clear() {
+        Iterator<Map.Entry<UUID, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Entry> e = it.next();
+            Entry entry = e.getValue();
+            if (entry.isLoading()) {
+                continue;
+            }
+            if (entry.quitAtMillis != 0) {
+                it.remove();
+            } else {
+                entry.loaded = false;
+                startLoad(e.getKey(), entry);
+            }
+        }
+    }
+    
+    @Override
+    public void onRunCreated(String runId, String courseKey, UUID playerUuid, long createdMillis) {
+        apply(playerUuid, new RunEvent(runId, courseKey, null, createdMillis, 0, 0));
+    }
+    
+    @Override
+    public void onRunEnded(String runId, String courseKey, UUID playerUuid, RunStatus status,
+                           long durationMillis, long finishMillis) {
+        apply(playerUuid, new RunEvent(runId, courseKey, status, 0, durationMillis, finishMillis));
+    }
+    
+    /**
+     * Snapshot of cache metrics (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            int online = 0;
+            for (Entry entry : entries.values()) {
+                if (entry.quitAtMillis == 0) {
+                    online++;
+                }
+            }
+            metrics.put("profiles", entries.size());
+            metrics.put("online", online);
+        }
+        metrics.put("maxProfiles", maxProfiles);
+        metrics.put("hits", hitCount);
+        metrics.put("misses", misses.sum());
+        metrics.put("hitRatio", total > 0 ? (double) hitCount / total : 0.0);
+        metrics.put("inPlaceUpdates", updates.sum());
+        metrics.put("evictions", evictions.sum());
+        return metrics;
+    }
+    
+    /**
+     * Stop the eviction timer (on plugin disable)
+     */
+    public void close() {
+        if (sweepTask != null) {
+            sweepTask.cancel();
+            sweepTask = null;
+        }
+    }
+    
+    private CompletableFuture<QueryDao.PlayerProfile> startLoad(UUID playerUuid, Entry entry) {
+        return entry.startLoad(this, queryDao.getPlayerProfile(playerUuid, recentLimit),
+            profile -> {
+                entry.bests.clear();
+                entry.bests.putAll(profile.getBests());
+                entry.recentRuns.clear();
+                entry.recentRuns.addAll(profile.getRecentRuns());
+                entry.totalRuns = profile.getTotalRuns();
+                entry.finishedRuns = profile.getFinishedRuns();
+                if (entry.playerName == null && !entry.bests.isEmpty()) {
+                    entry.playerName = entry.bests.values().iterator().next().getPlayerName();
+                }
+            },
+            event -> applyLoaded(playerUuid, entry, event),
+            () -> {
+                entry.loaded = true;
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("playerUuid", playerUuid.toString());
+                kv.put("bests", entry.bests.size());
+                plugin.getDebugLog().debug(DebugLog.Tag.DATA, "PlayerProfileCache", "Profile loaded", kv);
+                return snapshot(entry);
+            },
+            () -> {
+                if (entry.quitAtMillis != 0) {
+                    entries.remove(playerUuid, entry);
+                }
+            });
+    }
+    
+    private synchronized void apply(UUID playerUuid, RunEvent event) {
+        Entry entry = entries.get(playerUuid);
+        if (entry == null) {
+            return; // Loaded from the database (including this run) on first read
+        }
+        if (entry.bufferIfLoading(event)) {
+            return;
+        }
+        if (entry.loaded) {
+            applyLoaded(playerUuid, entry, event);
+        }
+    }
+    
+    /**
+     * Fold one run event into a loaded profile (skips anything the load already returned)
+     */
+    private void applyLoaded(UUID playerUuid, Entry entry, RunEvent event) {
+        ListIterator<QueryDao.PlayerRun> it = entry.recentRuns.listIterator();
+        QueryDao.PlayerRun existing = null;
+        while (it.hasNext()) {
+            QueryDao.PlayerRun run = it.next();
+            if (run.getRunId().equals(event.runId)) {
+                existing = run;
+                break;
+            }
+        }
+        
+        if (event.status == null) {
+            if (existing == null) {
+                entry.recentRuns.addFirst(new QueryDao.PlayerRun(event.runId, event.courseKey, event.createdMillis, 0, 0,
+                    RunStatus.ACTIVE.name()));
+                if (entry.recentRuns.size() > recentLimit) {
+                    entry.recentRuns.removeLast();
+                }
+                entry.totalRuns++;
+                updates.increment();
+            }
+            return;
+        }
+        
+        // Runs that already scrolled out of the recent list only affect bests
+        if (existing != null && !existing.getStatus().equals(event.status.name())) {
+            it.set(new QueryDao.PlayerRun(event.runId, event.courseKey, existing.getCreatedMillis(), event.durationMillis,
+                event.finishMillis, event.status.name()));
+            if (event.status == RunStatus.FINISHED) {
+                entry.finishedRuns++;
+            }
+            updates.increment();
+        }
+        if (event.status == RunStatus.FINISHED) {
+            QueryDao.TopTime best = entry.bests.get(event.courseKey);
+            if (best == null || event.durationMillis < best.getDurationMillis()) {
+                String name = entry.playerName != null ? entry.playerName : playerUuid.toString();
+                entry.bests.put(event.courseKey, new QueryDao.TopTime(name, playerUuid, event.durationMillis, event.finishMillis));
+            }
+        }
+    }
+    
+    /**
+     * Evict profiles quit longer than evictAfterQuitSeconds
+     */
+    private synchronized void sweep() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.quitAtMillis != 0 && !entry.isLoading() && now - entry.quitAtMillis >= evictAfterQuitMillis) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+    
+    /**
+     * Evict the longest-quit profiles while over maxProfiles (after an insert, with the cache lock held)
+     * Online and still-loading entries stay, so the cache can only exceed the cap by online players
+     */
+    private void evictOverCap() {
+        while (entries.size() > maxProfiles) {
+            Map.Entry<UUID, Entry> oldest = null;
+            for (Map.Entry<UUID, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                if (entry.quitAtMillis != 0 && !entry.isLoading()
+                    && (oldest == null || entry.quitAtMillis < oldest.getValue().quitAtMillis)) {
+                    oldest = e;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldest.getKey());
+            evictions.increment();
+        }
+    }
+    
+    private QueryDao.PlayerProfile snapshot(Entry entry) {
+        return new QueryDao.PlayerProfile(new HashMap<>(entry.bests), new ArrayList<>(entry.recentRuns),
+            entry.totalRuns, entry.finishedRuns);
+    }
+}
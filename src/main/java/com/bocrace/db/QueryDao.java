@@ -7,31 +7,48 @@ import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Data Access Object for read-only queries
- * All operations use DbDispatcher for ordered execution
+ * Reads run on their own virtual-thread executor against the read-only pool, so they never
+ * queue behind run writes on the DbDispatcher (and on SQLite/WAL never block the writer)
  */
 public class QueryDao {
     
     public static class TopTime {
+        private final String runId;
         private final String playerName;
         private final UUID playerUuid;
         private final long durationMillis;
         private final long finishMillis;
         
-        public TopTime(String playerName, UUID playerUuid, long durationMillis, long finishMillis) {
+        public TopTime(String runId, String playerName, UUID playerUuid, long durationMillis, long finishMillis) {
+            this.runId = runId;
             this.playerName = playerName;
             this.playerUuid = playerUuid;
             this.durationMillis = durationMillis;
             this.finishMillis = finishMillis;
         }
         
+        public TopTime(String playerName, UUID playerUuid, long durationMillis, long finishMillis) {
+            this(null, playerName, playerUuid, durationMillis, finishMillis);
+        }
+        
+        /**
+         * Run that set this time (null for personal bests, which are keyed by course and player)
+         */
+        public String getRunId() { return runId; }
         public String getPlayerName() { return playerName; }
         public UUID getPlayerUuid() { return playerUuid; }
         public long getDurationMillis() { return durationMillis; }
@@ -41,13 +58,15 @@ public class QueryDao {
     public static class PlayerRun {
         private final String runId;
         private final String courseKey;
+        private final long createdMillis;
         private final long durationMillis;
         private final long finishMillis;
         private final String status;
         
-        public PlayerRun(String runId, String courseKey, long durationMillis, long finishMillis, String status) {
+        public PlayerRun(String runId, String courseKey, long createdMillis, long durationMillis, long finishMillis, String status) {
             this.runId = runId;
             this.courseKey = courseKey;
+            this.createdMillis = createdMillis;
             this.durationMillis = durationMillis;
             this.finishMillis = finishMillis;
             this.status = status;
@@ -55,156 +74,639 @@ public class QueryDao {
         
         public String getRunId() { return runId; }
         public String getCourseKey() { return courseKey; }
+        public long getCreatedMillis() { return createdMillis; }
         public long getDurationMillis() { return durationMillis; }
         public long getFinishMillis() { return finishMillis; }
         public String getStatus() { return status; }
     }
     
+    public static class PersonalBest {
+        private final String courseKey;
+        private final UUID playerUuid;
+        private final long durationMillis;
+        
+        public PersonalBest(String courseKey, UUID playerUuid, long durationMillis) {
+            this.courseKey = courseKey;
+            this.playerUuid = playerUuid;
+            this.durationMillis = durationMillis;
+        }
+        
+        public String getCourseKey() { return courseKey; }
+        public UUID getPlayerUuid() { return playerUuid; }
+        public long getDurationMillis() { return durationMillis; }
+    }
+    
+    /**
+     * Everything shown about one player: best per course, newest runs and run counts
+     */
+    public static class PlayerProfile {
+        private final Map<String, TopTime> bests;
+        private final List<PlayerRun> recentRuns;
+        private final long totalRuns;
+        private final long finishedRuns;
+        
+        public PlayerProfile(Map<String, TopTime> bests, List<PlayerRun> recentRuns, long totalRuns, long finishedRuns) {
+            this.bests = bests;
+            this.recentRuns = recentRuns;
+            this.totalRuns = totalRuns;
+            this.finishedRuns = finishedRuns;
+        }
+        
+        public Map<String, TopTime> getBests() { return bests; }
+        public List<PlayerRun> getRecentRuns() { return recentRuns; }
+        public long getTotalRuns() { return totalRuns; }
+        public long getFinishedRuns() { return finishedRuns; }
+    }
+    
+    /**
+     * Rolled-up run counts and finish-time percentiles for a course (see CourseAnalytics)
+     */
+    public static class CourseStats {
+        private final long totalRuns;
+        private final long finishedRuns;
+        private final long abortedRuns;
+        private final long dqRuns;
+        private final long medianMillis;
+        private final long p90Millis;
+        private final long rolledUpToMillis;
+        
+        public CourseStats(long totalRuns, long finishedRuns, long abortedRuns, long dqRuns,
+                           long medianMillis, long p90Millis, long rolledUpToMillis) {
+            this.totalRuns = totalRuns;
+            this.finishedRuns = finishedRuns;
+            this.abortedRuns = abortedRuns;
+            this.dqRuns = dqRuns;
+            this.medianMillis = medianMillis;
+            this.p90Millis = p90Millis;
+            this.rolledUpToMillis = rolledUpToMillis;
+        }
+        
+        public long getTotalRuns() { return totalRuns; }
+        public long getFinishedRuns() { return finishedRuns; }
+        public long getAbortedRuns() { return abortedRuns; }
+        public long getDqRuns() { return dqRuns; }
+        /**
+         * Runs that settled without finishing, aborting or being disqualified (left running, server stopped)
+         */
+        public long getUnfinishedRuns() { return totalRuns - finishedRuns - abortedRuns - dqRuns; }
+        /**
+         * Median finish time (histogram bucket midpoint, -1 without finishes)
+         */
+        public long getMedianMillis() { return medianMillis; }
+        public long getP90Millis() { return p90Millis; }
+        /**
+         * Runs created before this time are included
+         */
+        public long getRolledUpToMillis() { return rolledUpToMillis; }
+    }
+    
     private final BOCRacingV2 plugin;
     private final DataSource dataSource;
-    private final DbDispatcher dispatcher;
+    private final ExecutorService readExecutor;
+    private final int maxInFlight;
+    private final long queryTimeoutMillis;
+    private final AtomicInteger inFlight;
+    private final LongAdder completedReads;
+    private final LongAdder rejectedReads;
     
-    public QueryDao(BOCRacingV2 plugin, DataSource dataSource, DbDispatcher dispatcher) {
+    public QueryDao(BOCRacingV2 plugin, DataSource readDataSource) {
         this.plugin = plugin;
-        this.dataSource = dataSource;
-        this.dispatcher = dispatcher;
+        this.dataSource = readDataSource;
+        // Virtual threads: a read blocked on JDBC parks cheaply; the read pool bounds real concurrency
+        this.readExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("BOCRacingV2-DB-Read-", 0).factory());
+        this.maxInFlight = Math.max(1, plugin.getConfig().getInt("database.readPool.maxQueued", 64));
+        this.queryTimeoutMillis = Math.max(100, plugin.getConfig().getLong("database.readPool.queryTimeoutMillis", 5000));
+        this.inFlight = new AtomicInteger();
+        this.completedReads = new LongAdder();
+        this.rejectedReads = new LongAdder();
     }
     
     /**
-     * Get top times for a course (async, returns Future)
+     * Run a read on the read executor (rejected if too many reads are already waiting)
      */
-    public Future<List<TopTime>> getTopTimes(String courseKey, int limit) {
-        CompletableFuture<List<TopTime>> future = new CompletableFuture<>();
+    private boolean submitRead(Runnable task) {
+        if (readExecutor.isShutdown() || inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejectedReads.increment();
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("inFlight", inFlight.get());
+            kv.put("maxQueued", maxInFlight);
+            plugin.getDebugLog().warn(DebugLog.Tag.PERF, "QueryDao", "Read rejected (too many pending reads)", kv);
+            return false;
+        }
+        try {
+            readExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlight.decrementAndGet();
+                    completedReads.increment();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            rejectedReads.increment();
+            return false;
+        }
+    }
+    
+    /**
+     * Query body run on a read connection
+     */
+    @FunctionalInterface
+    private interface Query<T> {
+        T run(ReadContext ctx) throws SQLException;
+    }
+    
+    /**
+     * Connection plus the statement currently executing (so a cancelled/timed-out read can stop it)
+     */
+    private final class ReadContext {
+        private final Connection conn;
+        private volatile Statement current;
         
-        dispatcher.submit(() -> {
+        private ReadContext(Connection conn) {
+            this.conn = conn;
+        }
+        
+        private PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement stmt = conn.prepareStatement(sql);
+            stmt.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(queryTimeoutMillis + 999)));
+            current = stmt;
+            return stmt;
+        }
+        
+        private void cancel() {
+            Statement stmt = current;
+            if (stmt == null) return;
+            try {
+                stmt.cancel();
+            } catch (SQLException ignored) {
+                // Statement already finished or closed
+            }
+        }
+    }
+    
+    /**
+     * Run a query on the read executor
+     * The returned future times out after queryTimeoutMillis; cancelling it (or timing out) skips a
+     * read that has not started yet and cancels the statement of one that is running
+     */
+    private <T> CompletableFuture<T> read(String failureMsg, Query<T> query) {
+        return read(failureMsg, queryTimeoutMillis, query);
+    }
+    
+    /**
+     * Run a query on the read executor with its own timeout (bulk loads)
+     */
+    private <T> CompletableFuture<T> read(String failureMsg, long timeoutMillis, Query<T> query) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        boolean queued = submitRead(() -> {
+            if (future.isDone()) {
+                return; // Cancelled or timed out while waiting for a read thread
+            }
+            try (Connection conn = dataSource.getConnection()) {
+                ReadContext ctx = new ReadContext(conn);
+                future.whenComplete((result, error) -> {
+                    if (error != null) {
+                        ctx.cancel();
+                    }
+                });
+                future.complete(query.run(ctx));
+            } catch (Exception e) {
+                if (!future.isDone()) {
+                    plugin.getDebugLog().error("QueryDao", failureMsg, e);
+                }
+                future.completeExceptionally(e);
+            }
+        });
+        if (!queued) {
+            future.completeExceptionally(new RejectedExecutionException("Database is busy"));
+        }
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Get top times for a course (async, times out after database.readPool.queryTimeoutMillis)
+     */
+    public CompletableFuture<List<TopTime>> getTopTimes(String courseKey, int limit) {
+        return read("Failed to get top times", ctx -> {
+            List<TopTime> results = selectTopTimes(ctx, courseKey, null, 0, limit);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("courseKey", courseKey);
+            kv.put("limit", limit);
+            kv.put("count", results.size());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Top times queried", kv);
+            return results;
+        });
+    }
+    
+    /**
+     * Get the top times that rank after (afterDurationMillis, afterRunId), i.e. the next page (keyset, no OFFSET)
+     */
+    public CompletableFuture<List<TopTime>> getTopTimesAfter(String courseKey, long afterDurationMillis, String afterRunId, int limit) {
+        return read("Failed to get top times page", ctx -> {
+            List<TopTime> results = selectTopTimes(ctx, courseKey, afterRunId, afterDurationMillis, limit);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("courseKey", courseKey);
+            kv.put("afterDurationMillis", afterDurationMillis);
+            kv.put("count", results.size());
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "QueryDao", "Top times page queried", kv);
+            return results;
+        });
+    }
+    
+    /**
+     * Get the best time per player on a course within one period bucket (see PeriodCalendar)
+     */
+    public CompletableFuture<List<TopTime>> getPeriodTopTimes(String courseKey, Period period, int bucket, int limit) {
+        return read("Failed to get period top times", ctx -> {
             List<TopTime> results = new ArrayList<>();
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT p.last_name, r.player_uuid, r.duration_millis, r.finish_millis " +
-                     "FROM runs r " +
-                     "JOIN players p ON r.player_uuid = p.uuid " +
-                     "WHERE r.course_key = ? AND r.status = 'FINISHED' " +
-                     "ORDER BY r.duration_millis ASC " +
+            // idx_period_bests_board: the bucket's rows are already in duration order
+            try (PreparedStatement stmt = ctx.prepare(
+                     "SELECT p.last_name, p.uuid, pb.duration_millis, pb.finish_millis " +
+                     "FROM period_bests pb " +
+                     "JOIN players p ON p.id = pb.player_id " +
+                     "WHERE pb.course_id = (SELECT id FROM courses WHERE course_key = ?) " +
+                     "AND pb.period_type = ? AND pb.bucket = ? " +
+                     "ORDER BY pb.duration_millis ASC, pb.finish_millis ASC " +
                      "LIMIT ?")) {
                 
                 stmt.setString(1, courseKey);
-                stmt.setInt(2, limit);
+                stmt.setShort(2, period.getCode());
+                stmt.setInt(3, bucket);
+                stmt.setInt(4, limit);
                 
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
                         String playerName = rs.getString("last_name");
-                        UUID playerUuid = UUID.fromString(rs.getString("player_uuid"));
+                        UUID playerUuid = UuidBytes.fromBytes(rs.getBytes("uuid"));
                         long durationMillis = rs.getLong("duration_millis");
                         long finishMillis = rs.getLong("finish_millis");
                         results.add(new TopTime(playerName, playerUuid, durationMillis, finishMillis));
                     }
                 }
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("courseKey", courseKey);
-                kv.put("limit", limit);
-                kv.put("count", results.size());
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Top times queried", kv);
-                
-                future.complete(results);
-            } catch (Exception e) {
-                plugin.getDebugLog().error("QueryDao", "Failed to get top times", e);
-                future.completeExceptionally(e);
             }
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("courseKey", courseKey);
+            kv.put("period", period.name());
+            kv.put("bucket", bucket);
+            kv.put("count", results.size());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Period top times queried", kv);
+            return results;
         });
-        
-        return future;
     }
     
     /**
-     * Get player's best time for a course (async, returns Future)
+     * Get rolled-up analytics for a course (async, completes with null if no run has been rolled up yet)
      */
-    public Future<TopTime> getPlayerBest(String courseKey, UUID playerUuid) {
-        CompletableFuture<TopTime> future = new CompletableFuture<>();
-        
-        dispatcher.submit(() -> {
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT p.last_name, r.player_uuid, r.duration_millis, r.finish_millis " +
-                     "FROM runs r " +
-                     "JOIN players p ON r.player_uuid = p.uuid " +
-                     "WHERE r.course_key = ? AND r.player_uuid = ? AND r.status = 'FINISHED' " +
-                     "ORDER BY r.duration_millis ASC " +
-                     "LIMIT 1")) {
+    public CompletableFuture<CourseStats> getCourseStats(String courseKey) {
+        return read("Failed to get course analytics", ctx -> {
+            long total;
+            long finished;
+            long aborted;
+            long dq;
+            long rolledUpTo;
+            try (PreparedStatement stmt = ctx.prepare(
+                     "SELECT cs.total_runs, cs.finished_runs, cs.aborted_runs, cs.dq_runs, rs.high_water_millis " +
+                     "FROM course_stats cs " +
+                     "JOIN rollup_state rs ON rs.name = 'course_stats' " +
+                     "WHERE cs.course_id = (SELECT id FROM courses WHERE course_key = ?)")) {
+                stmt.setString(1, courseKey);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    total = rs.getLong("total_runs");
+                    finished = rs.getLong("finished_runs");
+                    aborted = rs.getLong("aborted_runs");
+                    dq = rs.getLong("dq_runs");
+                    rolledUpTo = rs.getLong("high_water_millis");
+                }
+            }
+            
+            // Walk the histogram in duration order until the median and p90 ranks are reached
+            long medianRank = (finished + 1) / 2;
+            long p90Rank = (long) Math.ceil(finished * 0.9);
+            long median = -1;
+            long p90 = -1;
+            if (finished > 0) {
+                try (PreparedStatement stmt = ctx.prepare(
+                         "SELECT bucket, runs FROM course_duration_histogram " +
+                         "WHERE course_id = (SELECT id FROM courses WHERE course_key = ?) ORDER BY bucket")) {
+                    stmt.setString(1, courseKey);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        long seen = 0;
+                        while (rs.next() && p90 < 0) {
+                            seen += rs.getLong("runs");
+                            long midpoint = rs.getInt("bucket") * CourseAnalytics.BUCKET_MILLIS + CourseAnalytics.BUCKET_MILLIS / 2;
+                            if (median < 0 && seen >= medianRank) {
+                                median = midpoint;
+                            }
+                            if (seen >= p90Rank) {
+                                p90 = midpoint;
+                            }
+                        }
+                    }
+                }
+            }
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("courseKey", courseKey);
+            kv.put("totalRuns", total);
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "QueryDao", "Course analytics queried", kv);
+            return new CourseStats(total, finished, aborted, dq, median, p90, rolledUpTo);
+        });
+    }
+    
+    /**
+     * Get player's best time for a course (async, completes with null if none)
+     */
+    public CompletableFuture<TopTime> getPlayerBest(String courseKey, UUID playerUuid) {
+        return read("Failed to get player best", ctx -> {
+            try (PreparedStatement stmt = ctx.prepare(PLAYER_BEST_SQL)) {
                 
                 stmt.setString(1, courseKey);
-                stmt.setString(2, playerUuid.toString());
+                stmt.setBytes(2, UuidBytes.toBytes(playerUuid));
                 
                 try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        String playerName = rs.getString("last_name");
-                        UUID uuid = UUID.fromString(rs.getString("player_uuid"));
-                        long durationMillis = rs.getLong("duration_millis");
-                        long finishMillis = rs.getLong("finish_millis");
-                        
-                        Map<String, Object> kv = new HashMap<>();
-                        kv.put("courseKey", courseKey);
-                        kv.put("playerUuid", playerUuid.toString());
-                        kv.put("durationMillis", durationMillis);
-                        plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Player best queried", kv);
-                        
-                        future.complete(new TopTime(playerName, uuid, durationMillis, finishMillis));
-                    } else {
-                        future.complete(null);
+                    if (!rs.next()) {
+                        return null;
                     }
+                    String playerName = rs.getString("last_name");
+                    long durationMillis = rs.getLong("duration_millis");
+                    long finishMillis = rs.getLong("finish_millis");
+                    
+                    Map<String, Object> kv = new HashMap<>();
+                    kv.put("courseKey", courseKey);
+                    kv.put("playerUuid", playerUuid.toString());
+                    kv.put("durationMillis", durationMillis);
+                    plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Player best queried", kv);
+                    
+                    return new TopTime(playerName, playerUuid, durationMillis, finishMillis);
                 }
-            } catch (Exception e) {
-                plugin.getDebugLog().error("QueryDao", "Failed to get player best", e);
-                future.completeExceptionally(e);
             }
         });
-        
-        return future;
     }
     
     /**
-     * Get player's recent runs (async, returns Future)
+     * Get player's recent runs (async, times out after database.readPool.queryTimeoutMillis)
      */
-    public Future<List<PlayerRun>> getPlayerRecentRuns(UUID playerUuid, int limit) {
-        CompletableFuture<List<PlayerRun>> future = new CompletableFuture<>();
-        
-        dispatcher.submit(() -> {
-            List<PlayerRun> results = new ArrayList<>();
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT run_id, course_key, duration_millis, finish_millis, status " +
+    public CompletableFuture<List<PlayerRun>> getPlayerRecentRuns(UUID playerUuid, int limit) {
+        return read("Failed to get player recent runs", ctx -> {
+            List<PlayerRun> results = selectRecentRuns(ctx, playerUuid, limit);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("playerUuid", playerUuid.toString());
+            kv.put("limit", limit);
+            kv.put("count", results.size());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Player recent runs queried", kv);
+            return results;
+        });
+    }
+    
+    /**
+     * Get a player's profile: all personal bests, newest runs and run counts in one read
+     */
+    public CompletableFuture<PlayerProfile> getPlayerProfile(UUID playerUuid, int recentLimit) {
+        return read("Failed to get player profile", ctx -> {
+            byte[] uuidBytes = UuidBytes.toBytes(playerUuid);
+            
+            Map<String, TopTime> bests = new HashMap<>();
+            // idx_personal_bests_player
+            try (PreparedStatement stmt = ctx.prepare(
+                     "SELECT c.course_key, p.last_name, pb.duration_millis, pb.finish_millis " +
+                     "FROM personal_bests pb " +
+                     "JOIN courses c ON c.id = pb.course_id " +
+                     "JOIN players p ON p.id = pb.player_id " +
+                     "WHERE pb.player_id = (SELECT id FROM players WHERE uuid = ?)")) {
+                stmt.setBytes(1, uuidBytes);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        bests.put(rs.getString("course_key"), new TopTime(rs.getString("last_name"), playerUuid,
+                            rs.getLong("duration_millis"), rs.getLong("finish_millis")));
+                    }
+                }
+            }
+            
+            long totalRuns = 0;
+            long finishedRuns = 0;
+            // Covered by idx_runs_player_course_status_duration (player_id prefix, status in the index)
+            try (PreparedStatement stmt = ctx.prepare(
+                     "SELECT COUNT(*) AS total, COALESCE(SUM(CASE WHEN status = ? THEN 1 ELSE 0 END), 0) AS finished " +
                      "FROM runs " +
-                     "WHERE player_uuid = ? " +
-                     "ORDER BY created_millis DESC " +
-                     "LIMIT ?")) {
+                     "WHERE player_id = (SELECT id FROM players WHERE uuid = ?)")) {
+                stmt.setShort(1, RunStatus.FINISHED.getCode());
+                stmt.setBytes(2, uuidBytes);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        totalRuns = rs.getLong("total");
+                        finishedRuns = rs.getLong("finished");
+                    }
+                }
+            }
+            // Aborted/DQ runs deleted by RunRetention still count towards the total
+            try (PreparedStatement stmt = ctx.prepare(
+                     "SELECT COALESCE(SUM(runs), 0) FROM retired_runs " +
+                     "WHERE player_id = (SELECT id FROM players WHERE uuid = ?)")) {
+                stmt.setBytes(1, uuidBytes);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        totalRuns += rs.getLong(1);
+                    }
+                }
+            }
+            
+            List<PlayerRun> recentRuns = selectRecentRuns(ctx, playerUuid, recentLimit);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("playerUuid", playerUuid.toString());
+            kv.put("bests", bests.size());
+            kv.put("totalRuns", totalRuns);
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "QueryDao", "Player profile queried", kv);
+            return new PlayerProfile(bests, recentRuns, totalRuns, finishedRuns);
+        });
+    }
+    
+    /**
+     * Get the player's runs older than (beforeCreatedMillis, beforeRunId), i.e. the next history page (keyset, no OFFSET)
+     */
+    public CompletableFuture<List<PlayerRun>> getPlayerRunsBefore(UUID playerUuid, long beforeCreatedMillis, String beforeRunId, int limit) {
+        return read("Failed to get player runs page", ctx -> {
+            List<PlayerRun> results = selectRuns(ctx, playerUuid, beforeRunId, beforeCreatedMillis, limit);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("playerUuid", playerUuid.toString());
+            kv.put("beforeCreatedMillis", beforeCreatedMillis);
+            kv.put("count", results.size());
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "QueryDao", "Player runs page queried", kv);
+            return results;
+        });
+    }
+    
+    /**
+     * getPlayerBest: personal_bests is kept current by RunDao on every finish, so this is a primary key lookup
+     */
+    static final String PLAYER_BEST_SQL =
+        "SELECT p.last_name, pb.duration_millis, pb.finish_millis " +
+        "FROM personal_bests pb " +
+        "JOIN players p ON p.id = pb.player_id " +
+        "WHERE pb.course_id = (SELECT id FROM courses WHERE course_key = ?) " +
+        "AND pb.player_id = (SELECT id FROM players WHERE uuid = ?)";
+    
+    /**
+     * getTopTimes / getTopTimesAfter: idx_runs_course_status_duration_run reads `limit` entries in index order from the cursor on
+     */
+    static String topTimesSql(boolean afterCursor) {
+        return "SELECT p.last_name, p.uuid, r.run_uuid, r.duration_millis, r.finish_millis " +
+               "FROM runs r " +
+               "JOIN players p ON p.id = r.player_id " +
+               "WHERE r.course_id = (SELECT id FROM courses WHERE course_key = ?) AND r.status = ? " +
+               (afterCursor ? "AND (r.duration_millis, r.run_uuid) > (?, ?) " : "") +
+               "ORDER BY r.duration_millis ASC, r.run_uuid ASC " +
+               "LIMIT ?";
+    }
+    
+    /**
+     * getPlayerRecentRuns / getPlayerRunsBefore: idx_runs_player_created_run walks the player's runs backwards from the cursor
+     */
+    static String playerRunsSql(boolean beforeCursor) {
+        return "SELECT r.run_uuid, c.course_key, r.created_millis, r.duration_millis, r.finish_millis, r.status " +
+               "FROM runs r " +
+               "JOIN courses c ON c.id = r.course_id " +
+               "WHERE r.player_id = (SELECT id FROM players WHERE uuid = ?) " +
+               (beforeCursor ? "AND (r.created_millis, r.run_uuid) < (?, ?) " : "") +
+               "ORDER BY r.created_millis DESC, r.run_uuid DESC " +
+               "LIMIT ?";
+    }
+    
+    /**
+     * Finished runs in (duration_millis, run_uuid) order, starting after the given run if afterRunId is set
+     */
+    private List<TopTime> selectTopTimes(ReadContext ctx, String courseKey, String afterRunId, long afterDurationMillis,
+                                         int limit) throws SQLException {
+        List<TopTime> results = new ArrayList<>();
+        try (PreparedStatement stmt = ctx.prepare(topTimesSql(afterRunId != null))) {
+            
+            int index = 1;
+            stmt.setString(index++, courseKey);
+            stmt.setShort(index++, RunStatus.FINISHED.getCode());
+            if (afterRunId != null) {
+                stmt.setLong(index++, afterDurationMillis);
+                stmt.setBytes(index++, UuidBytes.toBytes(afterRunId));
+            }
+            stmt.setInt(index, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String runId = UuidBytes.fromBytes(rs.getBytes("run_uuid")).toString();
+                    String playerName = rs.getString("last_name");
+                    UUID playerUuid = UuidBytes.fromBytes(rs.getBytes("uuid"));
+                    long durationMillis = rs.getLong("duration_millis");
+                    long finishMillis = rs.getLong("finish_millis");
+                    results.add(new TopTime(runId, playerName, playerUuid, durationMillis, finishMillis));
+                }
+            }
+        }
+        return results;
+    }
+    
+    private List<PlayerRun> selectRecentRuns(ReadContext ctx, UUID playerUuid, int limit) throws SQLException {
+        return selectRuns(ctx, playerUuid, null, 0, limit);
+    }
+    
+    /**
+     * A player's runs newest first by (created_millis, run_uuid), starting before the given run if beforeRunId is set
+     */
+    private List<PlayerRun> selectRuns(ReadContext ctx, UUID playerUuid, String beforeRunId, long beforeCreatedMillis,
+                                       int limit) throws SQLException {
+        List<PlayerRun> results = new ArrayList<>();
+        try (PreparedStatement stmt = ctx.prepare(playerRunsSql(beforeRunId != null))) {
+            
+            int index = 1;
+            stmt.setBytes(index++, UuidBytes.toBytes(playerUuid));
+            if (beforeRunId != null) {
+                stmt.setLong(index++, beforeCreatedMillis);
+                stmt.setBytes(index++, UuidBytes.toBytes(beforeRunId));
+            }
+            stmt.setInt(index, limit);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String runId = UuidBytes.fromBytes(rs.getBytes("run_uuid")).toString();
+                    String courseKey = rs.getString("course_key");
+                    long createdMillis = rs.getLong("created_millis");
+                    long durationMillis = rs.getLong("duration_millis");
+                    long finishMillis = rs.getLong("finish_millis");
+                    RunStatus runStatus = RunStatus.fromCode(rs.getInt("status"));
+                    String status = runStatus != null ? runStatus.name() : "UNKNOWN";
+                    results.add(new PlayerRun(runId, courseKey, createdMillis, durationMillis, finishMillis, status));
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Get every personal best on every course (async bulk load for the rank index, 60s timeout)
+     */
+    public CompletableFuture<List<PersonalBest>> getAllPersonalBests() {
+        return read("Failed to load personal bests", 60000, ctx -> {
+            List<PersonalBest> results = new ArrayList<>();
+            try (PreparedStatement stmt = ctx.prepare(
+                     "SELECT c.course_key, p.uuid, pb.duration_millis " +
+                     "FROM personal_bests pb " +
+                     "JOIN courses c ON c.id = pb.course_id " +
+                     "JOIN players p ON p.id = pb.player_id")) {
                 
-                stmt.setString(1, playerUuid.toString());
-                stmt.setInt(2, limit);
+                stmt.setQueryTimeout(60);
+                stmt.setFetchSize(1000);
                 
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
-                        String runId = rs.getString("run_id");
                         String courseKey = rs.getString("course_key");
-                        long durationMillis = rs.getLong("duration_millis");
-                        long finishMillis = rs.getLong("finish_millis");
-                        String status = rs.getString("status");
-                        results.add(new PlayerRun(runId, courseKey, durationMillis, finishMillis, status));
+                        UUID playerUuid = UuidBytes.fromBytes(rs.getBytes("uuid"));
+                        results.add(new PersonalBest(courseKey, playerUuid, rs.getLong("duration_millis")));
                     }
                 }
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("playerUuid", playerUuid.toString());
-                kv.put("limit", limit);
-                kv.put("count", results.size());
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Player recent runs queried", kv);
-                
-                future.complete(results);
-            } catch (Exception e) {
-                plugin.getDebugLog().error("QueryDao", "Failed to get player recent runs", e);
-                future.completeExceptionally(e);
             }
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("count", results.size());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "QueryDao", "Personal bests loaded", kv);
+            return results;
         });
-        
-        return future;
+    }
+    
+    /**
+     * Snapshot of read path metrics (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("maxQueued", maxInFlight);
+        metrics.put("completed", completedReads.sum());
+        metrics.put("rejected", rejectedReads.sum());
+        return metrics;
+    }
+    
+    /**
+     * Stop accepting reads and wait briefly for running ones (on plugin disable, before the pools close)
+     */
+    public void close() {
+        readExecutor.shutdown();
+        try {
+            if (!readExecutor.awaitTermination(2, TimeUnit.SECONDS)) {
+                readExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            readExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 }
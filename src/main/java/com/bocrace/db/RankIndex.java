@@ -0,0 +1,167 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import com.bocrace.util.OrderStatisticTree;
+
+import java.util.*;
+
+/**
+ * In-memory rank of every player's best time per course
+ * Loaded once from personal_bests at startup, then updated on every finish on this server, so
+ * rank and percentile are answered in O(log n) without a database round trip
+ * Finishes that happen while the load is running are applied once it completes
+ */
+public class RankIndex {
+    
+    /**
+     * A player's standing on a course (rank 1 = fastest; equal times share a rank)
+     */
+    public static class Rank {
+        private final int rank;
+        private final int total;
+        private final long bestMillis;
+        private final boolean newBest;
+        
+        public Rank(int rank, int total, long bestMillis, boolean newBest) {
+            this.rank = rank;
+            this.total = total;
+            this.bestMillis = bestMillis;
+            this.newBest = newBest;
+        }
+        
+        public int getRank() { return rank; }
+        public int getTotal() { return total; }
+        public long getBestMillis() { return bestMillis; }
+        public boolean isNewBest() { return newBest; }
+        
+        /**
+         * Share of players at or ahead of this rank, e.g. 2.5 for "top 2.5%"
+         */
+        public double getTopPercent() {
+            return total > 0 ? rank * 100.0 / total : 100.0;
+        }
+    }
+    
+    private static final class CourseRanks {
+        private final Map<UUID, Long> bests = new HashMap<>();
+        private final OrderStatisticTree tree = new OrderStatisticTree();
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final QueryDao queryDao;
+    private final Map<String, CourseRanks> courses;
+    private List<QueryDao.PersonalBest> finishedWhileLoading; // Non-null while a load is in flight
+    private boolean loaded;
+    
+    public RankIndex(BOCRacingV2 plugin, QueryDao queryDao) {
+        this.plugin = plugin;
+        this.queryDao = queryDao;
+        this.courses = new HashMap<>();
+    }
+    
+    /**
+     * (Re)load all ranks from personal_bests in the background
+     */
+    public synchronized void load() {
+        if (finishedWhileLoading != null) {
+            return; // Already loading
+        }
+        finishedWhileLoading = new ArrayList<>();
+        long started = System.currentTimeMillis();
+        queryDao.getAllPersonalBests().whenComplete((bests, error) -> {
+            synchronized (this) {
+                List<QueryDao.PersonalBest> pending = finishedWhileLoading;
+                finishedWhileLoading = null;
+                if (error != null) {
+                    // Keep whatever was there; ranks stay hidden until a load succeeds
+                    plugin.getLogger().warning("Failed to load course ranks: " + error);
+                    return;
+                }
+                courses.clear();
+                for (QueryDao.PersonalBest best : bests) {
+                    apply(best.getCourseKey(), best.getPlayerUuid(), best.getDurationMillis());
+                }
+                for (QueryDao.PersonalBest best : pending) {
+                    apply(best.getCourseKey(), best.getPlayerUuid(), best.getDurationMillis());
+                }
+                loaded = true;
+                
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("courses", courses.size());
+                kv.put("entries", bests.size());
+                kv.put("loadMs", System.currentTimeMillis() - started);
+                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RankIndex", "Ranks loaded", kv);
+            }
+        });
+    }
+    
+    /**
+     * Record a finish and return the player's standing (null until the first load completes)
+     */
+    public synchronized Rank recordFinish(String courseKey, UUID playerUuid, long durationMillis) {
+        if (finishedWhileLoading != null) {
+            finishedWhileLoading.add(new QueryDao.PersonalBest(courseKey, playerUuid, durationMillis));
+        }
+        if (!loaded) {
+            return null;
+        }
+        boolean newBest = apply(courseKey, playerUuid, durationMillis);
+        return rankOf(courses.get(courseKey), playerUuid, newBest);
+    }
+    
+    /**
+     * A player's standing on a course (null if they have no finish there or ranks are not loaded)
+     */
+    public synchronized Rank getRank(String courseKey, UUID playerUuid) {
+        if (!loaded) {
+            return null;
+        }
+        return rankOf(courses.get(courseKey), playerUuid, false);
+    }
+    
+    /**
+     * Snapshot of index metrics (ordered for display)
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        int entries = 0;
+        for (CourseRanks ranks : courses.values()) {
+            entries += ranks.tree.size();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("loaded", loaded);
+        metrics.put("loading", finishedWhileLoading != null);
+        metrics.put("courses", courses.size());
+        metrics.put("entries", entries);
+        return metrics;
+    }
+    
+    /**
+     * Keep the faster of the stored and the new time
+     * @return true if this time is the player's new best on the course
+     */
+    private boolean apply(String courseKey, UUID playerUuid, long durationMillis) {
+        CourseRanks ranks = courses.computeIfAbsent(courseKey, key -> new CourseRanks());
+        Long previous = ranks.bests.get(playerUuid);
+        if (previous != null && previous <= durationMillis) {
+            return false;
+        }
+        if (previous != null) {
+            ranks.tree.remove(previous, playerUuid);
+        }
+        ranks.tree.insert(durationMillis, playerUuid);
+        ranks.bests.put(playerUuid, durationMillis);
+        return true;
+    }
+    
+    private Rank rankOf(CourseRanks ranks, UUID playerUuid, boolean newBest) {
+        if (ranks == null) {
+            return null;
+        }
+        Long best = ranks.bests.get(playerUuid);
+        if (best == null) {
+            return null;
+        }
+        return new Rank(ranks.tree.countFaster(best) + 1, ranks.tree.size(), best, newBest);
+    }
+}
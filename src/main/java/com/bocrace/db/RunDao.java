@@ -3,33 +3,58 @@ package com.bocrace.db;
 import com.bocrace.BOCRacingV2;
 import com.bocrace.model.Course;
 import com.bocrace.util.DebugLog;
-import org.bukkit.Bukkit;
 
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data Access Object for race runs
- * All operations use DbDispatcher for ordered execution
+ * Writes are appended to the RunOutbox and applied in order on the DbDispatcher thread,
+ * so a database outage delays them instead of losing them
+ * Runs are keyed by their binary run_uuid and reference courses/players by surrogate id (schema v2)
  */
 public class RunDao {
     
+    /**
+     * Run lifecycle callbacks, fired on the calling thread as writes are queued (before they reach the database)
+     */
+    public interface RunListener {
+        default void onRunCreated(String runId, String courseKey, UUID playerUuid, long createdMillis) {
+        }
+        
+        default void onRunEnded(String runId, String courseKey, UUID playerUuid, RunStatus status,
+                                long durationMillis, long finishMillis) {
+        }
+    }
+    
     private final BOCRacingV2 plugin;
     private final DataSource dataSource;
     private final DbDispatcher dispatcher;
-    private final Map<String, CountDownLatch> pendingCreates; // Track pending createRun operations
+    private final RunOutbox outbox;
+    private final KeyResolver keys;
+    private final String personalBestSql;
+    private final String periodBestSql;
+    private final PeriodCalendar periods;
+    private final List<RunListener> listeners;
     
     public RunDao(BOCRacingV2 plugin, DataSource dataSource, DbDispatcher dispatcher) {
         this.plugin = plugin;
         this.dataSource = dataSource;
         this.dispatcher = dispatcher;
-        this.pendingCreates = new ConcurrentHashMap<>();
+        String dbType = plugin.getConfig().getString("database.type", "SQLITE");
+        this.keys = new KeyResolver(dbType);
+        this.personalBestSql = PersonalBests.upsertSql(dbType);
+        this.periodBestSql = PeriodBests.upsertSql(dbType);
+        this.periods = PeriodCalendar.fromConfig(plugin.getConfig());
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.outbox = new RunOutbox(plugin, dispatcher, this::apply);
+        outbox.start();
     }
     
     /**
@@ -38,273 +63,338 @@ public class RunDao {
     public void createRun(String runId, String courseKey, String courseType, String courseFile,
                          UUID playerUuid, Course.StartMode startMode, boolean requireCheckpoints,
                          Course.DropSettings.DropShape dropShape) {
-        CountDownLatch latch = new CountDownLatch(1);
-        pendingCreates.put(runId, latch);
-        
-        dispatcher.submit(() -> {
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO runs (run_id, course_key, course_type, course_file, player_uuid, " +
-                     "start_mode, require_checkpoints, drop_shape, status, created_millis) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-                
-                long now = System.currentTimeMillis();
-                stmt.setString(1, runId);
-                stmt.setString(2, courseKey);
-                stmt.setString(3, courseType);
-                stmt.setString(4, courseFile);
-                stmt.setString(5, playerUuid.toString());
-                stmt.setString(6, startMode.name());
-                stmt.setInt(7, requireCheckpoints ? 1 : 0);
-                stmt.setString(8, dropShape != null ? dropShape.name() : null);
-                stmt.setString(9, "ACTIVE");
-                stmt.setLong(10, now);
-                
-                stmt.executeUpdate();
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run created", kv);
-                
-                // Signal that create completed
-                latch.countDown();
-                pendingCreates.remove(runId);
-            } catch (SQLException e) {
-                latch.countDown();
-                pendingCreates.remove(runId);
-                plugin.getDebugLog().error("RunDao", "Failed to create run", e);
-            }
-        });
+        RunOutbox.Entry entry = new RunOutbox.Entry(RunOutbox.Op.CREATE, runId, courseKey, playerUuid);
+        entry.millis = System.currentTimeMillis();
+        entry.courseType = courseType;
+        entry.courseFile = courseFile;
+        entry.startMode = startMode.name();
+        entry.requireCheckpoints = requireCheckpoints;
+        entry.dropShape = dropShape != null ? dropShape.name() : null;
+        outbox.append(entry);
+        for (RunListener listener : listeners) {
+            listener.onRunCreated(runId, courseKey, playerUuid, entry.millis);
+        }
     }
     
     /**
-     * Ensure run exists before proceeding (waits for createRun if pending, checks existence)
+     * Mark run as started (set start_millis) (async-safe, ordered after createRun)
      */
-    private boolean ensureRunExists(String runId, String operation) {
-        // Check if createRun is still pending
-        CountDownLatch latch = pendingCreates.get(runId);
-        if (latch != null) {
-            try {
-                // Wait up to 1 second for createRun to complete
-                if (!latch.await(1, TimeUnit.SECONDS)) {
-                    Map<String, Object> kv = new HashMap<>();
-                    kv.put("runId", runId);
-                    kv.put("operation", operation);
-                    kv.put("error", "createRun timeout");
-                    plugin.getDebugLog().error("RunDao", "DB_ORDER: createRun did not complete in time", null, kv);
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+    public void markStarted(String runId, long startMillis, String courseKey, UUID playerUuid) {
+        RunOutbox.Entry entry = new RunOutbox.Entry(RunOutbox.Op.START, runId, courseKey, playerUuid);
+        entry.millis = startMillis;
+        outbox.append(entry);
+    }
+    
+    /**
+     * Record a checkpoint split time (async-safe, ordered after createRun)
+     */
+    public void recordCheckpoint(String runId, int checkpointIndex, long splitMillis, String courseKey, UUID playerUuid) {
+        RunOutbox.Entry entry = new RunOutbox.Entry(RunOutbox.Op.CHECKPOINT, runId, courseKey, playerUuid);
+        entry.checkpointIndex = checkpointIndex;
+        entry.millis = splitMillis;
+        outbox.append(entry);
+    }
+    
+    /**
+     * Finish a run (set finish_millis, duration_millis, status) (async-safe, ordered after createRun)
+     */
+    public void finishRun(String runId, long finishMillis, long durationMillis, String courseKey, UUID playerUuid) {
+        RunOutbox.Entry entry = new RunOutbox.Entry(RunOutbox.Op.FINISH, runId, courseKey, playerUuid);
+        entry.millis = finishMillis;
+        entry.durationMillis = durationMillis;
+        outbox.append(entry);
+        for (RunListener listener : listeners) {
+            listener.onRunEnded(runId, courseKey, playerUuid, RunStatus.FINISHED, durationMillis, finishMillis);
         }
-        
-        // Check if run exists in database
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM runs WHERE run_id = ?")) {
-            stmt.setString(1, runId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
-            }
-        } catch (SQLException e) {
-            plugin.getDebugLog().error("RunDao", "Failed to check run existence", e);
-            return false;
+    }
+    
+    /**
+     * Abort a run (set status=ABORTED) (async-safe, ordered after createRun)
+     */
+    public void abortRun(String runId, String reason, String courseKey, UUID playerUuid) {
+        RunOutbox.Entry entry = new RunOutbox.Entry(RunOutbox.Op.ABORT, runId, courseKey, playerUuid);
+        entry.reason = reason;
+        outbox.append(entry);
+        for (RunListener listener : listeners) {
+            listener.onRunEnded(runId, courseKey, playerUuid, RunStatus.ABORTED, 0, 0);
         }
     }
     
     /**
-     * Mark run as started (set start_millis) (async-safe, waits for createRun)
+     * Disqualify a run (set status=DQ, dq_reason) (async-safe, ordered after createRun)
      */
-    public void markStarted(String runId, long startMillis, String courseKey, UUID playerUuid) {
-        dispatcher.submit(() -> {
-            if (!ensureRunExists(runId, "markStarted")) {
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                plugin.getDebugLog().error("RunDao", "DB_ORDER: markStarted called before createRun completed", null, kv);
-                // Retry once after short delay
+    public void dqRun(String runId, String reason, String courseKey, UUID playerUuid) {
+        RunOutbox.Entry entry = new RunOutbox.Entry(RunOutbox.Op.DQ, runId, courseKey, playerUuid);
+        entry.reason = reason;
+        outbox.append(entry);
+        for (RunListener listener : listeners) {
+            listener.onRunEnded(runId, courseKey, playerUuid, RunStatus.DQ, 0, 0);
+        }
+    }
+    
+    public void addListener(RunListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Recompute personal_bests from run history (async, completes with the number of PBs written)
+     */
+    public CompletableFuture<Integer> rebuildPersonalBests() {
+        return dispatcher.submit(DbDispatcher.Priority.WRITE, () -> {
+            try (Connection conn = dataSource.getConnection()) {
+                conn.setAutoCommit(false);
                 try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-                if (!ensureRunExists(runId, "markStarted-retry")) {
-                    plugin.getDebugLog().error("RunDao", "DB_ORDER: markStarted retry failed, run does not exist", null, kv);
-                    return;
+                    int rows = PersonalBests.rebuild(conn);
+                    conn.commit();
+                    
+                    Map<String, Object> kv = new HashMap<>();
+                    kv.put("personalBests", rows);
+                    plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Personal bests rebuilt", kv);
+                    return rows;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
                 }
             }
-            
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE runs SET start_millis = ?, status = ? WHERE run_id = ?")) {
-                
-                stmt.setLong(1, startMillis);
-                stmt.setString(2, "STARTED");
-                stmt.setString(3, runId);
-                
-                stmt.executeUpdate();
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                kv.put("startMillis", startMillis);
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run started", kv);
-            } catch (SQLException e) {
-                plugin.getDebugLog().error("RunDao", "Failed to mark run started", e);
-            }
         });
     }
     
     /**
-     * Record a checkpoint split time (async-safe, waits for createRun)
+     * Calendar that finishes are bucketed with, so boards read the same buckets that were written
      */
-    public void recordCheckpoint(String runId, int checkpointIndex, long splitMillis, String courseKey, UUID playerUuid) {
-        dispatcher.submit(() -> {
-            if (!ensureRunExists(runId, "recordCheckpoint")) {
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("checkpointIndex", checkpointIndex);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                plugin.getDebugLog().error("RunDao", "DB_ORDER: recordCheckpoint called before createRun completed", null, kv);
-                return;
-            }
+    public PeriodCalendar getPeriodCalendar() {
+        return periods;
+    }
+    
+    /**
+     * Writes waiting in the outbox (database slow or unavailable)
+     */
+    public int getPendingWrites() {
+        return outbox.getPendingCount();
+    }
+    
+    /**
+     * Flush uncommitted writes to the outbox (on plugin disable, after the dispatcher shut down)
+     */
+    public void close() {
+        outbox.close();
+    }
+    
+    /**
+     * Apply one outbox entry (DB thread; SQLException is retried by the outbox if transient)
+     */
+    private void apply(RunOutbox.Entry entry) throws SQLException {
+        switch (entry.getOp()) {
+            case CREATE:
+                applyCreate(entry);
+                break;
+            case START:
+                applyUpdate(entry, "UPDATE runs SET start_millis = ?, status = ? WHERE run_uuid = ?",
+                    entry.millis, RunStatus.STARTED.getCode(), "Run started");
+                break;
+            case CHECKPOINT:
+                applyCheckpoint(entry);
+                break;
+            case FINISH:
+                applyFinish(entry);
+                break;
+            case ABORT:
+                applyUpdate(entry, "UPDATE runs SET status = ?, dq_reason = ? WHERE run_uuid = ?",
+                    RunStatus.ABORTED.getCode(), entry.reason, "Run aborted");
+                break;
+            case DQ:
+                applyUpdate(entry, "UPDATE runs SET status = ?, dq_reason = ? WHERE run_uuid = ?",
+                    RunStatus.DQ.getCode(), entry.reason, "Run DQed");
+                break;
+        }
+    }
+    
+    private void applyCreate(RunOutbox.Entry entry) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            // Resolving the player also creates a placeholder row if its upsert has not landed yet
+            long courseId = keys.courseId(conn, entry.getCourseKey());
+            long playerId = keys.playerId(conn, entry.getPlayerUuid());
             
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO run_checkpoints (run_id, checkpoint_index, split_millis) " +
-                     "VALUES (?, ?, ?)")) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO runs (run_uuid, course_id, course_type, course_file, player_id, " +
+                     "start_mode, require_checkpoints, drop_shape, status, created_millis) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
                 
-                stmt.setString(1, runId);
-                stmt.setInt(2, checkpointIndex);
-                stmt.setLong(3, splitMillis);
+                stmt.setBytes(1, UuidBytes.toBytes(entry.getRunId()));
+                stmt.setLong(2, courseId);
+                stmt.setString(3, entry.courseType);
+                stmt.setString(4, entry.courseFile);
+                stmt.setLong(5, playerId);
+                stmt.setString(6, entry.startMode);
+                stmt.setInt(7, entry.requireCheckpoints ? 1 : 0);
+                stmt.setString(8, entry.dropShape);
+                stmt.setShort(9, RunStatus.ACTIVE.getCode());
+                stmt.setLong(10, entry.millis);
                 
                 stmt.executeUpdate();
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                kv.put("checkpointIndex", checkpointIndex);
-                kv.put("splitMillis", splitMillis);
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Checkpoint recorded", kv);
-            } catch (SQLException e) {
-                plugin.getDebugLog().error("RunDao", "Failed to record checkpoint", e);
             }
-        });
+            
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run created", baseKv(entry));
+        } catch (SQLException e) {
+            // Replayed after a lost ack - the row is already there
+            if (!isConstraintViolation(e) || !runExists(entry.getRunId())) {
+                throw e;
+            }
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "RunDao", "Run already created (replay)", baseKv(entry));
+        }
     }
     
-    /**
-     * Finish a run (set finish_millis, duration_millis, status) (async-safe, waits for createRun)
-     */
-    public void finishRun(String runId, long finishMillis, long durationMillis, String courseKey, UUID playerUuid) {
-        dispatcher.submit(() -> {
-            if (!ensureRunExists(runId, "finishRun")) {
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                plugin.getDebugLog().error("RunDao", "DB_ORDER: finishRun called before createRun completed", null, kv);
+    private void applyCheckpoint(RunOutbox.Entry entry) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "INSERT INTO run_checkpoints (run_id, checkpoint_index, split_millis) " +
+                 "SELECT id, ?, ? FROM runs WHERE run_uuid = ?")) {
+            
+            stmt.setInt(1, entry.checkpointIndex);
+            stmt.setLong(2, entry.millis);
+            stmt.setBytes(3, UuidBytes.toBytes(entry.getRunId()));
+            
+            if (stmt.executeUpdate() == 0) {
+                Map<String, Object> kv = baseKv(entry);
+                kv.put("checkpointIndex", entry.checkpointIndex);
+                plugin.getDebugLog().error("RunDao", "DB_ORDER: recordCheckpoint for a run that does not exist", null, kv);
                 return;
             }
             
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE runs SET finish_millis = ?, duration_millis = ?, status = ? WHERE run_id = ?")) {
-                
-                stmt.setLong(1, finishMillis);
-                stmt.setLong(2, durationMillis);
-                stmt.setString(3, "FINISHED");
-                stmt.setString(4, runId);
-                
-                stmt.executeUpdate();
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                kv.put("finishMillis", finishMillis);
-                kv.put("durationMillis", durationMillis);
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run finished", kv);
-            } catch (SQLException e) {
-                plugin.getDebugLog().error("RunDao", "Failed to finish run", e);
+            Map<String, Object> kv = baseKv(entry);
+            kv.put("checkpointIndex", entry.checkpointIndex);
+            kv.put("splitMillis", entry.millis);
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Checkpoint recorded", kv);
+        } catch (SQLException e) {
+            // Replayed after a lost ack - (run_id, checkpoint_index) already recorded
+            if (!isConstraintViolation(e)) {
+                throw e;
             }
-        });
+            Map<String, Object> kv = baseKv(entry);
+            kv.put("checkpointIndex", entry.checkpointIndex);
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "RunDao", "Checkpoint already recorded (replay)", kv);
+        }
     }
     
     /**
-     * Abort a run (set status=ABORTED) (async-safe, waits for createRun)
+     * Finish the run and improve the player's personal best and period bests in one transaction
      */
-    public void abortRun(String runId, String reason, String courseKey, UUID playerUuid) {
-        dispatcher.submit(() -> {
-            if (!ensureRunExists(runId, "abortRun")) {
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                plugin.getDebugLog().error("RunDao", "DB_ORDER: abortRun called before createRun completed", null, kv);
-                return;
-            }
-            
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE runs SET status = ?, dq_reason = ? WHERE run_id = ?")) {
+    private void applyFinish(RunOutbox.Entry entry) throws SQLException {
+        byte[] runUuid = UuidBytes.toBytes(entry.getRunId());
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                         "UPDATE runs SET finish_millis = ?, duration_millis = ?, status = ? WHERE run_uuid = ?")) {
+                    
+                    stmt.setLong(1, entry.millis);
+                    stmt.setLong(2, entry.durationMillis);
+                    stmt.setShort(3, RunStatus.FINISHED.getCode());
+                    stmt.setBytes(4, runUuid);
+                    
+                    if (stmt.executeUpdate() == 0) {
+                        conn.rollback();
+                        plugin.getDebugLog().error("RunDao", "DB_ORDER: finishRun for a run that does not exist", null, baseKv(entry));
+                        return;
+                    }
+                }
                 
-                stmt.setString(1, "ABORTED");
-                stmt.setString(2, reason);
-                stmt.setString(3, runId);
+                // Replays are harmless: the same duration is never strictly better than itself
+                try (PreparedStatement stmt = conn.prepareStatement(personalBestSql)) {
+                    stmt.setLong(1, entry.durationMillis);
+                    stmt.setLong(2, entry.millis);
+                    stmt.setBytes(3, runUuid);
+                    stmt.executeUpdate();
+                }
                 
-                stmt.executeUpdate();
+                // Daily, weekly and season buckets of the finish time
+                try (PreparedStatement stmt = conn.prepareStatement(periodBestSql)) {
+                    for (Period period : Period.values()) {
+                        stmt.setShort(1, period.getCode());
+                        stmt.setInt(2, periods.bucket(period, entry.millis));
+                        stmt.setLong(3, entry.durationMillis);
+                        stmt.setLong(4, entry.millis);
+                        stmt.setBytes(5, runUuid);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
                 
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                kv.put("reason", reason);
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run aborted", kv);
+                conn.commit();
             } catch (SQLException e) {
-                plugin.getDebugLog().error("RunDao", "Failed to abort run", e);
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
             }
-        });
+            
+            Map<String, Object> kv = baseKv(entry);
+            kv.put("finishMillis", entry.millis);
+            kv.put("durationMillis", entry.durationMillis);
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run finished", kv);
+        }
     }
     
     /**
-     * Disqualify a run (set status=DQ, dq_reason) (async-safe, waits for createRun)
+     * Two-parameter status update keyed by run_uuid (start, abort, DQ)
      */
-    public void dqRun(String runId, String reason, String courseKey, UUID playerUuid) {
-        dispatcher.submit(() -> {
-            if (!ensureRunExists(runId, "dqRun")) {
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                plugin.getDebugLog().error("RunDao", "DB_ORDER: dqRun called before createRun completed", null, kv);
+    private void applyUpdate(RunOutbox.Entry entry, String sql, Object first, Object second, String logMsg) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setObject(1, first);
+            stmt.setObject(2, second);
+            stmt.setBytes(3, UuidBytes.toBytes(entry.getRunId()));
+            
+            if (stmt.executeUpdate() == 0) {
+                Map<String, Object> kv = baseKv(entry);
+                kv.put("op", entry.getOp().name());
+                plugin.getDebugLog().error("RunDao", "DB_ORDER: update for a run that does not exist", null, kv);
                 return;
             }
             
-            try (Connection conn = dataSource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE runs SET status = ?, dq_reason = ? WHERE run_id = ?")) {
-                
-                stmt.setString(1, "DQ");
-                stmt.setString(2, reason);
-                stmt.setString(3, runId);
-                
-                stmt.executeUpdate();
-                
-                Map<String, Object> kv = new HashMap<>();
-                kv.put("runId", runId);
-                kv.put("courseKey", courseKey);
-                kv.put("playerUuid", playerUuid.toString());
-                kv.put("reason", reason);
-                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", "Run DQed", kv);
-            } catch (SQLException e) {
-                plugin.getDebugLog().error("RunDao", "Failed to DQ run", e);
+            Map<String, Object> kv = baseKv(entry);
+            if (entry.getOp() == RunOutbox.Op.START) {
+                kv.put("startMillis", entry.millis);
+            } else {
+                kv.put("reason", entry.reason);
             }
-        });
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunDao", logMsg, kv);
+        }
+    }
+    
+    private boolean runExists(String runId) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM runs WHERE run_uuid = ?")) {
+            stmt.setBytes(1, UuidBytes.toBytes(runId));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    /**
+     * Constraint violation (MySQL reports SQLState 23xxx, SQLite reports SQLITE_CONSTRAINT)
+     */
+    private boolean isConstraintViolation(SQLException e) {
+        if (e instanceof SQLIntegrityConstraintViolationException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        if (state != null && state.startsWith("23")) {
+            return true;
+        }
+        String message = e.getMessage();
+        return message != null && message.contains("SQLITE_CONSTRAINT");
+    }
+    
+    private Map<String, Object> baseKv(RunOutbox.Entry entry) {
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("runId", entry.getRunId());
+        kv.put("courseKey", entry.getCourseKey());
+        kv.put("playerUuid", entry.getPlayerUuid().toString());
+        return kv;
     }
 }
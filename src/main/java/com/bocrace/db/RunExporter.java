@@ -0,0 +1,370 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the full run history (runs joined with run_checkpoints) to a CSV or JSONL file in plugins/BOCRacingV2/exports
+ * Reads one forward-only result set on the read pool with a fixed fetch size and writes each run
+ * as soon as its last split has been read, through a buffered file channel (optionally gzipped),
+ * so memory stays constant however large the table is. One export runs at a time, on its own thread
+ */
+public class RunExporter {
+    
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String[] COLUMNS = {
+        "run_id", "course_key", "player_uuid", "player_name", "course_type", "start_mode", "require_checkpoints",
+        "drop_shape", "status", "dq_reason", "created_millis", "start_millis", "finish_millis", "duration_millis", "splits"
+    };
+    
+    public enum Format {
+        CSV("csv"),
+        JSONL("jsonl");
+        
+        private final String extension;
+        
+        Format(String extension) {
+            this.extension = extension;
+        }
+        
+        public String getExtension() {
+            return extension;
+        }
+    }
+    
+    /**
+     * Called from the export thread every progressSeconds
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long runsWritten, long totalRuns);
+    }
+    
+    /**
+     * Outcome of a finished export
+     */
+    public static class Result {
+        private final File file;
+        private final long runs;
+        private final long splits;
+        private final long bytes;
+        private final long elapsedMillis;
+        
+        public Result(File file, long runs, long splits, long bytes, long elapsedMillis) {
+            this.file = file;
+            this.runs = runs;
+            this.splits = splits;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public File getFile() { return file; }
+        public long getRuns() { return runs; }
+        public long getSplits() { return splits; }
+        public long getBytes() { return bytes; }
+        public long getElapsedMillis() { return elapsedMillis; }
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final DataSource dataSource;
+    private final int fetchSize;
+    private final long progressMillis;
+    private final File exportDir;
+    private final AtomicBoolean running;
+    private final AtomicLong runsWritten;
+    private volatile boolean stopped;
+    
+    public RunExporter(BOCRacingV2 plugin, DataSource readDataSource) {
+        this.plugin = plugin;
+        this.dataSource = readDataSource;
+        this.fetchSize = Math.max(100, plugin.getConfig().getInt("database.export.fetchSize", 1000));
+        this.progressMillis = Math.max(1, plugin.getConfig().getLong("database.export.progressSeconds", 5)) * 1000L;
+        this.exportDir = new File(plugin.getDataFolder(), "exports");
+        this.running = new AtomicBoolean();
+        this.runsWritten = new AtomicLong();
+    }
+    
+    /**
+     * Start an export in the background
+     * @return the finished export, or a failed future (IllegalStateException if one is already running)
+     */
+    public CompletableFuture<Result> export(Format format, boolean gzip, ProgressListener progress) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        if (!running.compareAndSet(false, true)) {
+            future.completeExceptionally(new IllegalStateException("An export is already running"));
+            return future;
+        }
+        runsWritten.set(0);
+        Thread.ofVirtual().name("BOCRacingV2-DB-Export").start(() -> {
+            try {
+                future.complete(run(format, gzip, progress));
+            } catch (Exception e) {
+                plugin.getDebugLog().error("RunExporter", "Export failed", e);
+                future.completeExceptionally(e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return future;
+    }
+    
+    public boolean isRunning() {
+        return running.get();
+    }
+    
+    /**
+     * Abort a running export (on plugin disable; the partial file is deleted)
+     */
+    public void stop() {
+        stopped = true;
+    }
+    
+    private Result run(Format format, boolean gzip, ProgressListener progress) throws IOException, SQLException {
+        long started = System.currentTimeMillis();
+        String name = "runs-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(started))
+                      + "." + format.getExtension() + (gzip ? ".gz" : "");
+        Files.createDirectories(exportDir.toPath());
+        Path target = exportDir.toPath().resolve(name);
+        Path partial = exportDir.toPath().resolve(name + ".part");
+        
+        long runs = 0;
+        long splits = 0;
+        boolean complete = false;
+        try (Connection conn = dataSource.getConnection()) {
+            long totalRuns = countRuns(conn);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("file", name);
+            kv.put("totalRuns", totalRuns);
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunExporter", "Export started", kv);
+            
+            // Runs come out in id order with their splits adjacent (runs PK scan, run_checkpoints PK lookups: no sort)
+            try (OutputStream file = Channels.newOutputStream(FileChannel.open(partial, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(
+                     gzip ? new GZIPOutputStream(file, BUFFER_BYTES) : file, StandardCharsets.UTF_8), BUFFER_BYTES);
+                 PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT r.id, r.run_uuid, c.course_key, p.uuid, p.last_name, r.course_type, r.start_mode, " +
+                     "r.require_checkpoints, r.drop_shape, r.status, r.dq_reason, r.created_millis, r.start_millis, " +
+                     "r.finish_millis, r.duration_millis, cp.checkpoint_index, cp.split_millis " +
+                     "FROM runs r " +
+                     "JOIN courses c ON c.id = r.course_id " +
+                     "JOIN players p ON p.id = r.player_id " +
+                     "LEFT JOIN run_checkpoints cp ON cp.run_id = r.id " +
+                     "ORDER BY r.id, cp.checkpoint_index",
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                
+                stmt.setFetchSize(fetchSize);
+                if (format == Format.CSV) {
+                    writer.write(String.join(",", COLUMNS));
+                    writer.write('\n');
+                }
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    long currentId = -1;
+                    String[] row = null;
+                    StringBuilder runSplits = new StringBuilder();
+                    long lastProgress = System.currentTimeMillis();
+                    while (rs.next()) {
+                        long id = rs.getLong("id");
+                        if (id != currentId) {
+                            if (row != null) {
+                                writeRun(writer, format, row, runSplits);
+                                runs++;
+                                runsWritten.set(runs);
+                            }
+                            if (stopped) {
+                                throw new IOException("Export aborted (plugin disabled)");
+                            }
+                            long now = System.currentTimeMillis();
+                            if (progress != null && now - lastProgress >= progressMillis) {
+                                lastProgress = now;
+                                progress.onProgress(runs, totalRuns);
+                            }
+                            currentId = id;
+                            row = readRun(rs);
+                            runSplits.setLength(0);
+                        }
+                        int checkpointIndex = rs.getInt("checkpoint_index");
+                        if (!rs.wasNull()) {
+                            appendSplit(runSplits, format, checkpointIndex, rs.getLong("split_millis"));
+                            splits++;
+                        }
+                    }
+                    if (row != null) {
+                        writeRun(writer, format, row, runSplits);
+                        runs++;
+                        runsWritten.set(runs);
+                    }
+                }
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            complete = true;
+        } finally {
+            if (!complete) {
+                Files.deleteIfExists(partial);
+            }
+        }
+        
+        Result result = new Result(target.toFile(), runs, splits, Files.size(target), System.currentTimeMillis() - started);
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("file", name);
+        kv.put("runs", runs);
+        kv.put("splits", splits);
+        kv.put("bytes", result.getBytes());
+        kv.put("elapsedMs", result.getElapsedMillis());
+        plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunExporter", "Export finished", kv);
+        return result;
+    }
+    
+    /**
+     * Snapshot of exporter state (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("runsWritten", runsWritten.get());
+        metrics.put("fetchSize", fetchSize);
+        return metrics;
+    }
+    
+    private long countRuns(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM runs")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+    
+    /**
+     * Run columns of the current row as text (null for SQL NULL), in COLUMNS order minus splits
+     */
+    private String[] readRun(ResultSet rs) throws SQLException {
+        String[] row = new String[COLUMNS.length - 1];
+        row[0] = UuidBytes.fromBytes(rs.getBytes("run_uuid")).toString();
+        row[1] = rs.getString("course_key");
+        row[2] = UuidBytes.fromBytes(rs.getBytes("uuid")).toString();
+        row[3] = rs.getString("last_name");
+        row[4] = rs.getString("course_type");
+        row[5] = rs.getString("start_mode");
+        row[6] = String.valueOf(rs.getInt("require_checkpoints") != 0);
+        row[7] = rs.getString("drop_shape");
+        RunStatus status = RunStatus.fromCode(rs.getInt("status"));
+        row[8] = status != null ? status.name() : "UNKNOWN";
+        row[9] = rs.getString("dq_reason");
+        row[10] = longOrNull(rs, "created_millis");
+        row[11] = longOrNull(rs, "start_millis");
+        row[12] = longOrNull(rs, "finish_millis");
+        row[13] = longOrNull(rs, "duration_millis");
+        return row;
+    }
+    
+    private static String longOrNull(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : String.valueOf(value);
+    }
+    
+    /**
+     * CSV: "index:millis" pairs separated by ';'. JSONL: {"index":millis,...} object members
+     */
+    private static void appendSplit(StringBuilder splits, Format format, int checkpointIndex, long splitMillis) {
+        if (splits.length() > 0) {
+            splits.append(format == Format.CSV ? ';' : ',');
+        }
+        if (format == Format.CSV) {
+            splits.append(checkpointIndex).append(':').append(splitMillis);
+        } else {
+            splits.append('"').append(checkpointIndex).append("\":").append(splitMillis);
+        }
+    }
+    
+    private static void writeRun(Writer writer, Format format, String[] row, CharSequence splits) throws IOException {
+        if (format == Format.CSV) {
+            for (String value : row) {
+                writeCsv(writer, value);
+                writer.write(',');
+            }
+            writeCsv(writer, splits.toString());
+        } else {
+            writer.write('{');
+            for (int i = 0; i < row.length; i++) {
+                writer.write('"');
+                writer.write(COLUMNS[i]);
+                writer.write("\":");
+                writeJson(writer, row[i], i == 6 || (i >= 10 && i <= 13));
+                writer.write(',');
+            }
+            writer.write("\"splits\":{");
+            writer.append(splits);
+            writer.write('}');
+            writer.write('}');
+        }
+        writer.write('\n');
+    }
+    
+    private static void writeCsv(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+    
+    private static void writeJson(Writer writer, String value, boolean literal) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        if (literal) {
+            writer.write(value); // Numbers and booleans
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) ch));
+                    } else {
+                        writer.write(ch);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,493 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Durable outbox for run writes (plugins/BOCRacingV2/runs.outbox)
+ * Every run write is appended (and forced) before it is sent to the database, then acked once
+ * committed. While the database is down or slow, writes stay queued in order on disk and a
+ * replayer drains them when it is healthy again; anything left at shutdown is replayed on startup
+ * The backlog is split per dispatcher lane (hashed by run_id), so one run's writes stay ordered
+ * while different runs drain in parallel
+ * Records are framed as [length][crc32][payload] like the drop journal
+ */
+public class RunOutbox {
+    
+    private static final String FILE_NAME = "runs.outbox";
+    private static final byte TYPE_APPEND = 'A';
+    private static final byte TYPE_ACK = 'K';
+    private static final long RETRY_BASE_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 60000;
+    
+    /**
+     * Run write operation
+     */
+    public enum Op {
+        CREATE, START, CHECKPOINT, FINISH, ABORT, DQ
+    }
+    
+    /**
+     * One queued run write (fields unused by an op are left at their defaults)
+     */
+    public static class Entry {
+        private final Op op;
+        private final String runId;
+        private final String courseKey;
+        private final UUID playerUuid;
+        private long seq;
+        long millis; // created / start / split / finish millis
+        long durationMillis;
+        int checkpointIndex;
+        String reason;
+        String courseType;
+        String courseFile;
+        String startMode;
+        boolean requireCheckpoints;
+        String dropShape;
+        
+        Entry(Op op, String runId, String courseKey, UUID playerUuid) {
+            this.op = op;
+            this.runId = runId;
+            this.courseKey = courseKey;
+            this.playerUuid = playerUuid;
+        }
+        
+        public Op getOp() { return op; }
+        public String getRunId() { return runId; }
+        public String getCourseKey() { return courseKey; }
+        public UUID getPlayerUuid() { return playerUuid; }
+        public long getSeq() { return seq; }
+    }
+    
+    /**
+     * Applies one entry to the database (DB thread)
+     */
+    @FunctionalInterface
+    public interface Applier {
+        void apply(Entry entry) throws SQLException;
+    }
+    
+    /**
+     * Backlog for one dispatcher lane (drained only on that lane's thread)
+     */
+    private static class Lane {
+        private final int index;
+        private final ConcurrentLinkedDeque<Entry> pending = new ConcurrentLinkedDeque<>(); // Not yet committed, in append order
+        private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+        private long retryAtMillis; // Lane thread only
+        private int consecutiveFailures; // Lane thread only
+        
+        private Lane(int index) {
+            this.index = index;
+        }
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final DbDispatcher dispatcher;
+    private final Applier applier;
+    private final File outboxFile;
+    private final Lane[] lanes;
+    private final ConcurrentLinkedQueue<ByteBuffer> unwritten; // Appended frames not yet on disk
+    private FileChannel channel;
+    private BukkitTask replayTask;
+    private long nextSeq;
+    
+    public RunOutbox(BOCRacingV2 plugin, DbDispatcher dispatcher, Applier applier) {
+        this.plugin = plugin;
+        this.dispatcher = dispatcher;
+        this.applier = applier;
+        this.outboxFile = new File(plugin.getDataFolder(), FILE_NAME);
+        this.lanes = new Lane[dispatcher.getLaneCount()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i);
+        }
+        this.unwritten = new ConcurrentLinkedQueue<>();
+        this.nextSeq = 1;
+    }
+    
+    /**
+     * Load unacked writes from a previous run, compact the file and start the replayer
+     */
+    public void start() {
+        if (outboxFile.exists() && outboxFile.length() > 0) {
+            Map<Long, Entry> unacked = new LinkedHashMap<>();
+            int records = 0;
+            boolean torn = false;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(outboxFile)))) {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    int crc = in.readInt();
+                    if (length <= 0 || length > 1024 * 1024) {
+                        torn = true;
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 check = new CRC32();
+                    check.update(payload);
+                    if ((int) check.getValue() != crc) {
+                        torn = true;
+                        break;
+                    }
+                    records++;
+                    
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    byte type = record.readByte();
+                    long seq = record.readLong();
+                    nextSeq = Math.max(nextSeq, seq + 1);
+                    if (type == TYPE_APPEND) {
+                        Entry entry = decode(record);
+                        entry.seq = seq;
+                        unacked.put(seq, entry);
+                    } else if (type == TYPE_ACK) {
+                        unacked.remove(seq);
+                    }
+                }
+            } catch (EOFException e) {
+                torn = true; // Partial record at the tail (crash mid-write)
+            } catch (IOException | IllegalArgumentException e) {
+                plugin.getDebugLog().error("RunOutbox", "Failed to read run outbox", e);
+            }
+            for (Entry entry : unacked.values()) {
+                laneOf(entry).pending.add(entry);
+            }
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("records", records);
+            kv.put("torn", torn);
+            kv.put("pending", unacked.size());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunOutbox", "Run outbox loaded", kv);
+            if (!unacked.isEmpty()) {
+                plugin.getLogger().info("Replaying " + unacked.size() + " run write(s) left in the outbox");
+            }
+        }
+        
+        // Start a fresh file holding only the unacked entries
+        try {
+            File dataFolder = plugin.getDataFolder();
+            if (!dataFolder.exists()) {
+                dataFolder.mkdirs();
+            }
+            channel = FileChannel.open(outboxFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            for (Lane lane : lanes) {
+                for (Entry entry : lane.pending) {
+                    unwritten.add(frame(encode(entry)));
+                }
+            }
+            writeUnwritten(true);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to open run outbox, run writes will not survive a database outage: " + e.getMessage());
+            plugin.getDebugLog().error("RunOutbox", "Failed to open run outbox", e);
+            channel = null;
+        }
+        
+        // Replayer: retries the backlog while the database is unavailable
+        replayTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            for (Lane lane : lanes) {
+                if (!lane.pending.isEmpty()) {
+                    requestDrain(lane);
+                }
+            }
+        }, 100L, 100L);
+        for (Lane lane : lanes) {
+            requestDrain(lane);
+        }
+    }
+    
+    /**
+     * Append a run write (durable before it is sent) and request a drain
+     * A write whose run id is not a UUID could never be applied, so it is rejected here instead of spooled
+     */
+    public synchronized void append(Entry entry) {
+        if (!isValidRunId(entry.getRunId())) {
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("runId", entry.getRunId());
+            kv.put("op", entry.getOp().name());
+            plugin.getDebugLog().warn(DebugLog.Tag.DATA, "RunOutbox", "Rejected run write with a malformed run id", kv);
+            return;
+        }
+        entry.seq = nextSeq++;
+        try {
+            unwritten.add(frame(encode(entry)));
+        } catch (IOException e) {
+            plugin.getDebugLog().error("RunOutbox", "Failed to encode run write", e);
+        }
+        Lane lane = laneOf(entry);
+        lane.pending.add(entry);
+        requestDrain(lane);
+    }
+    
+    private static boolean isValidRunId(String runId) {
+        if (runId == null) {
+            return false;
+        }
+        try {
+            UUID.fromString(runId);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    private Lane laneOf(Entry entry) {
+        return lanes[dispatcher.laneFor(entry.getRunId())];
+    }
+    
+    /**
+     * Schedule one drain on the lane's thread (coalesces bursts of appends)
+     */
+    private void requestDrain(Lane lane) {
+        if (lane.drainScheduled.compareAndSet(false, true)) {
+            if (!dispatcher.submit(lane.index, DbDispatcher.Priority.WRITE, () -> drain(lane))) {
+                // Queue full or shut down - the entries stay in the outbox for the replayer
+                lane.drainScheduled.set(false);
+            }
+        }
+    }
+    
+    /**
+     * Persist new entries, then apply pending entries in order until the backlog is empty
+     * or the database fails (lane thread)
+     */
+    private void drain(Lane lane) {
+        lane.drainScheduled.set(false);
+        try {
+            writeUnwritten(true);
+        } catch (IOException e) {
+            plugin.getDebugLog().error("RunOutbox", "Failed to write run outbox", e);
+        }
+        
+        if (System.currentTimeMillis() < lane.retryAtMillis) {
+            return; // Backing off after a failure
+        }
+        
+        int applied = 0;
+        List<Long> acked = new ArrayList<>();
+        Entry entry;
+        while ((entry = lane.pending.peek()) != null) {
+            try {
+                applier.apply(entry);
+            } catch (SQLException e) {
+                if (isTransient(e)) {
+                    lane.consecutiveFailures++;
+                    long backoff = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(lane.consecutiveFailures - 1, 6));
+                    lane.retryAtMillis = System.currentTimeMillis() + backoff;
+                    
+                    Map<String, Object> kv = new HashMap<>();
+                    kv.put("runId", entry.getRunId());
+                    kv.put("op", entry.getOp().name());
+                    kv.put("lane", lane.index);
+                    kv.put("pending", lane.pending.size());
+                    kv.put("retryInMs", backoff);
+                    kv.put("error", e.getMessage());
+                    plugin.getDebugLog().warn(DebugLog.Tag.DATA, "RunOutbox", "Database unavailable, run writes held in outbox", kv);
+                    break;
+                }
+                // Permanent failure (constraint, bad data) - drop it so the backlog cannot wedge
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("runId", entry.getRunId());
+                kv.put("op", entry.getOp().name());
+                kv.put("sqlState", e.getSQLState());
+                plugin.getDebugLog().error("RunOutbox", "Run write failed permanently, discarding", e, kv);
+            } catch (RuntimeException e) {
+                // Bad entry (e.g. replayed from an older outbox) - retrying cannot help, and it would block the lane
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("runId", entry.getRunId());
+                kv.put("op", entry.getOp().name());
+                plugin.getDebugLog().error("RunOutbox", "Run write failed permanently, discarding", e, kv);
+            }
+            lane.pending.poll();
+            acked.add(entry.getSeq());
+            applied++;
+        }
+        
+        if (applied > 0) {
+            if (lane.consecutiveFailures > 0) {
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("lane", lane.index);
+                kv.put("replayed", applied);
+                kv.put("pending", lane.pending.size());
+                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunOutbox", "Database recovered, outbox drained", kv);
+            }
+            lane.consecutiveFailures = 0;
+            lane.retryAtMillis = 0;
+            writeAcks(acked);
+        }
+    }
+    
+    /**
+     * Record acks, or compact the file to empty once nothing is pending
+     */
+    private synchronized void writeAcks(List<Long> acked) {
+        if (channel == null) return;
+        try {
+            if (getPendingCount() == 0 && unwritten.isEmpty()) {
+                channel.truncate(0);
+                channel.position(0);
+                return;
+            }
+            for (long seq : acked) {
+                ByteBuffer payload = ByteBuffer.allocate(9);
+                payload.put(TYPE_ACK).putLong(seq);
+                unwritten.add(frame(payload.array()));
+            }
+            // Acks need no force: a lost ack only replays an idempotent write
+            writeUnwritten(false);
+        } catch (IOException e) {
+            plugin.getDebugLog().error("RunOutbox", "Failed to write run outbox acks", e);
+        }
+    }
+    
+    /**
+     * Write all queued frames in one gathered write (optionally forced)
+     */
+    private synchronized void writeUnwritten(boolean force) throws IOException {
+        if (channel == null || unwritten.isEmpty()) return;
+        List<ByteBuffer> batch = new ArrayList<>();
+        ByteBuffer frame;
+        while ((frame = unwritten.poll()) != null) {
+            batch.add(frame);
+        }
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            channel.write(buffers);
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+    
+    /**
+     * Connection loss, timeouts, deadlocks and SQLite busy/locked are retried; anything else is permanent
+     */
+    static boolean isTransient(SQLException e) {
+        if (e instanceof SQLTransientException || e instanceof SQLRecoverableException) {
+            return true;
+        }
+        String state = e.getSQLState();
+        if (state != null && (state.startsWith("08") || state.startsWith("40"))) {
+            return true;
+        }
+        String message = e.getMessage();
+        return message != null && (message.contains("SQLITE_BUSY") || message.contains("SQLITE_LOCKED"));
+    }
+    
+    /**
+     * Writes not yet committed to the database
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Lane lane : lanes) {
+            count += lane.pending.size();
+        }
+        return count;
+    }
+    
+    /**
+     * Flush everything not yet committed to disk and close (after the dispatcher has shut down)
+     */
+    public synchronized void close() {
+        if (replayTask != null) {
+            replayTask.cancel();
+            replayTask = null;
+        }
+        if (channel == null) return;
+        try {
+            writeUnwritten(true);
+            channel.close();
+        } catch (IOException e) {
+            plugin.getDebugLog().error("RunOutbox", "Failed to close run outbox", e);
+        }
+        channel = null;
+        
+        int pendingCount = getPendingCount();
+        if (pendingCount > 0) {
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("pending", pendingCount);
+            plugin.getDebugLog().warn(DebugLog.Tag.DATA, "RunOutbox", "Run writes kept in outbox for next startup", kv);
+            plugin.getLogger().warning(pendingCount + " run write(s) were not committed and will be replayed on next startup");
+        }
+    }
+    
+    private ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return frame;
+    }
+    
+    private byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(160);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TYPE_APPEND);
+        out.writeLong(entry.seq);
+        out.writeByte(entry.op.ordinal());
+        out.writeUTF(entry.runId);
+        out.writeUTF(entry.courseKey);
+        out.writeLong(entry.playerUuid.getMostSignificantBits());
+        out.writeLong(entry.playerUuid.getLeastSignificantBits());
+        out.writeLong(entry.millis);
+        out.writeLong(entry.durationMillis);
+        out.writeInt(entry.checkpointIndex);
+        writeNullable(out, entry.reason);
+        writeNullable(out, entry.courseType);
+        writeNullable(out, entry.courseFile);
+        writeNullable(out, entry.startMode);
+        out.writeBoolean(entry.requireCheckpoints);
+        writeNullable(out, entry.dropShape);
+        out.flush();
+        return bytes.toByteArray();
+    }
+    
+    private Entry decode(DataInputStream in) throws IOException {
+        Op op = Op.values()[in.readUnsignedByte()];
+        String runId = in.readUTF();
+        String courseKey = in.readUTF();
+        UUID playerUuid = new UUID(in.readLong(), in.readLong());
+        Entry entry = new Entry(op, runId, courseKey, playerUuid);
+        entry.millis = in.readLong();
+        entry.durationMillis = in.readLong();
+        entry.checkpointIndex = in.readInt();
+        entry.reason = readNullable(in);
+        entry.courseType = readNullable(in);
+        entry.courseFile = readNullable(in);
+        entry.startMode = readNullable(in);
+        entry.requireCheckpoints = in.readBoolean();
+        entry.dropShape = readNullable(in);
+        return entry;
+    }
+    
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,286 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retention for ABORTED and DQ runs (database.retention)
+ * Every intervalMinutes, terminal non-finished runs older than `days` are counted into retired_runs
+ * (per player, course and status) and deleted with their checkpoints, batchSize runs per low-priority
+ * writer transaction. A runs.id cursor in rollup_state means each pass only looks at runs inserted since
+ * the last one, stopping at the first that has not aged past the cutoff, and runs are never retired
+ * before CourseAnalytics has rolled them up (its mark is keyed on runs.id as well).
+ * On SQLite each pass that deleted rows ends with incremental_vacuum and optimize
+ */
+public class RunRetention {
+    
+    private static final String STATE = "retention";
+    
+    private final BOCRacingV2 plugin;
+    private final DataSource dataSource;
+    private final DbDispatcher dispatcher;
+    private final boolean sqlite;
+    private final long retainMillis;
+    private final long intervalTicks;
+    private final int batchSize;
+    private final String retiredSql;
+    private final AtomicBoolean running;
+    private final AtomicLong retiredRuns;
+    private final AtomicLong vacuumedPages;
+    private volatile long lastPassMillis;
+    private volatile int lastPassRuns;
+    private BukkitTask task;
+    
+    public RunRetention(BOCRacingV2 plugin, DataSource dataSource, DbDispatcher dispatcher) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.dispatcher = dispatcher;
+        this.sqlite = !"MYSQL".equalsIgnoreCase(plugin.getConfig().getString("database.type", "SQLITE"));
+        this.retainMillis = Math.max(1, plugin.getConfig().getLong("database.retention.days", 30)) * 86_400_000L;
+        this.intervalTicks = Math.max(1, plugin.getConfig().getLong("database.retention.intervalMinutes", 60)) * 1200L;
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("database.retention.batchSize", 500));
+        this.retiredSql = "INSERT INTO retired_runs (player_id, course_id, status, runs, last_created_millis) " +
+            "VALUES (?, ?, ?, ?, ?) " + (sqlite
+                ? "ON CONFLICT(player_id, course_id, status) DO UPDATE SET runs = runs + excluded.runs, " +
+                  "last_created_millis = MAX(last_created_millis, excluded.last_created_millis)"
+                : "ON DUPLICATE KEY UPDATE runs = runs + VALUES(runs), " +
+                  "last_created_millis = GREATEST(last_created_millis, VALUES(last_created_millis))");
+        this.running = new AtomicBoolean();
+        this.retiredRuns = new AtomicLong();
+        this.vacuumedPages = new AtomicLong();
+    }
+    
+    /**
+     * Start the periodic retention pass if database.retention.enabled (first pass after one interval)
+     */
+    public void start() {
+        if (!plugin.getConfig().getBoolean("database.retention.enabled", false)) {
+            return;
+        }
+        this.task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::pass, intervalTicks, intervalTicks);
+    }
+    
+    public void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    public boolean isEnabled() {
+        return task != null;
+    }
+    
+    /**
+     * Snapshot of retention progress (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("days", retainMillis / 86_400_000L);
+        metrics.put("running", running.get());
+        metrics.put("retiredRuns", retiredRuns.get());
+        metrics.put("lastPassRuns", lastPassRuns);
+        metrics.put("lastPassSecondsAgo", lastPassMillis > 0 ? (System.currentTimeMillis() - lastPassMillis) / 1000 : -1);
+        if (sqlite) {
+            metrics.put("vacuumedPages", vacuumedPages.get());
+        }
+        return metrics;
+    }
+    
+    /**
+     * Retire every eligible run, one batch at a time (Bukkit async thread; batches run on the dispatcher)
+     */
+    private void pass() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long cutoff = System.currentTimeMillis() - retainMillis;
+            int total = 0;
+            int retired;
+            do {
+                retired = dispatcher.submit(DbDispatcher.Priority.LOW, () -> retireBatch(cutoff)).join();
+                total += retired;
+            } while (retired == batchSize && !dispatcher.isShutdown());
+            
+            if (total > 0 && sqlite) {
+                dispatcher.submit(DbDispatcher.Priority.LOW, this::compactSqlite).join();
+            }
+            lastPassRuns = total;
+            lastPassMillis = System.currentTimeMillis();
+            
+            if (total > 0) {
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("runs", total);
+                kv.put("retiredRuns", retiredRuns.get());
+                plugin.getDebugLog().info(DebugLog.Tag.DATA, "RunRetention", "Aborted/DQ runs retired", kv);
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                // Shed while the writer is busy (or shut down); the cursor is saved per batch, so the next pass continues
+                return;
+            }
+            plugin.getDebugLog().error("RunRetention", "Retention pass failed (will retry)", e);
+        } finally {
+            running.set(false);
+        }
+    }
+    
+    /**
+     * Count up to batchSize eligible runs into retired_runs, delete them and move the cursor (dispatcher thread)
+     * @return number of runs retired
+     */
+    private int retireBatch(long cutoff) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long[] cursor = readMark(conn, STATE);
+                // Only runs CourseAnalytics has already counted
+                long[] rolledUp = readMark(conn, "course_stats");
+                
+                List<Long> ids = new ArrayList<>();
+                Map<String, long[]> counters = new HashMap<>(); // player|course|status -> {player, course, status, runs, last}
+                long lastMillis = cursor[0];
+                long lastId = cursor[1];
+                try (PreparedStatement stmt = conn.prepareStatement(
+                         "SELECT id, player_id, course_id, status, created_millis FROM runs " +
+                         "WHERE id > ? AND id <= ? AND status IN (?, ?) ORDER BY id LIMIT ?")) {
+                    stmt.setLong(1, cursor[1]);
+                    stmt.setLong(2, rolledUp[1]);
+                    stmt.setShort(3, RunStatus.ABORTED.getCode());
+                    stmt.setShort(4, RunStatus.DQ.getCode());
+                    stmt.setInt(5, batchSize);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            long created = rs.getLong("created_millis");
+                            if (created >= cutoff) {
+                                // Too young: the cursor must not move past it
+                                break;
+                            }
+                            lastId = rs.getLong("id");
+                            lastMillis = created;
+                            ids.add(lastId);
+                            long playerId = rs.getLong("player_id");
+                            long courseId = rs.getLong("course_id");
+                            short status = rs.getShort("status");
+                            long[] counter = counters.computeIfAbsent(playerId + "|" + courseId + "|" + status,
+                                key -> new long[] {playerId, courseId, status, 0, 0});
+                            counter[3]++;
+                            counter[4] = Math.max(counter[4], lastMillis);
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.rollback();
+                    return 0;
+                }
+                
+                try (PreparedStatement stmt = conn.prepareStatement(retiredSql)) {
+                    for (long[] counter : counters.values()) {
+                        stmt.setLong(1, counter[0]);
+                        stmt.setLong(2, counter[1]);
+                        stmt.setShort(3, (short) counter[2]);
+                        stmt.setLong(4, counter[3]);
+                        stmt.setLong(5, counter[4]);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+                // Checkpoints first: SQLite does not enforce the ON DELETE CASCADE (foreign_keys is off)
+                try (PreparedStatement checkpoints = conn.prepareStatement("DELETE FROM run_checkpoints WHERE run_id = ?");
+                     PreparedStatement runs = conn.prepareStatement("DELETE FROM runs WHERE id = ?")) {
+                    for (long id : ids) {
+                        checkpoints.setLong(1, id);
+                        checkpoints.addBatch();
+                        runs.setLong(1, id);
+                        runs.addBatch();
+                    }
+                    checkpoints.executeBatch();
+                    runs.executeBatch();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                         "UPDATE rollup_state SET high_water_millis = ?, high_water_id = ?, updated_millis = ? WHERE name = ?")) {
+                    stmt.setLong(1, lastMillis);
+                    stmt.setLong(2, lastId);
+                    stmt.setLong(3, System.currentTimeMillis());
+                    stmt.setString(4, STATE);
+                    stmt.executeUpdate();
+                }
+                
+                conn.commit();
+                retiredRuns.addAndGet(ids.size());
+                return ids.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * Return freed pages to the file system (only with auto_vacuum=INCREMENTAL) and refresh planner stats
+     */
+    private Void compactSqlite() throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            long autoVacuum = pragmaLong(stmt, "PRAGMA auto_vacuum");
+            long freePages = pragmaLong(stmt, "PRAGMA freelist_count");
+            if (autoVacuum == 2) {
+                // Each step of incremental_vacuum frees one page, so drain it until the free list stops shrinking
+                long remaining = freePages;
+                while (remaining > 0) {
+                    try (ResultSet rs = stmt.executeQuery("PRAGMA incremental_vacuum")) {
+                        while (rs.next()) {
+                            // One row per page freed
+                        }
+                    }
+                    long now = pragmaLong(stmt, "PRAGMA freelist_count");
+                    if (now >= remaining) {
+                        break;
+                    }
+                    remaining = now;
+                }
+                vacuumedPages.addAndGet(freePages - remaining);
+            }
+            stmt.execute("PRAGMA optimize");
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("autoVacuum", autoVacuum);
+            kv.put("freePages", freePages);
+            plugin.getDebugLog().debug(DebugLog.Tag.DATA, "RunRetention", "SQLite compacted", kv);
+        }
+        return null;
+    }
+    
+    private static long pragmaLong(Statement stmt, String pragma) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(pragma)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+    
+    private static long[] readMark(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT high_water_millis, high_water_id FROM rollup_state WHERE name = ?")) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new long[] {rs.getLong(1), rs.getLong(2)} : new long[] {0, 0};
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.bocrace.db;
+
+/**
+ * Run status as stored in runs.status (SMALLINT)
+ * Codes are persisted - never renumber, only append
+ */
+public enum RunStatus {
+    ACTIVE(0),
+    STARTED(1),
+    FINISHED(2),
+    ABORTED(3),
+    DQ(4);
+    
+    private final short code;
+    
+    RunStatus(int code) {
+        this.code = (short) code;
+    }
+    
+    public short getCode() {
+        return code;
+    }
+    
+    /**
+     * Status for a stored code (null if unknown)
+     */
+    public static RunStatus fromCode(int code) {
+        for (RunStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Status for a v1 status string (null if unknown)
+     */
+    public static RunStatus fromName(String name) {
+        for (RunStatus status : values()) {
+            if (status.name().equalsIgnoreCase(name)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
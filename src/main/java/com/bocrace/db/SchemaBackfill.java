@@ -0,0 +1,490 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Online copy of the v1 tables (players_v1, runs_v1, run_checkpoints_v1) into the v2 schema
+ * The V2 migration only renames the old tables; this job then copies them in small keyset batches,
+ * one transaction per batch, as low-priority dispatcher tasks with a pause in between, so live run
+ * writes are never stuck behind it. Progress is stored in backfill_state and resumes after a restart
+ * Once everything is copied the v1 tables are dropped
+ * New runs are written to the v2 tables immediately; until the copy finishes, leaderboards and
+ * history only include the part of the old data copied so far
+ * The same job then buckets existing finished runs into period_bests (daily/weekly/season boards)
+ */
+public class SchemaBackfill {
+    
+    private static final String PLAYERS = "players_v1";
+    private static final String RUNS = "runs_v1";
+    private static final String PERIOD_BESTS = "period_bests";
+    private static final String DROP = "drop";
+    private static final String DONE = "done";
+    private static final long MAX_RETRY_TICKS = 1200L; // 1 minute
+    
+    private final BOCRacingV2 plugin;
+    private final DataSource dataSource;
+    private final DbDispatcher dispatcher;
+    private final KeyResolver keys;
+    private final String periodSeedSql;
+    private final PeriodCalendar periods;
+    private final int batchSize;
+    private final long pauseTicks;
+    private final AtomicLong copiedPlayers;
+    private final AtomicLong copiedRuns;
+    private final AtomicLong skippedRows;
+    private final AtomicLong bucketedRuns;
+    private volatile boolean periodBestsDone;
+    private volatile String phase; // players_v1, runs_v1, drop, period_bests, done (null until state is loaded)
+    private volatile String cursor;
+    private volatile boolean stopped;
+    private volatile int failures; // Consecutive failed batches, for the retry back-off
+    
+    public SchemaBackfill(BOCRacingV2 plugin, DataSource dataSource, DbDispatcher dispatcher) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.dispatcher = dispatcher;
+        String dbType = plugin.getConfig().getString("database.type", "SQLITE");
+        this.keys = new KeyResolver(dbType);
+        this.periodSeedSql = PeriodBests.seedSql(dbType);
+        this.periods = PeriodCalendar.fromConfig(plugin.getConfig());
+        this.batchSize = Math.max(50, plugin.getConfig().getInt("database.backfill.batchSize", 1000));
+        this.pauseTicks = Math.max(1, plugin.getConfig().getLong("database.backfill.pauseTicks", 2));
+        this.copiedPlayers = new AtomicLong();
+        this.copiedRuns = new AtomicLong();
+        this.skippedRows = new AtomicLong();
+        this.bucketedRuns = new AtomicLong();
+    }
+    
+    /**
+     * Start (or resume) the copy in the background
+     */
+    public void start() {
+        scheduleNext();
+    }
+    
+    /**
+     * Stop scheduling batches (on plugin disable; the current batch still commits)
+     */
+    public void stop() {
+        stopped = true;
+    }
+    
+    public boolean isDone() {
+        return DONE.equals(phase);
+    }
+    
+    /**
+     * Snapshot of backfill progress (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("phase", phase != null ? phase : "loading");
+        metrics.put("copiedPlayers", copiedPlayers.get());
+        metrics.put("copiedRuns", copiedRuns.get());
+        metrics.put("skippedRows", skippedRows.get());
+        metrics.put("bucketedRuns", bucketedRuns.get());
+        metrics.put("batchSize", batchSize);
+        return metrics;
+    }
+    
+    private void scheduleNext() {
+        if (stopped || isDone() || dispatcher.isShutdown()) {
+            return;
+        }
+        // Doubles the pause after each failed batch in a row, so a persistent error does not spin
+        long delay = Math.max(pauseTicks, Math.min(MAX_RETRY_TICKS, pauseTicks << Math.min(failures, 16)));
+        try {
+            Bukkit.getScheduler().runTaskLaterAsynchronously(plugin, () -> {
+                // LOW: shed while the writer queue is busy, then simply retried after the pause
+                if (!stopped && !dispatcher.submit(DbDispatcher.Priority.LOW, this::step)) {
+                    scheduleNext();
+                }
+            }, delay);
+        } catch (IllegalPluginAccessException e) {
+            // Plugin disabled - resumes from backfill_state on next startup
+        }
+    }
+    
+    /**
+     * Copy one batch (dispatcher thread)
+     */
+    private void step() {
+        try (Connection conn = dataSource.getConnection()) {
+            if (phase == null) {
+                loadState(conn);
+            }
+            
+            switch (phase) {
+                case PLAYERS:
+                    copyPlayers(conn);
+                    break;
+                case RUNS:
+                    copyRuns(conn);
+                    break;
+                case DROP:
+                    dropLegacyTables(conn);
+                    break;
+                case PERIOD_BESTS:
+                    seedPeriodBests(conn);
+                    break;
+                default:
+                    return;
+            }
+            failures = 0;
+        } catch (SQLException e) {
+            failures++;
+            plugin.getDebugLog().error("SchemaBackfill", "Backfill batch failed (will retry)", e);
+        } catch (RuntimeException e) {
+            // Bad row data or a driver bug must not end the backfill: log it and retry after the back-off
+            failures++;
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("phase", phase);
+            kv.put("cursor", cursor);
+            kv.put("failures", failures);
+            plugin.getDebugLog().error("SchemaBackfill", "Backfill batch failed unexpectedly (will retry)", e, kv);
+        }
+        scheduleNext();
+    }
+    
+    private void loadState(Connection conn) throws SQLException {
+        Map<String, String> cursors = new HashMap<>();
+        Map<String, Boolean> done = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name, cursor_value, done FROM backfill_state")) {
+            while (rs.next()) {
+                cursors.put(rs.getString("name"), rs.getString("cursor_value"));
+                done.put(rs.getString("name"), rs.getInt("done") != 0);
+            }
+        }
+        
+        if (!done.getOrDefault(PLAYERS, true)) {
+            phase = PLAYERS;
+        } else if (!done.getOrDefault(RUNS, true)) {
+            phase = RUNS;
+        } else if (tableExists(conn, RUNS) || tableExists(conn, PLAYERS)) {
+            phase = DROP;
+        } else if (!done.getOrDefault(PERIOD_BESTS, true)) {
+            phase = PERIOD_BESTS;
+        } else {
+            phase = DONE;
+        }
+        periodBestsDone = done.getOrDefault(PERIOD_BESTS, true);
+        cursor = phase.equals(PLAYERS) || phase.equals(RUNS) || phase.equals(PERIOD_BESTS)
+            ? cursors.getOrDefault(phase, "") : "";
+        
+        if (!isDone()) {
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("phase", phase);
+            kv.put("cursor", cursor);
+            kv.put("batchSize", batchSize);
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "SchemaBackfill", "Resuming backfill", kv);
+            plugin.getLogger().info(phase.equals(PERIOD_BESTS)
+                ? "Building daily/weekly/season leaderboards from race history in the background..."
+                : "Copying pre-v2 race history into the new schema in the background...");
+        }
+    }
+    
+    private void copyPlayers(Connection conn) throws SQLException {
+        int rows = 0;
+        String lastKey = cursor;
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT uuid, last_name, last_seen FROM players_v1 WHERE uuid > ? ORDER BY uuid LIMIT ?");
+                 PreparedStatement insert = conn.prepareStatement(
+                     // Rows already written by PlayerDao since the upgrade are newer - keep them
+                     keys.insertIgnore() + "players (uuid, last_name, last_seen) VALUES (?, ?, ?)")) {
+                select.setString(1, cursor);
+                select.setInt(2, batchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastKey = rs.getString("uuid");
+                        UUID uuid = parseUuid(lastKey);
+                        if (uuid == null) {
+                            skippedRows.incrementAndGet();
+                            continue;
+                        }
+                        insert.setBytes(1, UuidBytes.toBytes(uuid));
+                        insert.setString(2, rs.getString("last_name"));
+                        insert.setLong(3, rs.getLong("last_seen"));
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            boolean finished = rows < batchSize;
+            saveState(conn, PLAYERS, lastKey, finished);
+            conn.commit();
+            
+            copiedPlayers.addAndGet(rows);
+            advance(PLAYERS, lastKey, finished, RUNS);
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    private void copyRuns(Connection conn) throws SQLException {
+        int rows = 0;
+        String lastKey = cursor;
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT run_id, course_key, course_type, course_file, player_uuid, start_mode, " +
+                     "require_checkpoints, drop_shape, status, dq_reason, start_millis, finish_millis, " +
+                     "duration_millis, created_millis FROM runs_v1 WHERE run_id > ? ORDER BY run_id LIMIT ?");
+                 PreparedStatement insert = conn.prepareStatement(
+                     // Runs replayed from the outbox since the upgrade already exist - keep them
+                     keys.insertIgnore() + "runs (run_uuid, course_id, course_type, course_file, player_id, " +
+                     "start_mode, require_checkpoints, drop_shape, status, dq_reason, start_millis, " +
+                     "finish_millis, duration_millis, created_millis) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                select.setString(1, cursor);
+                select.setInt(2, batchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastKey = rs.getString("run_id");
+                        UUID runUuid = parseUuid(lastKey);
+                        UUID playerUuid = parseUuid(rs.getString("player_uuid"));
+                        RunStatus status = RunStatus.fromName(rs.getString("status"));
+                        if (runUuid == null || playerUuid == null || status == null) {
+                            skip(lastKey, rs.getString("status"));
+                            continue;
+                        }
+                        insert.setBytes(1, UuidBytes.toBytes(runUuid));
+                        insert.setLong(2, keys.courseId(conn, rs.getString("course_key")));
+                        insert.setString(3, rs.getString("course_type"));
+                        insert.setString(4, rs.getString("course_file"));
+                        insert.setLong(5, keys.playerId(conn, playerUuid));
+                        insert.setString(6, rs.getString("start_mode"));
+                        insert.setInt(7, rs.getInt("require_checkpoints"));
+                        insert.setString(8, rs.getString("drop_shape"));
+                        insert.setShort(9, status.getCode());
+                        insert.setString(10, rs.getString("dq_reason"));
+                        setNullableLong(insert, 11, rs, "start_millis");
+                        setNullableLong(insert, 12, rs, "finish_millis");
+                        setNullableLong(insert, 13, rs, "duration_millis");
+                        insert.setLong(14, rs.getLong("created_millis"));
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            if (rows > 0) {
+                copyCheckpoints(conn, cursor, lastKey);
+            }
+            boolean finished = rows < batchSize;
+            saveState(conn, RUNS, lastKey, finished);
+            conn.commit();
+            
+            copiedRuns.addAndGet(rows);
+            advance(RUNS, lastKey, finished, DROP);
+        } catch (SQLException e) {
+            conn.rollback();
+            keys.clear(); // Ids created in the rolled-back transaction no longer exist
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    /**
+     * Copy checkpoints of the runs in (fromRunId, toRunId] (same range as the run batch)
+     */
+    private void copyCheckpoints(Connection conn, String fromRunId, String toRunId) throws SQLException {
+        try (PreparedStatement select = conn.prepareStatement(
+                 "SELECT run_id, checkpoint_index, split_millis FROM run_checkpoints_v1 " +
+                 "WHERE run_id > ? AND run_id <= ?");
+             PreparedStatement insert = conn.prepareStatement(
+                 keys.insertIgnore() + "run_checkpoints (run_id, checkpoint_index, split_millis) " +
+                 "SELECT id, ?, ? FROM runs WHERE run_uuid = ?")) {
+            select.setString(1, fromRunId);
+            select.setString(2, toRunId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    UUID runUuid = parseUuid(rs.getString("run_id"));
+                    if (runUuid == null) {
+                        continue; // Its run was skipped too
+                    }
+                    insert.setInt(1, rs.getInt("checkpoint_index"));
+                    insert.setLong(2, rs.getLong("split_millis"));
+                    insert.setBytes(3, UuidBytes.toBytes(runUuid));
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+    
+    private void dropLegacyTables(Connection conn) throws SQLException {
+        // Copied runs bypassed RunDao's PB maintenance
+        conn.setAutoCommit(false);
+        try {
+            PersonalBests.rebuild(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS run_checkpoints_v1");
+            stmt.execute("DROP TABLE IF EXISTS runs_v1");
+            stmt.execute("DROP TABLE IF EXISTS players_v1");
+        }
+        // Bucket everything (including the copied history) if that has not been done yet
+        phase = periodBestsDone ? DONE : PERIOD_BESTS;
+        cursor = "";
+        
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("copiedPlayers", copiedPlayers.get());
+        kv.put("copiedRuns", copiedRuns.get());
+        kv.put("skippedRows", skippedRows.get());
+        plugin.getDebugLog().info(DebugLog.Tag.DATA, "SchemaBackfill", "v1 -> v2 backfill complete, v1 tables dropped", kv);
+        plugin.getLogger().info("Race history migration to the v2 schema complete");
+        
+        // Ranks were loaded before the copied history had personal bests
+        if (plugin.getRankIndex() != null) {
+            plugin.getRankIndex().load();
+        }
+    }
+    
+    /**
+     * Bucket one batch of finished runs (by id) into period_bests
+     * Live finishes upsert the same rows meanwhile; both keep the faster time, so order does not matter
+     */
+    private void seedPeriodBests(Connection conn) throws SQLException {
+        long fromId = cursor.isEmpty() ? 0 : Long.parseLong(cursor);
+        long lastId = fromId;
+        int rows = 0;
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT id, finish_millis FROM runs WHERE id > ? ORDER BY id LIMIT ?");
+                 PreparedStatement upsert = conn.prepareStatement(periodSeedSql)) {
+                select.setLong(1, fromId);
+                select.setInt(2, batchSize);
+                List<long[]> finished = new ArrayList<>();
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastId = rs.getLong("id");
+                        long finishMillis = rs.getLong("finish_millis");
+                        if (!rs.wasNull()) {
+                            finished.add(new long[] {lastId, finishMillis});
+                        }
+                    }
+                }
+                // Not finished runs have no finish time; the seed statement also re-checks status
+                for (long[] run : finished) {
+                    for (Period period : Period.values()) {
+                        upsert.setShort(1, period.getCode());
+                        upsert.setInt(2, periods.bucket(period, run[1]));
+                        upsert.setLong(3, run[0]);
+                        upsert.addBatch();
+                    }
+                }
+                upsert.executeBatch();
+                bucketedRuns.addAndGet(finished.size());
+            }
+            boolean finishedAll = rows < batchSize;
+            saveState(conn, PERIOD_BESTS, String.valueOf(lastId), finishedAll);
+            conn.commit();
+            
+            if (finishedAll) {
+                periodBestsDone = true;
+                phase = DONE;
+                cursor = "";
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("bucketedRuns", bucketedRuns.get());
+                plugin.getDebugLog().info(DebugLog.Tag.DATA, "SchemaBackfill", "Period bests built", kv);
+            } else {
+                cursor = String.valueOf(lastId);
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+    
+    private void saveState(Connection conn, String name, String cursorValue, boolean done) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                 "UPDATE backfill_state SET cursor_value = ?, done = ? WHERE name = ?")) {
+            stmt.setString(1, cursorValue);
+            stmt.setInt(2, done ? 1 : 0);
+            stmt.setString(3, name);
+            stmt.executeUpdate();
+        }
+    }
+    
+    /**
+     * Move the cursor after a committed batch (or on to the next phase)
+     */
+    private void advance(String name, String lastKey, boolean finished, String nextPhase) {
+        if (finished) {
+            phase = nextPhase;
+            cursor = "";
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("table", name);
+            kv.put("copiedPlayers", copiedPlayers.get());
+            kv.put("copiedRuns", copiedRuns.get());
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "SchemaBackfill", "Table backfilled", kv);
+        } else {
+            cursor = lastKey;
+        }
+    }
+    
+    private void skip(String runId, String status) {
+        skippedRows.incrementAndGet();
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("runId", runId);
+        kv.put("status", status);
+        plugin.getDebugLog().warn(DebugLog.Tag.DATA, "SchemaBackfill", "Skipped unreadable v1 run", kv);
+    }
+    
+    private boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        try (ResultSet rs = meta.getTables(conn.getCatalog(), null, table, new String[] {"TABLE"})) {
+            return rs.next();
+        }
+    }
+    
+    private static void setNullableLong(PreparedStatement stmt, int index, ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        if (rs.wasNull()) {
+            stmt.setNull(index, Types.BIGINT);
+        } else {
+            stmt.setLong(index, value);
+        }
+    }
+    
+    private static UUID parseUuid(String value) {
+        try {
+            return value != null ? UUID.fromString(value) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
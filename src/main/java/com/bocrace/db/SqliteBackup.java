@@ -0,0 +1,252 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Online backups of the SQLite database into plugins/BOCRacingV2/backups (database.sqlite.backup)
+ * The copy is taken with VACUUM INTO on a read-pool connection: it reads one WAL snapshot without taking
+ * the write lock, so the dispatcher's writer keeps committing for the whole copy, and the result is a
+ * consistent, compacted database file. The copy is quick_check'ed before it is renamed into place, and
+ * only the newest `keep` backups are kept. One backup runs at a time, on its own thread
+ */
+public class SqliteBackup {
+    
+    private static final long CHECK_TICKS = 12000L; // 10 minutes
+    private static final String EXTENSION = ".db";
+    
+    /**
+     * Outcome of a finished backup
+     */
+    public static final class Result {
+        private final File file;
+        private final long bytes;
+        private final long elapsedMillis;
+        
+        private Result(File file, long bytes, long elapsedMillis) {
+            this.file = file;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public File getFile() { return file; }
+        public long getBytes() { return bytes; }
+        public long getElapsedMillis() { return elapsedMillis; }
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final DataSource readDataSource;
+    private final SqliteProfile profile;
+    private final File folder;
+    private final String prefix;
+    private final long intervalMillis;
+    private final int keep;
+    private final AtomicBoolean running;
+    private volatile Result lastBackup;
+    private volatile long lastBackupMillis;
+    private volatile long backups;
+    private volatile long failures;
+    private BukkitTask task;
+    
+    public SqliteBackup(BOCRacingV2 plugin, DataSource readDataSource, SqliteProfile profile) {
+        this.plugin = plugin;
+        this.readDataSource = readDataSource;
+        this.profile = profile;
+        this.folder = new File(plugin.getDataFolder(), "backups");
+        String fileName = plugin.getConfig().getString("database.sqlite.file", "bocracing.db");
+        this.prefix = (fileName.endsWith(EXTENSION) ? fileName.substring(0, fileName.length() - EXTENSION.length()) : fileName) + "-";
+        this.intervalMillis = Math.max(0, plugin.getConfig().getLong("database.sqlite.backup.intervalHours", 24)) * 3_600_000L;
+        this.keep = Math.max(1, plugin.getConfig().getInt("database.sqlite.backup.keep", 7));
+        this.running = new AtomicBoolean();
+    }
+    
+    /**
+     * Start the scheduled backups unless intervalHours is 0
+     * The schedule follows the newest file in the backups folder, so restarts neither skip nor repeat a backup
+     */
+    public void start() {
+        deletePartials();
+        if (intervalMillis <= 0) {
+            return;
+        }
+        this.task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::check, CHECK_TICKS, CHECK_TICKS);
+    }
+    
+    public void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    /**
+     * Back up the database in the background (fails if a backup is already running)
+     */
+    public CompletableFuture<Result> backup() {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        if (!running.compareAndSet(false, true)) {
+            future.completeExceptionally(new IllegalStateException("A backup is already running"));
+            return future;
+        }
+        Thread.ofVirtual().name("BOCRacingV2-Backup").start(() -> {
+            try {
+                future.complete(run());
+            } catch (Exception e) {
+                failures++;
+                plugin.getDebugLog().error("SqliteBackup", "Backup failed", e);
+                future.completeExceptionally(e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Snapshot of backup state (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("intervalHours", intervalMillis / 3_600_000L);
+        metrics.put("keep", keep);
+        metrics.put("running", running.get());
+        metrics.put("backups", backups);
+        metrics.put("failures", failures);
+        metrics.put("stored", listBackups().size());
+        Result last = lastBackup;
+        if (last != null) {
+            metrics.put("lastFile", last.getFile().getName());
+            metrics.put("lastBytes", last.getBytes());
+            metrics.put("lastMillis", last.getElapsedMillis());
+            metrics.put("lastSecondsAgo", (System.currentTimeMillis() - lastBackupMillis) / 1000);
+        }
+        return metrics;
+    }
+    
+    /**
+     * Start a backup if the newest one is older than intervalHours (Bukkit async thread)
+     */
+    private void check() {
+        List<File> existing = listBackups();
+        long newest = existing.isEmpty() ? 0 : existing.get(existing.size() - 1).lastModified();
+        if (System.currentTimeMillis() - newest >= intervalMillis && !running.get()) {
+            backup();
+        }
+    }
+    
+    private Result run() throws SQLException, IOException {
+        long started = System.currentTimeMillis();
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Cannot create " + folder.getAbsolutePath());
+        }
+        File target = new File(folder, prefix + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(started)) + EXTENSION);
+        File partial = new File(target.getPath() + ".part");
+        Files.deleteIfExists(partial.toPath());
+        
+        try {
+            try (Connection conn = readDataSource.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                // Runs on a read snapshot: the writer is never waited for and never waits
+                stmt.execute("VACUUM INTO '" + partial.getAbsolutePath().replace("'", "''") + "'");
+            }
+            verify(partial);
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(partial.toPath());
+        }
+        
+        Result result = new Result(target, target.length(), System.currentTimeMillis() - started);
+        lastBackup = result;
+        lastBackupMillis = System.currentTimeMillis();
+        backups++;
+        int removed = rotate();
+        
+        Map<String, Object> kv = new HashMap<>();
+        kv.put("file", target.getName());
+        kv.put("bytes", result.getBytes());
+        kv.put("ms", result.getElapsedMillis());
+        kv.put("rotated", removed);
+        plugin.getDebugLog().info(DebugLog.Tag.DATA, "SqliteBackup", "Backup written", kv);
+        return result;
+    }
+    
+    /**
+     * Open the copy read-only and quick_check it, so a damaged file never replaces a good backup
+     */
+    private void verify(File file) throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", "1"); // SQLITE_OPEN_READONLY
+        DataSource copy = profile.dataSource("jdbc:sqlite:" + file.getAbsolutePath(), properties, false);
+        try (Connection conn = copy.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+            String status = rs.next() ? rs.getString(1) : "no result";
+            if (!"ok".equalsIgnoreCase(status)) {
+                throw new SQLException("Backup failed quick_check: " + status);
+            }
+        }
+    }
+    
+    /**
+     * Delete all but the newest `keep` backups
+     * @return number of files deleted
+     */
+    private int rotate() {
+        List<File> existing = listBackups();
+        int removed = 0;
+        for (int i = 0; i < existing.size() - keep; i++) {
+            if (existing.get(i).delete()) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * Finished backups, oldest first (the timestamp in the name sorts chronologically)
+     */
+    private List<File> listBackups() {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        List<File> sorted = new ArrayList<>(Arrays.asList(files));
+        sorted.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return sorted;
+    }
+    
+    /**
+     * Remove copies left behind by a crash mid-backup
+     */
+    private void deletePartials() {
+        File[] partials = folder.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION + ".part"));
+        if (partials != null) {
+            for (File partial : partials) {
+                partial.delete();
+            }
+        }
+    }
+}
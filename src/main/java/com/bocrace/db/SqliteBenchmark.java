@@ -0,0 +1,132 @@
+package com.bocrace.db;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Insert and query throughput of the SQLite profile, measured on a scratch database file
+ * next to the real one (same disk, same PRAGMAs), which is deleted afterwards
+ * Inserts are single-row transactions like run writes; queries are primary key lookups and
+ * top-10 reads in index order like the leaderboard
+ */
+public final class SqliteBenchmark {
+    
+    private static final int COURSES = 20;
+    
+    public static final class Result {
+        private final int rows;
+        private final long insertsPerSecond;
+        private final long lookupsPerSecond;
+        private final long topTenPerSecond;
+        
+        private Result(int rows, long insertsPerSecond, long lookupsPerSecond, long topTenPerSecond) {
+            this.rows = rows;
+            this.insertsPerSecond = insertsPerSecond;
+            this.lookupsPerSecond = lookupsPerSecond;
+            this.topTenPerSecond = topTenPerSecond;
+        }
+        
+        public int getRows() { return rows; }
+        public long getInsertsPerSecond() { return insertsPerSecond; }
+        public long getLookupsPerSecond() { return lookupsPerSecond; }
+        public long getTopTenPerSecond() { return topTenPerSecond; }
+        
+        /**
+         * Result values (ordered for display)
+         */
+        public Map<String, Object> describe() {
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("rows", rows);
+            values.put("insertsPerSecond", insertsPerSecond);
+            values.put("lookupsPerSecond", lookupsPerSecond);
+            values.put("topTenPerSecond", topTenPerSecond);
+            return values;
+        }
+    }
+    
+    private final SqliteProfile profile;
+    private final File file;
+    private final int rows;
+    
+    public SqliteBenchmark(SqliteProfile profile, File file, int rows) {
+        this.profile = profile;
+        this.file = file;
+        this.rows = Math.max(100, rows);
+    }
+    
+    public Result run() throws SQLException {
+        deleteFiles();
+        DataSource dataSource = profile.dataSource("jdbc:sqlite:" + file.getAbsolutePath(), new Properties(), true);
+        try (Connection conn = dataSource.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("CREATE TABLE bench_runs (id INTEGER PRIMARY KEY, run_uuid BLOB NOT NULL, " +
+                             "course_id INTEGER NOT NULL, duration_millis BIGINT NOT NULL, created_millis BIGINT NOT NULL)");
+                stmt.execute("CREATE INDEX idx_bench_course_duration ON bench_runs(course_id, duration_millis)");
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            
+            long started = System.nanoTime();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO bench_runs (run_uuid, course_id, duration_millis, created_millis) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    stmt.setBytes(1, UuidBytes.toBytes(UUID.randomUUID()));
+                    stmt.setInt(2, random.nextInt(COURSES));
+                    stmt.setLong(3, 20_000 + random.nextInt(100_000));
+                    stmt.setLong(4, System.currentTimeMillis());
+                    stmt.executeUpdate();
+                }
+            }
+            long inserts = perSecond(rows, System.nanoTime() - started);
+            
+            started = System.nanoTime();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT duration_millis FROM bench_runs WHERE id = ?")) {
+                for (int i = 0; i < rows; i++) {
+                    stmt.setLong(1, 1 + random.nextInt(rows));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                    }
+                }
+            }
+            long lookups = perSecond(rows, System.nanoTime() - started);
+            
+            int boards = Math.max(10, rows / 10);
+            started = System.nanoTime();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT run_uuid, duration_millis FROM bench_runs WHERE course_id = ? ORDER BY duration_millis LIMIT 10")) {
+                for (int i = 0; i < boards; i++) {
+                    stmt.setInt(1, random.nextInt(COURSES));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            rs.getBytes(1);
+                        }
+                    }
+                }
+            }
+            long topTen = perSecond(boards, System.nanoTime() - started);
+            
+            return new Result(rows, inserts, lookups, topTen);
+        } finally {
+            deleteFiles();
+        }
+    }
+    
+    private static long perSecond(int operations, long nanos) {
+        return nanos > 0 ? operations * 1_000_000_000L / nanos : operations;
+    }
+    
+    private void deleteFiles() {
+        for (String suffix : new String[] {"", "-wal", "-shm"}) {
+            File part = new File(file.getPath() + suffix);
+            if (part.exists() && !part.delete()) {
+                part.deleteOnExit();
+            }
+        }
+    }
+}
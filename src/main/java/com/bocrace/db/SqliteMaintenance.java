@@ -0,0 +1,161 @@
+package com.bocrace.db;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SQLite housekeeping during quiet periods (database.sqlite.maintenance) and the profile self-benchmark
+ * Once a minute the dispatcher is checked for new work; after quietMinutes without any, and at most
+ * every minIntervalMinutes, wal_checkpoint(TRUNCATE) resets the WAL file to zero bytes and optimize
+ * refreshes planner statistics, both as low-priority work on the writer lane
+ */
+public class SqliteMaintenance {
+    
+    private static final long CHECK_TICKS = 1200L; // 1 minute
+    
+    private final BOCRacingV2 plugin;
+    private final DataSource dataSource;
+    private final DbDispatcher dispatcher;
+    private final SqliteProfile profile;
+    private final long quietMillis;
+    private final long minIntervalMillis;
+    private final AtomicBoolean benchmarking;
+    private long lastSubmitted = -1;
+    private long quietSince;
+    private volatile long lastRunMillis;
+    private volatile long runs;
+    private volatile String lastCheckpoint = "-";
+    private volatile SqliteBenchmark.Result lastBenchmark;
+    private BukkitTask task;
+    
+    public SqliteMaintenance(BOCRacingV2 plugin, DataSource dataSource, DbDispatcher dispatcher, SqliteProfile profile) {
+        this.plugin = plugin;
+        this.dataSource = dataSource;
+        this.dispatcher = dispatcher;
+        this.profile = profile;
+        this.quietMillis = Math.max(1, plugin.getConfig().getLong("database.sqlite.maintenance.quietMinutes", 5)) * 60_000L;
+        this.minIntervalMillis = Math.max(1, plugin.getConfig().getLong("database.sqlite.maintenance.minIntervalMinutes", 30)) * 60_000L;
+        this.benchmarking = new AtomicBoolean();
+    }
+    
+    public void start() {
+        this.task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::check, CHECK_TICKS, CHECK_TICKS);
+    }
+    
+    public void close() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    /**
+     * Run the profile benchmark on a scratch file in the background (fails if one is already running)
+     */
+    public CompletableFuture<SqliteBenchmark.Result> benchmark(int rows) {
+        CompletableFuture<SqliteBenchmark.Result> future = new CompletableFuture<>();
+        if (!benchmarking.compareAndSet(false, true)) {
+            future.completeExceptionally(new IllegalStateException("A benchmark is already running"));
+            return future;
+        }
+        File file = new File(plugin.getDataFolder(), "benchmark.db");
+        Thread.ofVirtual().name("BOCRacingV2-Benchmark").start(() -> {
+            try {
+                SqliteBenchmark.Result result = new SqliteBenchmark(profile, file, rows).run();
+                lastBenchmark = result;
+                plugin.getDebugLog().info(DebugLog.Tag.PERF, "SqliteMaintenance", "Benchmark finished", result.describe());
+                future.complete(result);
+            } catch (Exception e) {
+                plugin.getDebugLog().error("SqliteMaintenance", "Benchmark failed", e);
+                future.completeExceptionally(e);
+            } finally {
+                benchmarking.set(false);
+            }
+        });
+        return future;
+    }
+    
+    /**
+     * Snapshot of maintenance state and the last benchmark (ordered for display)
+     */
+    public Map<String, Object> getMetrics() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> metrics = new LinkedHashMap<>(profile.describe());
+        metrics.put("maintenanceRuns", runs);
+        metrics.put("lastRunSecondsAgo", lastRunMillis > 0 ? (now - lastRunMillis) / 1000 : -1);
+        metrics.put("lastCheckpoint", lastCheckpoint);
+        SqliteBenchmark.Result benchmark = lastBenchmark;
+        if (benchmark != null) {
+            metrics.put("benchInsertsPerSecond", benchmark.getInsertsPerSecond());
+            metrics.put("benchLookupsPerSecond", benchmark.getLookupsPerSecond());
+            metrics.put("benchTopTenPerSecond", benchmark.getTopTenPerSecond());
+        }
+        return metrics;
+    }
+    
+    /**
+     * Track quiet time and start maintenance once it is long enough (Bukkit async thread)
+     */
+    private synchronized void check() {
+        long now = System.currentTimeMillis();
+        long submitted = dispatcher.getSubmittedCount();
+        boolean idle = submitted == lastSubmitted && dispatcher.getQueueDepth() == 0;
+        lastSubmitted = submitted;
+        if (!idle) {
+            quietSince = 0;
+            return;
+        }
+        if (quietSince == 0) {
+            quietSince = now;
+        }
+        if (now - quietSince < quietMillis || now - lastRunMillis < minIntervalMillis) {
+            return;
+        }
+        if (dispatcher.submit(DbDispatcher.Priority.LOW, this::maintain)) {
+            lastRunMillis = now;
+            // Our own task is not activity
+            lastSubmitted = dispatcher.getSubmittedCount();
+        }
+    }
+    
+    /**
+     * Truncate the WAL and refresh statistics (dispatcher thread)
+     */
+    private void maintain() {
+        long started = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // busy = 1 if a reader kept it from completing; log/checkpointed are WAL frames
+            String checkpoint;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+                checkpoint = rs.next()
+                    ? "busy=" + rs.getInt(1) + " log=" + rs.getInt(2) + " checkpointed=" + rs.getInt(3)
+                    : "-";
+            }
+            stmt.execute("PRAGMA optimize");
+            lastCheckpoint = checkpoint;
+            runs++;
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("checkpoint", checkpoint);
+            kv.put("ms", System.currentTimeMillis() - started);
+            plugin.getDebugLog().info(DebugLog.Tag.DATA, "SqliteMaintenance", "WAL checkpointed and optimized", kv);
+        } catch (SQLException e) {
+            plugin.getDebugLog().error("SqliteMaintenance", "Maintenance failed", e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.bocrace.db;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.sqlite.JDBC;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Per-connection SQLite PRAGMAs (database.sqlite.profile)
+ * Most PRAGMAs only affect the connection that runs them, so they must be applied to every pooled
+ * connection, not once at startup. Hikari's connectionInitSql cannot do this for SQLite (sqlite-jdbc
+ * executes only the first statement of a multi-statement string), so the pools open their connections
+ * through dataSource(), which runs the whole profile on each new physical connection
+ */
+public final class SqliteProfile {
+    
+    private final long busyTimeoutMillis;
+    private final String synchronous;
+    private final long cacheSizeKib;
+    private final long mmapSizeBytes;
+    private final String tempStore;
+    private final long walAutocheckpointPages;
+    
+    public SqliteProfile(FileConfiguration config) {
+        this.busyTimeoutMillis = Math.max(0, config.getLong("database.sqlite.profile.busyTimeoutMillis", 5000));
+        this.synchronous = pragmaWord(config.getString("database.sqlite.profile.synchronous", "NORMAL"), "NORMAL");
+        this.cacheSizeKib = Math.max(0, config.getLong("database.sqlite.profile.cacheSizeKib", 16384));
+        this.mmapSizeBytes = Math.max(0, config.getLong("database.sqlite.profile.mmapSizeMib", 64)) * 1024 * 1024;
+        this.tempStore = pragmaWord(config.getString("database.sqlite.profile.tempStore", "MEMORY"), "MEMORY");
+        this.walAutocheckpointPages = Math.max(0, config.getLong("database.sqlite.profile.walAutocheckpointPages", 1000));
+    }
+    
+    /**
+     * PRAGMAs for one connection (writer connections also get synchronous and wal_autocheckpoint)
+     */
+    public List<String> pragmas(boolean writer) {
+        List<String> pragmas = new ArrayList<>();
+        pragmas.add("PRAGMA busy_timeout=" + busyTimeoutMillis);
+        // Negative cache_size is in KiB rather than pages, so it does not depend on page_size
+        pragmas.add("PRAGMA cache_size=-" + cacheSizeKib);
+        pragmas.add("PRAGMA mmap_size=" + mmapSizeBytes);
+        pragmas.add("PRAGMA temp_store=" + tempStore);
+        if (writer) {
+            pragmas.add("PRAGMA synchronous=" + synchronous);
+            pragmas.add("PRAGMA wal_autocheckpoint=" + walAutocheckpointPages);
+        }
+        return pragmas;
+    }
+    
+    /**
+     * Profile values (ordered for display)
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("busy_timeout", busyTimeoutMillis);
+        values.put("synchronous", synchronous);
+        values.put("cache_size_kib", cacheSizeKib);
+        values.put("mmap_size", mmapSizeBytes);
+        values.put("temp_store", tempStore);
+        values.put("wal_autocheckpoint", walAutocheckpointPages);
+        return values;
+    }
+    
+    /**
+     * DataSource for Hikari (HikariConfig.setDataSource) that applies the profile to each connection it opens
+     * @param properties sqlite-jdbc connection properties (e.g. open_mode for the read-only pool)
+     */
+    public DataSource dataSource(String jdbcUrl, Properties properties, boolean writer) {
+        return new ProfiledDataSource(jdbcUrl, properties, pragmas(writer));
+    }
+    
+    /**
+     * Only plain PRAGMA keywords (NORMAL, MEMORY, ...) are accepted from the config
+     */
+    private static String pragmaWord(String value, String fallback) {
+        return value != null && value.matches("[A-Za-z]+") ? value.toUpperCase() : fallback;
+    }
+    
+    private static final class ProfiledDataSource implements DataSource {
+        private final String jdbcUrl;
+        private final Properties properties;
+        private final List<String> pragmas;
+        private final JDBC driver;
+        private int loginTimeout;
+        private PrintWriter logWriter;
+        
+        private ProfiledDataSource(String jdbcUrl, Properties properties, List<String> pragmas) {
+            this.jdbcUrl = jdbcUrl;
+            this.properties = properties;
+            this.pragmas = pragmas;
+            // The driver directly, not DriverManager, which may not see classes from the plugin class loader
+            this.driver = new JDBC();
+        }
+        
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection conn = driver.connect(jdbcUrl, properties);
+            try (Statement stmt = conn.createStatement()) {
+                for (String pragma : pragmas) {
+                    stmt.execute(pragma);
+                }
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+            return conn;
+        }
+        
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+        
+        @Override
+        public PrintWriter getLogWriter() { return logWriter; }
+        @Override
+        public void setLogWriter(PrintWriter out) { this.logWriter = out; }
+        @Override
+        public void setLoginTimeout(int seconds) { this.loginTimeout = seconds; }
+        @Override
+        public int getLoginTimeout() { return loginTimeout; }
+        
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+        
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            if (iface.isInstance(this)) {
+                return iface.cast(this);
+            }
+            throw new SQLException("Not a wrapper for " + iface.getName());
+        }
+        
+        @Override
+        public boolean isWrapperFor(Class<?> iface) {
+            return iface.isInstance(this);
+        }
+    }
+}
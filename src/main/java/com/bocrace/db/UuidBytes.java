@@ -0,0 +1,42 @@
+package com.bocrace.db;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * UUID <-> 16-byte big-endian form used by the BINARY(16)/BLOB key columns
+ */
+final class UuidBytes {
+    
+    private UuidBytes() {
+    }
+    
+    static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+            .putLong(uuid.getMostSignificantBits())
+            .putLong(uuid.getLeastSignificantBits())
+            .array();
+    }
+    
+    static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+    
+    /**
+     * Bytes for a UUID string (run ids are stored as strings in the outbox)
+     */
+    static byte[] toBytes(String uuid) {
+        return toBytes(UUID.fromString(uuid));
+    }
+    
+    /**
+     * Order of two UUID strings as the database sorts their stored bytes (unsigned, unlike UUID.compareTo)
+     */
+    static int compare(String a, String b) {
+        UUID left = UUID.fromString(a);
+        UUID right = UUID.fromString(b);
+        int cmp = Long.compareUnsigned(left.getMostSignificantBits(), right.getMostSignificantBits());
+        return cmp != 0 ? cmp : Long.compareUnsigned(left.getLeastSignificantBits(), right.getLeastSignificantBits());
+    }
+}
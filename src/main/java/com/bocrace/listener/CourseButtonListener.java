@@ -587,6 +587,7 @@ public class CourseButtonListener implements Listener {
                     // GO - Spawn boats and start race
                     lobby.setState(RaceManager.MultiLobbyState.LobbyState.IN_PROGRESS);
                     String goMessage = "§a§lGO!";
+                    List<Location> dropSpawns = new ArrayList<>();
                     
                     for (UUID uuid : allRacers) {
                         Player p = Bukkit.getPlayer(uuid);
@@ -636,13 +637,18 @@ public class CourseButtonListener implements Listener {
                             startKv.put("via", "DROP_GO");
                             plugin.getDebugLog().info(DebugLog.Tag.DETECT, "CourseButtonListener", "RUN_START (MP)", startKv);
                             
-                            // Drop blocks under spawn (only for BOAT courses)
+                            // Collect spawn for the grid drop (only for BOAT courses)
                             if (course.getType() == com.bocrace.model.CourseType.BOAT) {
-                                dropBlockManager.dropBlocks(key, spawn, course.getSettings().getDrop());
+                                dropSpawns.add(spawn);
                             }
                         }
                     }
                     
+                    // Drop the whole grid in one chunk-ordered pass
+                    if (!dropSpawns.isEmpty()) {
+                        dropBlockManager.dropBlocks(key, dropSpawns, course.getSettings().getDrop());
+                    }
+                    
                     cancel();
                 }
             }
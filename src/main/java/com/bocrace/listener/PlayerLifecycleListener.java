@@ -11,6 +11,7 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerKickEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
@@ -20,7 +21,7 @@ import java.util.Map;
 import java.util.UUID;
 
 /**
- * Handles player quit/kick to clean up race lobby state
+ * Handles player join to warm the profile cache, and quit/kick to clean up race lobby state and per-player caches
  */
 public class PlayerLifecycleListener implements Listener {
     
@@ -36,9 +37,24 @@ public class PlayerLifecycleListener implements Listener {
         this.dropBlockManager = plugin.getDropBlockManager();
     }
     
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        if (plugin.getPlayerProfileCache() != null) {
+            Player player = event.getPlayer();
+            plugin.getPlayerProfileCache().prefetch(player.getUniqueId(), player.getName());
+        }
+    }
+    
     @EventHandler(priority = EventPriority.MONITOR)
     public void onPlayerQuit(PlayerQuitEvent event) {
         handlePlayerLeave(event.getPlayer(), "quit");
+        // After the leave cleanup, so its DQ/abort lands in the profile before the eviction clock starts
+        if (plugin.getPlayerProfileCache() != null) {
+            plugin.getPlayerProfileCache().onQuit(event.getPlayer().getUniqueId());
+        }
+        if (plugin.getPlayerDao() != null) {
+            plugin.getPlayerDao().onQuit(event.getPlayer().getUniqueId());
+        }
     }
     
     @EventHandler(priority = EventPriority.MONITOR)
@@ -4,12 +4,14 @@ import com.bocrace.BOCRacingV2;
 import com.bocrace.model.Course;
 import com.bocrace.util.DebugLog;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.util.*;
 
@@ -19,98 +21,187 @@ import java.util.*;
 public class DropBlockManager {
     
     /**
-     * Stores block states to restore
+     * Compact snapshot of dropped blocks (packed coords + shared BlockData, grouped by chunk)
      */
     public static class DropTask {
+        private final RaceManager.CourseKey courseKey;
         private final String worldName;
-        private final Map<Location, BlockState> blocksToRestore;
-        private final int taskId;
+        private final long[] packedCoords; // Sorted so blocks of the same chunk are contiguous
+        private final BlockData[] blockData; // Interned references, aligned with packedCoords
+        private int restoreCursor; // Blocks restored so far (restores may span ticks)
         
-        public DropTask(String worldName, Map<Location, BlockState> blocksToRestore, int taskId) {
+        // Timing wheel state (owned by DropRestoreWheel)
+        boolean scheduled;
+        int remainingRounds;
+        
+        long journalId; // 0 if not journaled
+        boolean worldMissing; // World was unloaded at restore time, so no block was written
+        
+        public DropTask(RaceManager.CourseKey courseKey, String worldName, long[] packedCoords, BlockData[] blockData) {
+            this.courseKey = courseKey;
             this.worldName = worldName;
-            this.blocksToRestore = new HashMap<>(blocksToRestore);
-            this.taskId = taskId;
+            this.packedCoords = packedCoords;
+            this.blockData = blockData;
+        }
+        
+        public RaceManager.CourseKey getCourseKey() {
+            return courseKey;
         }
         
         public String getWorldName() {
             return worldName;
         }
         
-        public Map<Location, BlockState> getBlocksToRestore() {
-            return blocksToRestore;
+        public long[] getPackedCoords() {
+            return packedCoords;
+        }
+        
+        public BlockData[] getBlockData() {
+            return blockData;
         }
         
-        public int getTaskId() {
-            return taskId;
+        public int getBlockCount() {
+            return packedCoords.length;
         }
+        
+        public boolean isRestored() {
+            return restoreCursor >= packedCoords.length;
+        }
+        
+        /**
+         * Approximate retained bytes (arrays only, shared BlockData counted in the pool)
+         */
+        public long estimateMemoryBytes() {
+            // Object header + fields, two array headers, 8 bytes per coord, one reference per block
+            return 32 + 16 + 16 + 8L * packedCoords.length + 8L * blockData.length;
+        }
+    }
+    
+    /**
+     * Chunk lookup cache for one restore pass (shared across tasks merged on the same tick)
+     */
+    private static class RestorePass {
+        private String worldName;
+        private World world;
+        private long chunkKey;
+        private Chunk chunk;
+        private int chunks;
     }
     
     private final Plugin plugin;
+    private final DropJournal journal;
     private final Map<RaceManager.CourseKey, List<DropTask>> activeDropTasks;
+    private final Map<BlockData, BlockData> blockDataPool; // Interning pool so identical blocks share one instance
+    private final DropRestoreWheel restoreWheel;
+    private final ArrayDeque<DropTask> restoreQueue; // Due restores, drained under the per-tick block budget
+    private final int restoreBlocksPerTick;
+    private final Map<Course.DropSettings.DropShape, Map<Integer, int[]>> shapeOffsets; // (shape, radius) -> offset table
+    private BukkitTask wheelTask;
     
-    public DropBlockManager(Plugin plugin) {
+    public DropBlockManager(Plugin plugin, DropJournal journal) {
         this.plugin = plugin;
+        this.journal = journal;
         this.activeDropTasks = new HashMap<>();
+        this.blockDataPool = new HashMap<>();
+        this.restoreWheel = new DropRestoreWheel();
+        this.restoreQueue = new ArrayDeque<>();
+        this.restoreBlocksPerTick = Math.max(1, plugin.getConfig().getInt("drops.restoreBlocksPerTick", 256));
+        this.shapeOffsets = new EnumMap<>(Course.DropSettings.DropShape.class);
     }
     
     /**
      * Drop blocks under a racer's spawn location based on drop settings
      */
     public void dropBlocks(RaceManager.CourseKey courseKey, Location spawnLoc, Course.DropSettings dropSettings) {
-        World world = spawnLoc.getWorld();
-        if (world == null) return;
-        
-        int centerX = spawnLoc.getBlockX();
-        int centerY = spawnLoc.getBlockY() - 1; // Block directly under spawn
-        int centerZ = spawnLoc.getBlockZ();
-        
-        Map<Location, BlockState> blocksToRestore = new HashMap<>();
-        
-        switch (dropSettings.getShape()) {
-            case SINGLE:
-                Block singleBlock = world.getBlockAt(centerX, centerY, centerZ);
-                blocksToRestore.put(singleBlock.getLocation(), singleBlock.getState());
-                singleBlock.setType(Material.AIR);
-                break;
-                
-            case SQUARE:
-                int radius = dropSettings.getRadius();
-                for (int dx = -radius; dx <= radius; dx++) {
-                    for (int dz = -radius; dz <= radius; dz++) {
-                        int x = centerX + dx;
-                        int z = centerZ + dz;
-                        Block block = world.getBlockAt(x, centerY, z);
-                        blocksToRestore.put(block.getLocation(), block.getState());
-                        block.setType(Material.AIR);
-                    }
-                }
-                break;
-                
-            case CIRCLE:
-                int circleRadius = dropSettings.getRadius();
-                int radiusSquared = circleRadius * circleRadius;
-                for (int dx = -circleRadius; dx <= circleRadius; dx++) {
-                    for (int dz = -circleRadius; dz <= circleRadius; dz++) {
-                        if (dx * dx + dz * dz <= radiusSquared) {
-                            int x = centerX + dx;
-                            int z = centerZ + dz;
-                            Block block = world.getBlockAt(x, centerY, z);
-                            blocksToRestore.put(block.getLocation(), block.getState());
-                            block.setType(Material.AIR);
-                        }
-                    }
-                }
-                break;
+        dropBlocks(courseKey, Collections.singletonList(spawnLoc), dropSettings);
+    }
+    
+    /**
+     * Drop blocks under every racer's spawn in one pass (whole MP grid on GO)
+     * Target cells from all spawns are merged, sorted chunk-major and de-duplicated,
+     * so each chunk is looked up once and overlapping shapes are captured only once
+     */
+    public void dropBlocks(RaceManager.CourseKey courseKey, List<Location> spawnLocs, Course.DropSettings dropSettings) {
+        Map<World, List<Location>> byWorld = new LinkedHashMap<>();
+        for (Location spawnLoc : spawnLocs) {
+            if (spawnLoc.getWorld() == null) continue;
+            byWorld.computeIfAbsent(spawnLoc.getWorld(), w -> new ArrayList<>()).add(spawnLoc);
+        }
+        
+        Course.DropSettings.DropShape shape = dropSettings.getShape();
+        int radius = shape == Course.DropSettings.DropShape.SINGLE ? 0 : dropSettings.getRadius();
+        int[] offsets = getShapeOffsets(shape, radius);
+        
+        for (Map.Entry<World, List<Location>> e : byWorld.entrySet()) {
+            dropInWorld(courseKey, e.getKey(), e.getValue(), offsets, dropSettings);
+        }
+    }
+    
+    private void dropInWorld(RaceManager.CourseKey courseKey, World world, List<Location> spawns, int[] offsets, Course.DropSettings dropSettings) {
+        // Expand every spawn through the cached offset table
+        long[] coords = new long[spawns.size() * (offsets.length / 2)];
+        int targets = 0;
+        for (Location spawn : spawns) {
+            int centerX = spawn.getBlockX();
+            int centerY = spawn.getBlockY() - 1; // Block directly under spawn
+            int centerZ = spawn.getBlockZ();
+            for (int i = 0; i < offsets.length; i += 2) {
+                coords[targets++] = packCoord(centerX + offsets[i], centerY, centerZ + offsets[i + 1]);
+            }
+        }
+        
+        // Chunk-major order: one chunk lookup per run, duplicates (overlapping shapes) are adjacent
+        Arrays.sort(coords, 0, targets);
+        BlockData[] data = new BlockData[targets];
+        int count = 0;
+        int chunks = 0;
+        long chunkKey = 0;
+        Chunk chunk = null;
+        for (int i = 0; i < targets; i++) {
+            long packed = coords[i];
+            if (count > 0 && packed == coords[count - 1]) {
+                continue; // Already captured for a neighbouring racer
+            }
+            if (chunk == null || (packed >> 20) != chunkKey) {
+                chunkKey = packed >> 20;
+                chunk = world.getChunkAt(unpackChunkX(packed), unpackChunkZ(packed));
+                chunks++;
+            }
+            Block block = chunk.getBlock(unpackLocalX(packed), unpackY(packed), unpackLocalZ(packed));
+            coords[count] = packed;
+            data[count] = intern(block.getBlockData());
+            count++;
+        }
+        
+        DropTask task = new DropTask(courseKey, world.getName(), Arrays.copyOf(coords, count), Arrays.copyOf(data, count));
+        
+        // Journal original blocks before any is cleared, so a crash before restore can be healed on next startup
+        if (journal != null && journal.isEnabled()) {
+            task.journalId = journal.recordDrop(task);
+            if (task.journalId == 0) {
+                // Never clear blocks a crash could not put back
+                plugin.getLogger().warning("Drop skipped for course " + courseKey.getName() + ": it could not be journaled");
+                return;
+            }
+        }
+        
+        // Second pass: clear the captured cells (coords is still chunk-major)
+        chunk = null;
+        for (int i = 0; i < count; i++) {
+            long packed = coords[i];
+            if (chunk == null || (packed >> 20) != chunkKey) {
+                chunkKey = packed >> 20;
+                chunk = world.getChunkAt(unpackChunkX(packed), unpackChunkZ(packed));
+            }
+            chunk.getBlock(unpackLocalX(packed), unpackY(packed), unpackLocalZ(packed)).setType(Material.AIR);
         }
         
-        // Schedule restoration
+        // Schedule restoration on the shared wheel
         int restoreTicks = dropSettings.getRestoreSeconds() * 20; // Convert seconds to ticks
-        int taskId = Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            restoreBlocks(courseKey, blocksToRestore);
-        }, restoreTicks).getTaskId();
+        restoreWheel.schedule(task, restoreTicks);
+        ensureWheelRunning();
         
         // Store the task
-        DropTask task = new DropTask(world.getName(), blocksToRestore, taskId);
         activeDropTasks.computeIfAbsent(courseKey, k -> new ArrayList<>()).add(task);
         
         // Debug log (if plugin is BOCRacingV2 instance)
@@ -120,64 +211,181 @@ public class DropBlockManager {
             kv.put("shape", dropSettings.getShape().name());
             kv.put("radius", dropSettings.getRadius());
             kv.put("restoreSeconds", dropSettings.getRestoreSeconds());
+            kv.put("racers", spawns.size());
+            kv.put("blocks", task.getBlockCount());
+            kv.put("overlap", targets - count);
+            kv.put("chunks", chunks);
+            kv.put("bytes", task.estimateMemoryBytes());
+            kv.put("activeBytes", getActiveMemoryBytes());
+            kv.put("pooledBlockData", blockDataPool.size());
             ((BOCRacingV2) plugin).getDebugLog().info(DebugLog.Tag.STATE, "DropBlockManager", "DROP_EXEC", kv);
         }
     }
     
     /**
-     * Restore blocks immediately
+     * Offset table for a shape/radius pair, computed once and cached
+     * @return interleaved (dx, dz) pairs
      */
-    private void restoreBlocks(RaceManager.CourseKey courseKey, Map<Location, BlockState> blocksToRestore) {
-        for (Map.Entry<Location, BlockState> entry : blocksToRestore.entrySet()) {
-            Location loc = entry.getKey();
-            BlockState state = entry.getValue();
-            if (state == null) continue;
-            
-            World world = state.getWorld();
-            if (world == null) {
-                // Try to get world by name from location
-                String worldName = loc.getWorld() != null ? loc.getWorld().getName() : null;
-                if (worldName == null) continue;
-                world = Bukkit.getWorld(worldName);
+    private int[] getShapeOffsets(Course.DropSettings.DropShape shape, int radius) {
+        return shapeOffsets
+            .computeIfAbsent(shape, s -> new HashMap<>())
+            .computeIfAbsent(radius, r -> computeShapeOffsets(shape, r));
+    }
+    
+    private static int[] computeShapeOffsets(Course.DropSettings.DropShape shape, int radius) {
+        int side = 2 * radius + 1;
+        int radiusSquared = radius * radius;
+        int[] offsets = new int[side * side * 2];
+        int n = 0;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                if (shape == Course.DropSettings.DropShape.CIRCLE && dx * dx + dz * dz > radiusSquared) {
+                    continue;
+                }
+                offsets[n++] = dx;
+                offsets[n++] = dz;
             }
-            
-            if (world != null) {
-                Block block = world.getBlockAt(loc);
-                // Restore using BlockState
-                state.update(true, false);
+        }
+        return Arrays.copyOf(offsets, n);
+    }
+    
+    /**
+     * Start the shared wheel task if idle (one repeating task for all pending restores)
+     */
+    private void ensureWheelRunning() {
+        if (wheelTask == null) {
+            wheelTask = Bukkit.getScheduler().runTaskTimer(plugin, this::tickWheel, 1L, 1L);
+        }
+    }
+    
+    /**
+     * Advance the wheel, then restore due drops up to the block budget (remainder carries to next tick)
+     */
+    private void tickWheel() {
+        restoreWheel.advance(restoreQueue);
+        
+        int budget = restoreBlocksPerTick;
+        RestorePass pass = new RestorePass();
+        while (budget > 0 && !restoreQueue.isEmpty()) {
+            DropTask task = restoreQueue.peek();
+            budget -= restoreBlocks(task, budget, pass);
+            if (task.isRestored()) {
+                restoreQueue.poll();
+                completeRestore(task, pass.chunks);
+                pass.chunks = 0;
+            }
+        }
+        
+        if (restoreWheel.isEmpty() && restoreQueue.isEmpty()) {
+            // Nothing live is scheduled: drop cancelled entries still in their slots, with their snapshots
+            restoreWheel.clear();
+            wheelTask.cancel();
+            wheelTask = null;
+        }
+    }
+    
+    /**
+     * Restore up to maxBlocks of a task, continuing from its cursor (one chunk lookup per chunk run)
+     * @return number of blocks restored
+     */
+    private int restoreBlocks(DropTask task, int maxBlocks, RestorePass pass) {
+        if (!task.getWorldName().equals(pass.worldName)) {
+            pass.worldName = task.getWorldName();
+            pass.world = Bukkit.getWorld(pass.worldName);
+            pass.chunk = null;
+        }
+        
+        long[] coords = task.getPackedCoords();
+        int start = task.restoreCursor;
+        int end = (int) Math.min(coords.length, (long) start + maxBlocks);
+        if (pass.world == null) {
+            // World unloaded - nothing to restore into; the journal record keeps the blocks for the next startup
+            task.worldMissing = true;
+            task.restoreCursor = coords.length;
+            return coords.length - start;
+        }
+        
+        BlockData[] data = task.getBlockData();
+        for (int i = start; i < end; i++) {
+            long packed = coords[i];
+            if (pass.chunk == null || (packed >> 20) != pass.chunkKey) {
+                pass.chunkKey = packed >> 20;
+                pass.chunk = pass.world.getChunkAt(unpackChunkX(packed), unpackChunkZ(packed));
+                pass.chunks++;
             }
+            pass.chunk.getBlock(unpackLocalX(packed), unpackY(packed), unpackLocalZ(packed)).setBlockData(data[i], false);
+        }
+        task.restoreCursor = end;
+        return end - start;
+    }
+    
+    /**
+     * Bookkeeping once a drop is fully restored
+     */
+    private void completeRestore(DropTask task, int chunks) {
+        RaceManager.CourseKey courseKey = task.getCourseKey();
+        if (task.worldMissing) {
+            // Left live in the journal, so DropJournal.replay heals it once the world is loaded at startup
+            plugin.getLogger().warning("Drop for course " + courseKey.getName() + " not restored: world "
+                + task.getWorldName() + " is not loaded" + (task.journalId != 0 ? " (kept in the journal)" : ""));
+        } else if (journal != null) {
+            journal.retire(task.journalId);
         }
         
         // Debug log restore (if plugin is BOCRacingV2 instance)
         if (plugin instanceof BOCRacingV2) {
             Map<String, Object> kv = new HashMap<>();
             kv.put("course", courseKey.getName());
+            kv.put("blocks", task.getBlockCount());
+            kv.put("chunks", chunks);
             ((BOCRacingV2) plugin).getDebugLog().info(DebugLog.Tag.STATE, "DropBlockManager", "DROP_RESTORE", kv);
         }
         
         // Remove from active tasks
         List<DropTask> tasks = activeDropTasks.get(courseKey);
         if (tasks != null) {
-            tasks.removeIf(task -> task.getBlocksToRestore().equals(blocksToRestore));
+            tasks.remove(task);
             if (tasks.isEmpty()) {
                 activeDropTasks.remove(courseKey);
             }
         }
+        if (activeDropTasks.isEmpty()) {
+            blockDataPool.clear();
+        }
     }
     
     /**
-     * Cancel and restore all blocks for a course
+     * Cancel and restore all blocks for a course (immediately, ignoring the per-tick budget)
      */
     public void cancelAllDrops(RaceManager.CourseKey courseKey) {
-        List<DropTask> tasks = activeDropTasks.remove(courseKey);
+        List<DropTask> tasks = activeDropTasks.get(courseKey);
         if (tasks == null) return;
         
-        for (DropTask task : tasks) {
-            // Cancel the scheduled task
-            Bukkit.getScheduler().cancelTask(task.getTaskId());
-            // Restore blocks immediately
-            restoreBlocks(courseKey, task.getBlocksToRestore());
+        RestorePass pass = new RestorePass();
+        for (DropTask task : new ArrayList<>(tasks)) {
+            // O(1) cancel on the wheel (a queued partial restore is finished here and skipped later)
+            restoreWheel.cancel(task);
+            if (!task.isRestored()) {
+                restoreBlocks(task, Integer.MAX_VALUE, pass);
+            }
+            completeRestore(task, pass.chunks);
+            pass.chunks = 0;
         }
+        restoreQueue.removeIf(DropTask::isRestored);
+    }
+    
+    /**
+     * Approximate memory retained by all active drops (snapshots + shared BlockData pool)
+     */
+    public long getActiveMemoryBytes() {
+        long total = 0;
+        for (List<DropTask> tasks : activeDropTasks.values()) {
+            for (DropTask task : tasks) {
+                total += task.estimateMemoryBytes();
+            }
+        }
+        // Rough per-entry cost of the pool (map node + one shared BlockData)
+        return total + 96L * blockDataPool.size();
     }
     
     /**
@@ -188,5 +396,49 @@ public class DropBlockManager {
             cancelAllDrops(key);
         }
         activeDropTasks.clear();
+        blockDataPool.clear();
+        restoreWheel.clear();
+        restoreQueue.clear();
+        if (wheelTask != null) {
+            wheelTask.cancel();
+            wheelTask = null;
+        }
+    }
+    
+    private BlockData intern(BlockData data) {
+        BlockData shared = blockDataPool.putIfAbsent(data, data);
+        return shared != null ? shared : data;
+    }
+    
+    /**
+     * Pack block coords chunk-major (chunkX:22 | chunkZ:22 | localX:4 | localZ:4 | y:12)
+     * so sorting or grouping by (packed >> 20) groups blocks by chunk
+     */
+    static long packCoord(int x, int y, int z) {
+        return ((long) (x >> 4) & 0x3FFFFFL) << 42
+             | ((long) (z >> 4) & 0x3FFFFFL) << 20
+             | (long) (x & 15) << 16
+             | (long) (z & 15) << 12
+             | (y & 0xFFFL);
+    }
+    
+    static int unpackChunkX(long packed) {
+        return (int) (packed >> 42);
+    }
+    
+    static int unpackChunkZ(long packed) {
+        return (int) (packed << 22 >> 42);
+    }
+    
+    static int unpackLocalX(long packed) {
+        return (int) (packed >> 16) & 15;
+    }
+    
+    static int unpackLocalZ(long packed) {
+        return (int) (packed >> 12) & 15;
+    }
+    
+    static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
     }
 }
@@ -0,0 +1,344 @@
+package com.bocrace.runtime;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of dropped blocks so a crash during DROP_START never leaves holes
+ * Records are framed as [length][crc32][payload]; DROP records carry the original block data,
+ * RETIRE records mark a drop as restored. Appends are group-committed on a writer thread
+ * (one write + one force per batch) and unretired drops are replayed on startup
+ */
+public class DropJournal {
+    
+    private static final String FILE_NAME = "drops.journal";
+    private static final byte TYPE_DROP = 'D';
+    private static final byte TYPE_RETIRE = 'R';
+    
+    /**
+     * Encoded record waiting for the writer thread
+     */
+    private static class PendingRecord {
+        private final byte type;
+        private final ByteBuffer frame;
+        
+        private PendingRecord(byte type, ByteBuffer frame) {
+            this.type = type;
+            this.frame = frame;
+        }
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final File journalFile;
+    private final ConcurrentLinkedQueue<PendingRecord> pending;
+    private final AtomicBoolean flushScheduled;
+    private final ExecutorService writer;
+    private FileChannel channel; // Writer thread only (after open)
+    private long nextId;
+    private int liveDrops; // Writer thread only
+    private boolean enabled;
+    
+    public DropJournal(BOCRacingV2 plugin) {
+        this.plugin = plugin;
+        this.journalFile = new File(plugin.getDataFolder(), FILE_NAME);
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.flushScheduled = new AtomicBoolean(false);
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "BOCRacingV2-DropJournal");
+            t.setDaemon(true);
+            return t;
+        });
+        this.nextId = 1;
+        this.enabled = plugin.getConfig().getBoolean("drops.journal", true);
+    }
+    
+    /**
+     * Replay unretired drops from a previous run (heals the grid), then start a fresh journal
+     */
+    public void replay() {
+        if (!enabled) return;
+        
+        List<byte[]> carried = new ArrayList<>(); // Drops whose world is not loaded yet
+        if (journalFile.exists() && journalFile.length() > 0) {
+            Map<Long, byte[]> unretired = new LinkedHashMap<>();
+            int records = 0;
+            boolean torn = false;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    int crc = in.readInt();
+                    if (length <= 0 || length > 16 * 1024 * 1024) {
+                        torn = true;
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 check = new CRC32();
+                    check.update(payload);
+                    if ((int) check.getValue() != crc) {
+                        torn = true;
+                        break;
+                    }
+                    records++;
+                    
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    byte type = record.readByte();
+                    long id = record.readLong();
+                    nextId = Math.max(nextId, id + 1);
+                    if (type == TYPE_DROP) {
+                        unretired.put(id, payload);
+                    } else if (type == TYPE_RETIRE) {
+                        unretired.remove(id);
+                    }
+                }
+            } catch (EOFException e) {
+                torn = true; // Partial record at the tail (crash mid-write)
+            } catch (IOException e) {
+                plugin.getDebugLog().error("DropJournal", "Failed to read drop journal", e);
+            }
+            
+            int healedDrops = 0;
+            int healedBlocks = 0;
+            for (byte[] payload : unretired.values()) {
+                try {
+                    int blocks = restoreRecord(payload);
+                    if (blocks >= 0) {
+                        healedDrops++;
+                        healedBlocks += blocks;
+                    } else {
+                        carried.add(payload);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    plugin.getDebugLog().error("DropJournal", "Failed to replay drop record", e);
+                }
+            }
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("records", records);
+            kv.put("torn", torn);
+            kv.put("healedDrops", healedDrops);
+            kv.put("healedBlocks", healedBlocks);
+            kv.put("carried", carried.size());
+            plugin.getDebugLog().info(DebugLog.Tag.STATE, "DropJournal", "DROP_JOURNAL_REPLAY", kv);
+            if (healedDrops > 0) {
+                plugin.getLogger().info("Restored " + healedBlocks + " block(s) from " + healedDrops + " interrupted drop(s)");
+            }
+        }
+        
+        open();
+        
+        // Keep drops for unloaded worlds journaled so a later startup can still heal them
+        for (byte[] payload : carried) {
+            enqueue(TYPE_DROP, payload);
+        }
+    }
+    
+    /**
+     * Restore one DROP record into the world
+     * @return blocks restored, or -1 if the world is not loaded
+     */
+    private int restoreRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readByte(); // type
+        in.readLong(); // id
+        String worldName = in.readUTF();
+        World world = Bukkit.getWorld(worldName);
+        if (world == null) {
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("world", worldName);
+            plugin.getDebugLog().warn(DebugLog.Tag.STATE, "DropJournal", "Skipping drop for unloaded world", kv);
+            return -1;
+        }
+        
+        int paletteSize = in.readUnsignedShort();
+        BlockData[] palette = new BlockData[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = Bukkit.createBlockData(in.readUTF());
+        }
+        
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long packed = in.readLong();
+            BlockData data = palette[in.readUnsignedShort()];
+            int x = (DropBlockManager.unpackChunkX(packed) << 4) | DropBlockManager.unpackLocalX(packed);
+            int z = (DropBlockManager.unpackChunkZ(packed) << 4) | DropBlockManager.unpackLocalZ(packed);
+            world.getBlockAt(x, DropBlockManager.unpackY(packed), z).setBlockData(data, false);
+        }
+        return count;
+    }
+    
+    /**
+     * Open a fresh journal file (previous contents were replayed)
+     */
+    private void open() {
+        try {
+            File dataFolder = plugin.getDataFolder();
+            if (!dataFolder.exists()) {
+                dataFolder.mkdirs();
+            }
+            channel = FileChannel.open(journalFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            channel.force(true);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to open drop journal, drops will not survive a crash: " + e.getMessage());
+            plugin.getDebugLog().error("DropJournal", "Failed to open drop journal", e);
+            enabled = false;
+        }
+    }
+    
+    /**
+     * Whether drops are journaled (drops.journal, and the journal file opened)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Journal a drop before its blocks are gone (main thread; returns journal id or 0 if disabled)
+     */
+    public long recordDrop(DropBlockManager.DropTask task) {
+        if (!enabled) return 0;
+        long id = nextId++;
+        
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + task.getBlockCount() * 10);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(TYPE_DROP);
+            out.writeLong(id);
+            out.writeUTF(task.getWorldName());
+            
+            // Palette of distinct (interned) BlockData, then packed coord + palette index per block
+            BlockData[] data = task.getBlockData();
+            Map<BlockData, Integer> palette = new IdentityHashMap<>();
+            List<String> paletteStrings = new ArrayList<>();
+            int[] indices = new int[data.length];
+            for (int i = 0; i < data.length; i++) {
+                Integer index = palette.get(data[i]);
+                if (index == null) {
+                    index = paletteStrings.size();
+                    palette.put(data[i], index);
+                    paletteStrings.add(data[i].getAsString());
+                }
+                indices[i] = index;
+            }
+            out.writeShort(paletteStrings.size());
+            for (String s : paletteStrings) {
+                out.writeUTF(s);
+            }
+            long[] coords = task.getPackedCoords();
+            out.writeInt(coords.length);
+            for (int i = 0; i < coords.length; i++) {
+                out.writeLong(coords[i]);
+                out.writeShort(indices[i]);
+            }
+            out.flush();
+            enqueue(TYPE_DROP, bytes.toByteArray());
+        } catch (IOException e) {
+            plugin.getDebugLog().error("DropJournal", "Failed to encode drop record", e);
+            return 0;
+        }
+        return id;
+    }
+    
+    /**
+     * Mark a drop as restored
+     */
+    public void retire(long id) {
+        if (!enabled || id == 0) return;
+        ByteBuffer payload = ByteBuffer.allocate(9);
+        payload.put(TYPE_RETIRE).putLong(id);
+        enqueue(TYPE_RETIRE, payload.array());
+    }
+    
+    private void enqueue(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        pending.add(new PendingRecord(type, frame));
+        
+        // Group commit: one flush task covers everything queued until it runs
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.execute(this::flush);
+        }
+    }
+    
+    /**
+     * Write and force every queued record in one batch (writer thread)
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<ByteBuffer> batch = new ArrayList<>();
+        PendingRecord record;
+        while ((record = pending.poll()) != null) {
+            batch.add(record.frame);
+            liveDrops += record.type == TYPE_DROP ? 1 : -1;
+        }
+        if (batch.isEmpty() || channel == null) return;
+        
+        try {
+            ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                channel.write(buffers);
+            }
+            if (liveDrops <= 0) {
+                // Everything restored - compact to empty
+                channel.truncate(0);
+                liveDrops = 0;
+            }
+            channel.force(false);
+            
+            Map<String, Object> kv = new HashMap<>();
+            kv.put("records", batch.size());
+            kv.put("liveDrops", liveDrops);
+            plugin.getDebugLog().debug(DebugLog.Tag.PERF, "DropJournal", "Journal group commit", kv);
+        } catch (IOException e) {
+            plugin.getDebugLog().error("DropJournal", "Failed to write drop journal", e);
+        }
+    }
+    
+    /**
+     * Flush pending records and close (on plugin disable, after drops were restored)
+     */
+    public void close() {
+        writer.execute(this::flush);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                writer.shutdownNow();
+                plugin.getLogger().warning("Drop journal writer did not terminate gracefully");
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                plugin.getDebugLog().error("DropJournal", "Failed to close drop journal", e);
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.bocrace.runtime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Hashed timing wheel for pending drop restores
+ * One slot per tick (wrapping), cancellation is O(1) by clearing the task's scheduled flag
+ * and cancelled entries are dropped lazily when their slot comes around, or all at once by clear()
+ * when the owner stops ticking an empty wheel
+ */
+class DropRestoreWheel {
+    
+    private static final int SLOTS = 256; // Power of two (12.8 seconds per revolution)
+    private static final int MASK = SLOTS - 1;
+    
+    private final List<List<DropBlockManager.DropTask>> slots;
+    private long currentTick;
+    private int scheduled;
+    
+    DropRestoreWheel() {
+        this.slots = new ArrayList<>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = 0;
+        this.scheduled = 0;
+    }
+    
+    /**
+     * Schedule a task to come due after delayTicks (minimum 1)
+     */
+    void schedule(DropBlockManager.DropTask task, long delayTicks) {
+        long delay = Math.max(1, delayTicks);
+        long target = currentTick + delay;
+        task.remainingRounds = (int) ((delay - 1) / SLOTS);
+        task.scheduled = true;
+        slots.get((int) (target & MASK)).add(task);
+        scheduled++;
+    }
+    
+    /**
+     * Cancel a scheduled task (O(1); slot entry is discarded lazily)
+     */
+    void cancel(DropBlockManager.DropTask task) {
+        if (task.scheduled) {
+            task.scheduled = false;
+            scheduled--;
+        }
+    }
+    
+    /**
+     * Advance one tick and move every task due on it into the given collection
+     */
+    void advance(Collection<DropBlockManager.DropTask> due) {
+        currentTick++;
+        List<DropBlockManager.DropTask> slot = slots.get((int) (currentTick & MASK));
+        if (slot.isEmpty()) return;
+        
+        Iterator<DropBlockManager.DropTask> it = slot.iterator();
+        while (it.hasNext()) {
+            DropBlockManager.DropTask task = it.next();
+            if (!task.scheduled) {
+                it.remove(); // Cancelled
+            } else if (task.remainingRounds > 0) {
+                task.remainingRounds--;
+            } else {
+                it.remove();
+                task.scheduled = false;
+                scheduled--;
+                due.add(task);
+            }
+        }
+    }
+    
+    boolean isEmpty() {
+        return scheduled == 0;
+    }
+    
+    /**
+     * Drop every slot entry (tasks are expected to be restored or cancelled by the caller)
+     */
+    void clear() {
+        for (List<DropBlockManager.DropTask> slot : slots) {
+            for (DropBlockManager.DropTask task : slot) {
+                task.scheduled = false;
+            }
+            slot.clear();
+        }
+        scheduled = 0;
+    }
+}
@@ -1,6 +1,8 @@
 package com.bocrace.runtime;
 
 import com.bocrace.BOCRacingV2;
+import com.bocrace.db.QueryDao;
+import com.bocrace.db.RankIndex;
 import com.bocrace.model.Course;
 import com.bocrace.model.Course.VolumeRegion;
 import com.bocrace.model.Course.CheckpointRegion;
@@ -15,10 +17,11 @@ import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -29,17 +32,20 @@ public class RaceDetectionTask extends BukkitRunnable {
     private final BOCRacingV2 plugin;
     private final RaceManager raceManager;
     private final CourseManager courseManager;
+    private final RaceStandings standings;
     
     public RaceDetectionTask(BOCRacingV2 plugin, RaceManager raceManager, CourseManager courseManager) {
         this.plugin = plugin;
         this.raceManager = raceManager;
         this.courseManager = courseManager;
+        this.standings = plugin.getRaceStandings();
     }
     
     @Override
     public void run() {
         // Iterate all active runs (create copy to avoid concurrent modification)
         Map<RaceManager.CourseKey, Map<UUID, RaceManager.ActiveRun>> runsMap = raceManager.getActiveRunsMap();
+        Set<RaceManager.CourseKey> liveCourses = new HashSet<>();
         for (Map.Entry<RaceManager.CourseKey, Map<UUID, RaceManager.ActiveRun>> entry : runsMap.entrySet()) {
             RaceManager.CourseKey courseKey = entry.getKey();
             Map<UUID, RaceManager.ActiveRun> runs = entry.getValue();
@@ -54,6 +60,14 @@ public class RaceDetectionTask extends BukkitRunnable {
             List<CheckpointRegion> checkpoints = course.getCheckpoints();
             int totalCheckpoints = checkpoints != null ? checkpoints.size() : 0;
             
+            // Live standings only for MP heats that are in progress
+            RaceManager.MultiLobbyState lobby = raceManager.getMultiLobby(courseKey);
+            boolean liveStandings = standings.isEnabled() && lobby != null &&
+                                    lobby.getState() == RaceManager.MultiLobbyState.LobbyState.IN_PROGRESS;
+            if (liveStandings) {
+                liveCourses.add(courseKey);
+            }
+            
             for (RaceManager.ActiveRun run : runs.values()) {
                 Player player = Bukkit.getPlayer(run.getRacerUuid());
                 if (player == null || !player.isOnline()) continue;
@@ -119,8 +133,69 @@ public class RaceDetectionTask extends BukkitRunnable {
                         }
                     }
                 }
+                
+                // Update live standings (re-keys only when progress changed)
+                if (liveStandings && run.isStarted()) {
+                    updateStanding(courseKey, run, playerLoc, requireCheckpoints ? checkpoints : null, finishRegion);
+                }
+            }
+            
+            if (liveStandings) {
+                standings.retainRacers(courseKey, runs.keySet());
+            }
+        }
+        
+        standings.retainCourses(liveCourses);
+        standings.pushIfDue();
+    }
+    
+    /**
+     * Update a racer's standings key (checkpoints passed, distance to next target, last split)
+     */
+    private void updateStanding(RaceManager.CourseKey courseKey, RaceManager.ActiveRun run, Location playerLoc,
+                                List<CheckpointRegion> checkpoints, VolumeRegion finishRegion) {
+        if (run.isFinished()) {
+            standings.update(courseKey, run.getRacerUuid(), RaceStandings.FINISHED_PROGRESS, 0, run.getElapsedMillis());
+            return;
+        }
+        
+        int passed = checkpoints != null ? run.getNextRequiredCheckpointIndex() - 1 : 0;
+        Long lastSplit = passed > 0 ? run.getCheckpointSplitTimes().get(passed) : null;
+        long splitMillis = lastSplit != null ? lastSplit : 0L;
+        
+        // Target is the next required checkpoint, or the finish once all are passed
+        CheckpointRegion target = null;
+        if (checkpoints != null) {
+            for (CheckpointRegion cp : checkpoints) {
+                if (cp.getCheckpointIndex() == passed + 1) {
+                    target = cp;
+                    break;
+                }
             }
         }
+        
+        int distance = Integer.MAX_VALUE;
+        if (target != null) {
+            distance = distanceBlocks(playerLoc, target.getPoint1(), target.getPoint2());
+        } else if (finishRegion != null) {
+            distance = distanceBlocks(playerLoc, finishRegion.getMin(), finishRegion.getMax());
+        }
+        
+        standings.update(courseKey, run.getRacerUuid(), passed, distance, splitMillis);
+    }
+    
+    /**
+     * Whole-block distance from a location to the center of a cuboid (MAX_VALUE if not comparable)
+     */
+    private int distanceBlocks(Location loc, BlockCoord a, BlockCoord b) {
+        World world = loc.getWorld();
+        if (a == null || b == null || world == null || !world.getName().equals(a.getWorld())) {
+            return Integer.MAX_VALUE;
+        }
+        double dx = loc.getX() - (a.getX() + b.getX() + 1) / 2.0;
+        double dy = loc.getY() - (a.getY() + b.getY() + 1) / 2.0;
+        double dz = loc.getZ() - (a.getZ() + b.getZ() + 1) / 2.0;
+        return (int) Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
     
     /**
@@ -295,10 +370,37 @@ public class RaceDetectionTask extends BukkitRunnable {
         String timeStr = formatTime(elapsedMillis);
         player.sendMessage("§a§lFinished! Time: §f" + timeStr);
         
+        // Compare against the cached profile before this finish updates it
+        if (plugin.getPlayerProfileCache() != null) {
+            QueryDao.PlayerProfile profile = plugin.getPlayerProfileCache().get(run.getRacerUuid());
+            QueryDao.TopTime previousBest = profile != null ? profile.getBests().get(courseKey.getName()) : null;
+            if (previousBest != null) {
+                long delta = elapsedMillis - previousBest.getDurationMillis();
+                String color = delta < 0 ? "§a" : delta > 0 ? "§c" : "§7";
+                player.sendMessage(String.format("§7(%s%s%.3fs §7vs previous best)",
+                    color, delta > 0 ? "+" : delta < 0 ? "-" : "±", Math.abs(delta) / 1000.0));
+            }
+        }
+        
         // Database: Finish run (async)
         if (plugin.getRunDao() != null) {
             plugin.getRunDao().finishRun(run.getRunId(), finishMillis, elapsedMillis, courseKey.getName(), run.getRacerUuid());
         }
+        // Keep the cached top times current without a reload
+        if (plugin.getLeaderboardCache() != null) {
+            plugin.getLeaderboardCache().recordFinish(courseKey.getName(), run.getRunId(), run.getRacerUuid(), player.getName(), elapsedMillis, finishMillis);
+        }
+        // Course rank from the in-memory index (no database round trip)
+        if (plugin.getRankIndex() != null) {
+            RankIndex.Rank rank = plugin.getRankIndex().recordFinish(courseKey.getName(), run.getRacerUuid(), elapsedMillis);
+            if (rank != null) {
+                if (rank.isNewBest()) {
+                    player.sendMessage("§6§lNew personal best!");
+                }
+                player.sendMessage(String.format("§7Course rank: §e#%d §7of §f%d §7(top %.1f%%)",
+                    rank.getRank(), rank.getTotal(), rank.getTopPercent()));
+            }
+        }
         
         // Remove boat if player is in one (for BOAT courses)
         Course course = courseManager.findCourse(courseKey.getName());
@@ -0,0 +1,230 @@
+package com.bocrace.runtime;
+
+import com.bocrace.BOCRacingV2;
+import com.bocrace.util.DebugLog;
+import net.kyori.adventure.bossbar.BossBar;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * Live multiplayer standings (ordered per course, pushed to racers via boss bar)
+ * Entries are re-keyed in O(log n) only when a racer's progress changes;
+ * positions are walked and pushed at a throttled rate
+ */
+public class RaceStandings {
+    
+    /**
+     * Progress value used for racers who already finished (always ahead of racers still on course)
+     */
+    public static final int FINISHED_PROGRESS = Integer.MAX_VALUE;
+    
+    /**
+     * Racer position key (checkpoints passed desc, distance to next target asc, split time asc)
+     */
+    private static final class Entry {
+        private final UUID racerUuid;
+        private final int progress;
+        private final int distanceBlocks;
+        private final long splitMillis;
+        
+        private Entry(UUID racerUuid, int progress, int distanceBlocks, long splitMillis) {
+            this.racerUuid = racerUuid;
+            this.progress = progress;
+            this.distanceBlocks = distanceBlocks;
+            this.splitMillis = splitMillis;
+        }
+        
+        private boolean sameKey(int progress, int distanceBlocks, long splitMillis) {
+            return this.progress == progress && this.distanceBlocks == distanceBlocks && this.splitMillis == splitMillis;
+        }
+    }
+    
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int cmp = Integer.compare(b.progress, a.progress);
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(a.distanceBlocks, b.distanceBlocks);
+        if (cmp != 0) return cmp;
+        cmp = Long.compare(a.splitMillis, b.splitMillis);
+        if (cmp != 0) return cmp;
+        return a.racerUuid.compareTo(b.racerUuid);
+    };
+    
+    /**
+     * Standings for a single in-progress heat
+     */
+    private static class CourseStandings {
+        private final TreeSet<Entry> order = new TreeSet<>(ORDER);
+        private final Map<UUID, Entry> entries = new HashMap<>();
+        private final Map<UUID, Integer> pushedPositions = new HashMap<>();
+        private final Map<UUID, BossBar> bars = new HashMap<>();
+        private int pushedFieldSize;
+        private boolean dirty;
+    }
+    
+    private final BOCRacingV2 plugin;
+    private final Map<RaceManager.CourseKey, CourseStandings> standings;
+    private boolean enabled;
+    private int pushIntervalTicks;
+    private int lastPushTick;
+    
+    public RaceStandings(BOCRacingV2 plugin) {
+        this.plugin = plugin;
+        this.standings = new HashMap<>();
+        loadConfig();
+    }
+    
+    private void loadConfig() {
+        FileConfiguration config = plugin.getConfig();
+        enabled = config.getBoolean("standings.enabled", true);
+        pushIntervalTicks = Math.max(1, config.getInt("standings.pushIntervalTicks", 20));
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Update a racer's position key (no-op if unchanged, otherwise O(log n) re-key)
+     */
+    public void update(RaceManager.CourseKey key, UUID racerUuid, int progress, int distanceBlocks, long splitMillis) {
+        if (!enabled) return;
+        CourseStandings course = standings.computeIfAbsent(key, k -> new CourseStandings());
+        Entry previous = course.entries.get(racerUuid);
+        if (previous != null) {
+            if (previous.sameKey(progress, distanceBlocks, splitMillis)) {
+                return;
+            }
+            course.order.remove(previous);
+        }
+        Entry entry = new Entry(racerUuid, progress, distanceBlocks, splitMillis);
+        course.entries.put(racerUuid, entry);
+        course.order.add(entry);
+        course.dirty = true;
+    }
+    
+    /**
+     * Drop racers that are no longer in the heat (left, DQ'd, cleared)
+     */
+    public void retainRacers(RaceManager.CourseKey key, Set<UUID> racers) {
+        CourseStandings course = standings.get(key);
+        if (course == null) return;
+        Iterator<Map.Entry<UUID, Entry>> it = course.entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<UUID, Entry> e = it.next();
+            if (!racers.contains(e.getKey())) {
+                course.order.remove(e.getValue());
+                course.pushedPositions.remove(e.getKey());
+                hideBar(e.getKey(), course.bars.remove(e.getKey()));
+                it.remove();
+                course.dirty = true;
+            }
+        }
+    }
+    
+    /**
+     * Drop standings for every course not in the given set (heat ended or cancelled)
+     */
+    public void retainCourses(Set<RaceManager.CourseKey> liveCourses) {
+        Iterator<Map.Entry<RaceManager.CourseKey, CourseStandings>> it = standings.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<RaceManager.CourseKey, CourseStandings> e = it.next();
+            if (!liveCourses.contains(e.getKey())) {
+                hideAll(e.getValue());
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Push changed positions to racers (throttled to pushIntervalTicks)
+     */
+    public void pushIfDue() {
+        if (!enabled || standings.isEmpty()) return;
+        int now = Bukkit.getCurrentTick();
+        if (now - lastPushTick < pushIntervalTicks) {
+            return;
+        }
+        lastPushTick = now;
+        
+        for (Map.Entry<RaceManager.CourseKey, CourseStandings> e : standings.entrySet()) {
+            CourseStandings course = e.getValue();
+            if (!course.dirty) continue;
+            course.dirty = false;
+            
+            int fieldSize = course.order.size();
+            boolean fieldChanged = fieldSize != course.pushedFieldSize;
+            course.pushedFieldSize = fieldSize;
+            int changed = 0;
+            int position = 0;
+            for (Entry entry : course.order) {
+                position++;
+                Integer pushed = course.pushedPositions.get(entry.racerUuid);
+                if (!fieldChanged && pushed != null && pushed == position) {
+                    continue;
+                }
+                course.pushedPositions.put(entry.racerUuid, position);
+                pushPosition(course, entry.racerUuid, position, fieldSize);
+                changed++;
+            }
+            
+            if (changed > 0) {
+                Map<String, Object> kv = new HashMap<>();
+                kv.put("course", e.getKey().getName());
+                kv.put("racers", fieldSize);
+                kv.put("changed", changed);
+                plugin.getDebugLog().debug(DebugLog.Tag.PERF, "RaceStandings", "Standings pushed", kv);
+            }
+        }
+    }
+    
+    private void pushPosition(CourseStandings course, UUID racerUuid, int position, int fieldSize) {
+        Component title = Component.text()
+            .append(Component.text("Position ", NamedTextColor.GRAY))
+            .append(Component.text(position + "/" + fieldSize, position == 1 ? NamedTextColor.GOLD : NamedTextColor.YELLOW))
+            .build();
+        float progress = (float) (fieldSize - position + 1) / fieldSize;
+        
+        BossBar bar = course.bars.get(racerUuid);
+        if (bar == null) {
+            bar = BossBar.bossBar(title, progress, BossBar.Color.YELLOW, BossBar.Overlay.PROGRESS);
+            course.bars.put(racerUuid, bar);
+            Player player = Bukkit.getPlayer(racerUuid);
+            if (player != null) {
+                player.showBossBar(bar);
+            }
+        } else {
+            bar.name(title);
+            bar.progress(progress);
+        }
+    }
+    
+    private void hideAll(CourseStandings course) {
+        for (Map.Entry<UUID, BossBar> e : course.bars.entrySet()) {
+            hideBar(e.getKey(), e.getValue());
+        }
+        course.bars.clear();
+    }
+    
+    private void hideBar(UUID racerUuid, BossBar bar) {
+        if (bar == null) return;
+        Player player = Bukkit.getPlayer(racerUuid);
+        if (player != null) {
+            player.hideBossBar(bar);
+        }
+    }
+    
+    /**
+     * Clear all (on plugin disable)
+     */
+    public void clearAll() {
+        for (CourseStandings course : standings.values()) {
+            hideAll(course);
+        }
+        standings.clear();
+    }
+}
@@ -0,0 +1,59 @@
+package com.bocrace.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor adapter for continuing async results on the server thread
+ * Use with CompletableFuture's *Async methods, e.g. future.thenAcceptAsync(result -> ..., mainThread)
+ * so no thread blocks waiting for the result
+ */
+public class MainThreadExecutor implements Executor {
+    
+    private final Plugin plugin;
+    
+    public MainThreadExecutor(Plugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Run on the main thread (inline if already there, dropped if the plugin is disabled)
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (Bukkit.isPrimaryThread()) {
+            command.run();
+            return;
+        }
+        try {
+            Bukkit.getScheduler().runTask(plugin, command);
+        } catch (IllegalPluginAccessException e) {
+            // Plugin disabled while the result was in flight - nothing to continue
+        }
+    }
+    
+    /**
+     * Executor bound to an entity's scheduler (runs where the entity is ticked; dropped if it is removed)
+     */
+    public Executor forEntity(Entity entity) {
+        return command -> {
+            try {
+                entity.getScheduler().run(plugin, task -> command.run(), null);
+            } catch (IllegalPluginAccessException e) {
+                // Plugin disabled while the result was in flight - nothing to continue
+            }
+        };
+    }
+    
+    /**
+     * Executor for replying to a command sender (player's entity scheduler, main thread for console)
+     */
+    public Executor forSender(CommandSender sender) {
+        return sender instanceof Entity ? forEntity((Entity) sender) : this;
+    }
+}
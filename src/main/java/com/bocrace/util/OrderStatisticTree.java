@@ -0,0 +1,141 @@
+package com.bocrace.util;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Order-statistic tree of (time, player) entries (treap with subtree sizes)
+ * Insert, remove and "how many entries are faster" are O(log n) expected; entries with equal
+ * times are kept apart by player UUID. Not thread-safe
+ */
+public class OrderStatisticTree {
+    
+    private static final class Node {
+        private final long time;
+        private final UUID player;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size = 1;
+        
+        private Node(long time, UUID player, int priority) {
+            this.time = time;
+            this.player = player;
+            this.priority = priority;
+        }
+    }
+    
+    private final SplittableRandom random = new SplittableRandom();
+    private Node root;
+    
+    public int size() {
+        return size(root);
+    }
+    
+    public void insert(long time, UUID player) {
+        root = insert(root, new Node(time, player, random.nextInt()));
+    }
+    
+    public void remove(long time, UUID player) {
+        root = remove(root, time, player);
+    }
+    
+    /**
+     * Number of entries with a time strictly less than the given one
+     */
+    public int countFaster(long time) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.time < time) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+    
+    private Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (compare(added.time, added.player, node) < 0) {
+            node.left = insert(node.left, added);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, added);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+    
+    private Node remove(Node node, long time, UUID player) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(time, player, node);
+        if (cmp < 0) {
+            node.left = remove(node.left, time, player);
+        } else if (cmp > 0) {
+            node.right = remove(node.right, time, player);
+        } else {
+            return merge(node.left, node.right);
+        }
+        update(node);
+        return node;
+    }
+    
+    /**
+     * Join two treaps where every entry in a sorts before every entry in b
+     */
+    private Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+    
+    private Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+    
+    private Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+    
+    private static int compare(long time, UUID player, Node node) {
+        int cmp = Long.compare(time, node.time);
+        return cmp != 0 ? cmp : player.compareTo(node.player);
+    }
+    
+    private static void update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+    
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,20 @@
+-- BOCRacingV2 Database Schema v10 (MySQL)
+-- CourseAnalytics and RunRetention now keep their cursor on runs.id (insert order) instead of
+-- (created_millis, id), so runs written late from the outbox with an old created_millis are not skipped.
+-- The old rollup may have missed such runs, so it is rebuilt: course_stats restarts from the runs
+-- RunRetention already deleted (all ABORTED/DQ) and both cursors rewind, letting CourseAnalytics
+-- recount the remaining runs in the background
+
+DELETE FROM course_duration_histogram;
+DELETE FROM course_stats;
+
+INSERT INTO course_stats (course_id, total_runs, finished_runs, aborted_runs, dq_runs)
+SELECT course_id,
+       SUM(runs),
+       0,
+       SUM(CASE WHEN status = 3 THEN runs ELSE 0 END),
+       SUM(CASE WHEN status = 4 THEN runs ELSE 0 END)
+FROM retired_runs
+GROUP BY course_id;
+
+UPDATE rollup_state SET high_water_millis = 0, high_water_id = 0 WHERE name IN ('course_stats', 'retention');
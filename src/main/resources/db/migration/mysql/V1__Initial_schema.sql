@@ -0,0 +1,44 @@
+-- BOCRacingV2 Database Schema v1 (MySQL)
+-- Initial schema for players, runs, and run_checkpoints tables
+-- Same layout as the SQLite script; key columns are VARCHAR because MySQL cannot index TEXT without a prefix length
+
+-- Players table: tracks player UUIDs and last seen timestamps
+CREATE TABLE IF NOT EXISTS players (
+    uuid VARCHAR(36) PRIMARY KEY,
+    last_name VARCHAR(64) NOT NULL,
+    last_seen BIGINT NOT NULL
+) ENGINE=InnoDB;
+
+-- Runs table: stores race run records
+CREATE TABLE IF NOT EXISTS runs (
+    run_id VARCHAR(36) PRIMARY KEY,
+    course_key VARCHAR(191) NOT NULL,
+    course_type VARCHAR(16) NOT NULL,
+    course_file VARCHAR(255),
+    player_uuid VARCHAR(36) NOT NULL,
+    start_mode VARCHAR(16) NOT NULL,
+    require_checkpoints INT NOT NULL,
+    drop_shape VARCHAR(16),
+    status VARCHAR(16) NOT NULL,
+    dq_reason TEXT,
+    start_millis BIGINT,
+    finish_millis BIGINT,
+    duration_millis BIGINT,
+    created_millis BIGINT NOT NULL,
+    CONSTRAINT fk_runs_v1_player FOREIGN KEY (player_uuid) REFERENCES players(uuid)
+) ENGINE=InnoDB;
+
+-- Run checkpoints table: stores checkpoint split times
+CREATE TABLE IF NOT EXISTS run_checkpoints (
+    run_id VARCHAR(36) NOT NULL,
+    checkpoint_index INT NOT NULL,
+    split_millis BIGINT NOT NULL,
+    PRIMARY KEY (run_id, checkpoint_index),
+    CONSTRAINT fk_run_checkpoints_v1_run FOREIGN KEY (run_id) REFERENCES runs(run_id) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Indexes for performance
+CREATE INDEX idx_runs_course_key ON runs(course_key);
+CREATE INDEX idx_runs_player_uuid ON runs(player_uuid);
+CREATE INDEX idx_runs_status ON runs(status);
+CREATE INDEX idx_runs_created_millis ON runs(created_millis);
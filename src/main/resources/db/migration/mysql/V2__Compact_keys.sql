@@ -0,0 +1,67 @@
+-- BOCRacingV2 Database Schema v2 (MySQL)
+-- Integer surrogate keys for players/courses/runs, 16-byte binary UUIDs and numeric run status codes
+-- The v1 tables are renamed to *_v1 (metadata only) and copied over in batches by SchemaBackfill
+-- after startup, so the migration itself does not rewrite any rows
+
+RENAME TABLE run_checkpoints TO run_checkpoints_v1, runs TO runs_v1, players TO players_v1;
+
+-- Players table: uuid is the 16-byte big-endian form of the player UUID
+CREATE TABLE players (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    uuid BINARY(16) NOT NULL,
+    last_name VARCHAR(64) NOT NULL,
+    last_seen BIGINT NOT NULL,
+    UNIQUE KEY uk_players_uuid (uuid)
+) ENGINE=InnoDB;
+
+-- Courses table: one row per course key, referenced by runs
+CREATE TABLE courses (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    course_key VARCHAR(191) NOT NULL,
+    UNIQUE KEY uk_courses_course_key (course_key)
+) ENGINE=InnoDB;
+
+-- Runs table: status codes are defined by RunStatus (0 ACTIVE, 1 STARTED, 2 FINISHED, 3 ABORTED, 4 DQ)
+CREATE TABLE runs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    run_uuid BINARY(16) NOT NULL,
+    course_id INT NOT NULL,
+    player_id BIGINT NOT NULL,
+    course_type VARCHAR(16) NOT NULL,
+    course_file VARCHAR(255),
+    start_mode VARCHAR(16) NOT NULL,
+    require_checkpoints INT NOT NULL,
+    drop_shape VARCHAR(16),
+    status SMALLINT NOT NULL,
+    dq_reason TEXT,
+    start_millis BIGINT,
+    finish_millis BIGINT,
+    duration_millis BIGINT,
+    created_millis BIGINT NOT NULL,
+    UNIQUE KEY uk_runs_run_uuid (run_uuid),
+    CONSTRAINT fk_runs_course FOREIGN KEY (course_id) REFERENCES courses(id),
+    CONSTRAINT fk_runs_player FOREIGN KEY (player_id) REFERENCES players(id)
+) ENGINE=InnoDB;
+
+-- Run checkpoints table: run_id is runs.id
+CREATE TABLE run_checkpoints (
+    run_id BIGINT NOT NULL,
+    checkpoint_index INT NOT NULL,
+    split_millis BIGINT NOT NULL,
+    PRIMARY KEY (run_id, checkpoint_index),
+    CONSTRAINT fk_run_checkpoints_run FOREIGN KEY (run_id) REFERENCES runs(id) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Indexes for performance (course_id, player_id and run_checkpoints.run_id are indexed by their keys)
+CREATE INDEX idx_runs_status ON runs(status);
+CREATE INDEX idx_runs_created_millis ON runs(created_millis);
+
+-- Backfill progress (keyset cursor into the *_v1 table, resumed after a restart)
+CREATE TABLE backfill_state (
+    name VARCHAR(64) PRIMARY KEY,
+    cursor_value VARCHAR(64) NOT NULL,
+    done INT NOT NULL
+) ENGINE=InnoDB;
+
+INSERT INTO backfill_state (name, cursor_value, done) VALUES ('players_v1', '', 0);
+INSERT INTO backfill_state (name, cursor_value, done) VALUES ('runs_v1', '', 0);
@@ -0,0 +1,16 @@
+-- BOCRacingV2 Database Schema v3 (MySQL)
+-- Composite covering indexes for the leaderboard and history queries in QueryDao
+-- Each one matches a query's equality columns followed by its sort column, so the query
+-- reads only the first LIMIT entries in index order with no filesort and no row lookups
+
+-- getTopTimes: course_id = ? AND status = ? ORDER BY duration_millis (player_id/finish_millis make it covering)
+CREATE INDEX idx_runs_course_status_duration ON runs(course_id, status, duration_millis, player_id, finish_millis);
+
+-- getPlayerBest: player_id = ? AND course_id = ? AND status = ? ORDER BY duration_millis
+CREATE INDEX idx_runs_player_course_status_duration ON runs(player_id, course_id, status, duration_millis, finish_millis);
+
+-- getPlayerRecentRuns: player_id = ? ORDER BY created_millis DESC
+CREATE INDEX idx_runs_player_created ON runs(player_id, created_millis);
+
+-- Superseded: status alone is too unselective to help (the foreign key indexes stay)
+DROP INDEX idx_runs_status ON runs;
@@ -0,0 +1,28 @@
+-- BOCRacingV2 Database Schema v4 (MySQL)
+-- Best finished time per (course, player), kept up to date by RunDao in the same transaction
+-- as the finish, so "what's my PB" is a primary key lookup instead of a scan of the player's runs
+
+CREATE TABLE personal_bests (
+    course_id INT NOT NULL,
+    player_id BIGINT NOT NULL,
+    run_id BIGINT NOT NULL,
+    duration_millis BIGINT NOT NULL,
+    finish_millis BIGINT NOT NULL,
+    PRIMARY KEY (course_id, player_id),
+    CONSTRAINT fk_personal_bests_course FOREIGN KEY (course_id) REFERENCES courses(id),
+    CONSTRAINT fk_personal_bests_player FOREIGN KEY (player_id) REFERENCES players(id),
+    CONSTRAINT fk_personal_bests_run FOREIGN KEY (run_id) REFERENCES runs(id) ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+-- Seed from the runs already in the v2 tables (same statement as /bocrace db rebuildpb): one winning run
+-- per (course, player), ties on duration broken by the earliest finish, then the lowest id, so run_id and
+-- finish_millis come from the same run. SchemaBackfill rebuilds again once v1 history is copied
+INSERT INTO personal_bests (course_id, player_id, run_id, duration_millis, finish_millis)
+SELECT w.course_id, w.player_id, w.id, w.duration_millis, COALESCE(w.finish_millis, 0)
+FROM (SELECT DISTINCT course_id, player_id FROM runs
+      WHERE status = 2 AND duration_millis IS NOT NULL) p
+JOIN runs w ON w.id = (
+  SELECT r.id FROM runs r
+  WHERE r.course_id = p.course_id AND r.player_id = p.player_id
+    AND r.status = 2 AND r.duration_millis IS NOT NULL
+  ORDER BY r.duration_millis, r.finish_millis, r.id LIMIT 1);
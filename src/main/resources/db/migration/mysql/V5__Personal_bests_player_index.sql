@@ -0,0 +1,6 @@
+-- BOCRacingV2 Database Schema v5 (MySQL)
+-- A player's personal bests across all courses (profile cache loads); the primary key
+-- (course_id, player_id) only serves lookups by course. MySQL drops the implicit foreign key
+-- index on player_id once this one exists
+
+CREATE INDEX idx_personal_bests_player ON personal_bests(player_id);
@@ -0,0 +1,16 @@
+-- BOCRacingV2 Database Schema v6 (MySQL)
+-- Keyset pagination for /bocrace stats and /bocrace player: pages continue after the last row shown,
+-- (duration_millis, run_uuid) for top times and (created_millis, run_uuid) for run history, so
+-- run_uuid is added right after the sort column as a unique tie-breaker. Every page is then one
+-- index range read of page size + 1 entries, however deep it is
+
+-- getTopTimes / getTopTimesAfter: course_id = ? AND status = ? AND (duration_millis, run_uuid) > (?, ?)
+CREATE INDEX idx_runs_course_status_duration_run ON runs(course_id, status, duration_millis, run_uuid, player_id, finish_millis);
+
+-- getPlayerRecentRuns / getPlayerRunsBefore: player_id = ? AND (created_millis, run_uuid) < (?, ?)
+CREATE INDEX idx_runs_player_created_run ON runs(player_id, created_millis, run_uuid);
+
+-- Superseded by the indexes above (created first, since InnoDB may be using the old ones for the
+-- fk_runs_course / fk_runs_player foreign keys)
+DROP INDEX idx_runs_course_status_duration ON runs;
+DROP INDEX idx_runs_player_created ON runs;
@@ -0,0 +1,31 @@
+-- BOCRacingV2 Database Schema v8 (MySQL)
+-- Per-course run counts and a finish-time histogram, maintained by CourseAnalytics in the background
+-- so /bocrace analytics never scans runs. Runs are rolled up once they are older than
+-- database.analytics.settleMinutes; rollup_state holds the (created_millis, id) high-water mark
+
+CREATE TABLE course_stats (
+    course_id INT PRIMARY KEY,
+    total_runs BIGINT NOT NULL,
+    finished_runs BIGINT NOT NULL,
+    aborted_runs BIGINT NOT NULL,
+    dq_runs BIGINT NOT NULL,
+    CONSTRAINT fk_course_stats_course FOREIGN KEY (course_id) REFERENCES courses(id)
+) ENGINE=InnoDB;
+
+-- Finished runs per duration bucket (duration_millis / 100), for median and p90
+CREATE TABLE course_duration_histogram (
+    course_id INT NOT NULL,
+    bucket INT NOT NULL,
+    runs BIGINT NOT NULL,
+    PRIMARY KEY (course_id, bucket),
+    CONSTRAINT fk_course_duration_histogram_course FOREIGN KEY (course_id) REFERENCES courses(id)
+) ENGINE=InnoDB;
+
+CREATE TABLE rollup_state (
+    name VARCHAR(64) PRIMARY KEY,
+    high_water_millis BIGINT NOT NULL,
+    high_water_id BIGINT NOT NULL,
+    updated_millis BIGINT NOT NULL
+) ENGINE=InnoDB;
+
+INSERT INTO rollup_state (name, high_water_millis, high_water_id, updated_millis) VALUES ('course_stats', 0, 0, 0);
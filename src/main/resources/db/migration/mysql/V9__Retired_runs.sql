@@ -0,0 +1,17 @@
+-- BOCRacingV2 Database Schema v9 (MySQL)
+-- Counters for ABORTED/DQ runs removed by RunRetention (database.retention), per player, course and status,
+-- so run totals survive after the rows themselves are deleted
+
+CREATE TABLE retired_runs (
+    player_id BIGINT NOT NULL,
+    course_id INT NOT NULL,
+    status SMALLINT NOT NULL,
+    runs BIGINT NOT NULL,
+    last_created_millis BIGINT NOT NULL,
+    PRIMARY KEY (player_id, course_id, status),
+    CONSTRAINT fk_retired_runs_player FOREIGN KEY (player_id) REFERENCES players(id),
+    CONSTRAINT fk_retired_runs_course FOREIGN KEY (course_id) REFERENCES courses(id)
+) ENGINE=InnoDB;
+
+-- Retention cursor: (created_millis, id) of the last run retired
+INSERT INTO rollup_state (name, high_water_millis, high_water_id, updated_millis) VALUES ('retention', 0, 0, 0);
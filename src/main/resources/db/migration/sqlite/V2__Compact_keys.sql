@@ -0,0 +1,74 @@
+-- BOCRacingV2 Database Schema v2
+-- Integer surrogate keys for players/courses/runs, 16-byte binary UUIDs and numeric run status codes
+-- The v1 tables are renamed to *_v1 (metadata only) and copied over in batches by SchemaBackfill
+-- after startup, so the migration itself does not rewrite any rows
+
+-- v1 index names are reused below
+DROP INDEX IF EXISTS idx_runs_course_key;
+DROP INDEX IF EXISTS idx_runs_player_uuid;
+DROP INDEX IF EXISTS idx_runs_status;
+DROP INDEX IF EXISTS idx_runs_created_millis;
+
+ALTER TABLE run_checkpoints RENAME TO run_checkpoints_v1;
+ALTER TABLE runs RENAME TO runs_v1;
+ALTER TABLE players RENAME TO players_v1;
+
+-- Players table: uuid is the 16-byte big-endian form of the player UUID
+CREATE TABLE players (
+    id INTEGER PRIMARY KEY,
+    uuid BLOB NOT NULL UNIQUE,
+    last_name TEXT NOT NULL,
+    last_seen BIGINT NOT NULL
+);
+
+-- Courses table: one row per course key, referenced by runs
+CREATE TABLE courses (
+    id INTEGER PRIMARY KEY,
+    course_key TEXT NOT NULL UNIQUE
+);
+
+-- Runs table: status codes are defined by RunStatus (0 ACTIVE, 1 STARTED, 2 FINISHED, 3 ABORTED, 4 DQ)
+CREATE TABLE runs (
+    id INTEGER PRIMARY KEY,
+    run_uuid BLOB NOT NULL UNIQUE,
+    course_id INTEGER NOT NULL,
+    player_id INTEGER NOT NULL,
+    course_type TEXT NOT NULL,
+    course_file TEXT,
+    start_mode TEXT NOT NULL,
+    require_checkpoints INT NOT NULL,
+    drop_shape TEXT,
+    status SMALLINT NOT NULL,
+    dq_reason TEXT,
+    start_millis BIGINT,
+    finish_millis BIGINT,
+    duration_millis BIGINT,
+    created_millis BIGINT NOT NULL,
+    FOREIGN KEY (course_id) REFERENCES courses(id),
+    FOREIGN KEY (player_id) REFERENCES players(id)
+);
+
+-- Run checkpoints table: run_id is runs.id
+CREATE TABLE run_checkpoints (
+    run_id INTEGER NOT NULL,
+    checkpoint_index INT NOT NULL,
+    split_millis BIGINT NOT NULL,
+    PRIMARY KEY (run_id, checkpoint_index),
+    FOREIGN KEY (run_id) REFERENCES runs(id) ON DELETE CASCADE
+);
+
+-- Indexes for performance
+CREATE INDEX idx_runs_course_id ON runs(course_id);
+CREATE INDEX idx_runs_player_id ON runs(player_id);
+CREATE INDEX idx_runs_status ON runs(status);
+CREATE INDEX idx_runs_created_millis ON runs(created_millis);
+
+-- Backfill progress (keyset cursor into the *_v1 table, resumed after a restart)
+CREATE TABLE backfill_state (
+    name TEXT PRIMARY KEY,
+    cursor_value TEXT NOT NULL,
+    done INT NOT NULL
+);
+
+INSERT INTO backfill_state (name, cursor_value, done) VALUES ('players_v1', '', 0);
+INSERT INTO backfill_state (name, cursor_value, done) VALUES ('runs_v1', '', 0);
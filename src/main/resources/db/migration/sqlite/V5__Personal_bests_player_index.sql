@@ -0,0 +1,5 @@
+-- BOCRacingV2 Database Schema v5
+-- A player's personal bests across all courses (profile cache loads); the primary key
+-- (course_id, player_id) only serves lookups by course
+
+CREATE INDEX idx_personal_bests_player ON personal_bests(player_id);
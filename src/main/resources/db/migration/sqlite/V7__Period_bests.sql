@@ -0,0 +1,26 @@
+-- BOCRacingV2 Database Schema v7
+-- Best finished time per (course, period bucket, player) for daily, weekly and season boards
+-- period_type: 0 = DAILY (bucket yyyymmdd), 1 = WEEKLY (ISO week-based year * 100 + week),
+-- 2 = SEASON (year * 100 + season number). Buckets are computed in database.periods.timeZone,
+-- so RunDao maintains the rows in the finish transaction (like personal_bests) rather than SQL
+
+CREATE TABLE period_bests (
+    course_id INTEGER NOT NULL,
+    period_type SMALLINT NOT NULL,
+    bucket INTEGER NOT NULL,
+    player_id INTEGER NOT NULL,
+    run_id INTEGER NOT NULL,
+    duration_millis BIGINT NOT NULL,
+    finish_millis BIGINT NOT NULL,
+    PRIMARY KEY (course_id, period_type, bucket, player_id),
+    FOREIGN KEY (course_id) REFERENCES courses(id),
+    FOREIGN KEY (player_id) REFERENCES players(id),
+    FOREIGN KEY (run_id) REFERENCES runs(id) ON DELETE CASCADE
+) WITHOUT ROWID;
+
+-- getPeriodTopTimes: course_id = ? AND period_type = ? AND bucket = ? ORDER BY duration_millis
+-- (player_id comes from the primary key, so the board never touches the table)
+CREATE INDEX idx_period_bests_board ON period_bests(course_id, period_type, bucket, duration_millis, finish_millis);
+
+-- Existing finished runs are bucketed by SchemaBackfill in the background (keyset over runs.id)
+INSERT INTO backfill_state (name, cursor_value, done) VALUES ('period_bests', '', 0);
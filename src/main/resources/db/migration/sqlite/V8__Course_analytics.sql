@@ -0,0 +1,31 @@
+-- BOCRacingV2 Database Schema v8
+-- Per-course run counts and a finish-time histogram, maintained by CourseAnalytics in the background
+-- so /bocrace analytics never scans runs. Runs are rolled up once they are older than
+-- database.analytics.settleMinutes; rollup_state holds the (created_millis, id) high-water mark
+
+CREATE TABLE course_stats (
+    course_id INTEGER PRIMARY KEY,
+    total_runs BIGINT NOT NULL,
+    finished_runs BIGINT NOT NULL,
+    aborted_runs BIGINT NOT NULL,
+    dq_runs BIGINT NOT NULL,
+    FOREIGN KEY (course_id) REFERENCES courses(id)
+);
+
+-- Finished runs per duration bucket (duration_millis / 100), for median and p90
+CREATE TABLE course_duration_histogram (
+    course_id INTEGER NOT NULL,
+    bucket INTEGER NOT NULL,
+    runs BIGINT NOT NULL,
+    PRIMARY KEY (course_id, bucket),
+    FOREIGN KEY (course_id) REFERENCES courses(id)
+) WITHOUT ROWID;
+
+CREATE TABLE rollup_state (
+    name TEXT PRIMARY KEY,
+    high_water_millis BIGINT NOT NULL,
+    high_water_id BIGINT NOT NULL,
+    updated_millis BIGINT NOT NULL
+);
+
+INSERT INTO rollup_state (name, high_water_millis, high_water_id, updated_millis) VALUES ('course_stats', 0, 0, 0);
@@ -0,0 +1,17 @@
+-- BOCRacingV2 Database Schema v9
+-- Counters for ABORTED/DQ runs removed by RunRetention (database.retention), per player, course and status,
+-- so run totals survive after the rows themselves are deleted
+
+CREATE TABLE retired_runs (
+    player_id INTEGER NOT NULL,
+    course_id INTEGER NOT NULL,
+    status SMALLINT NOT NULL,
+    runs BIGINT NOT NULL,
+    last_created_millis BIGINT NOT NULL,
+    PRIMARY KEY (player_id, course_id, status),
+    FOREIGN KEY (player_id) REFERENCES players(id),
+    FOREIGN KEY (course_id) REFERENCES courses(id)
+) WITHOUT ROWID;
+
+-- Retention cursor: (created_millis, id) of the last run retired
+INSERT INTO rollup_state (name, high_water_millis, high_water_id, updated_millis) VALUES ('retention', 0, 0, 0);
@@ -0,0 +1,94 @@
+package com.bocrace.db;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * EXPLAIN QUERY PLAN for the QueryDao leaderboard and history queries, on a database built by the SQLite
+ * Flyway migrations with the bundled sqlite-jdbc: each query must search its index and never sort
+ */
+class QueryPlanTest {
+    
+    private static final String SORT_STEP = "USE TEMP B-TREE FOR ORDER BY";
+    
+    @TempDir
+    static Path tempDir;
+    
+    private static String jdbcUrl;
+    
+    @BeforeAll
+    static void migrate() {
+        jdbcUrl = "jdbc:sqlite:" + tempDir.resolve("plan.db").toAbsolutePath();
+        Flyway.configure(QueryPlanTest.class.getClassLoader())
+            .dataSource(jdbcUrl, null, null)
+            .locations("classpath:db/migration/sqlite")
+            .load()
+            .migrate();
+    }
+    
+    @Test
+    void topTimesSearchesCourseStatusDurationIndex() throws SQLException {
+        assertPlan(QueryDao.topTimesSql(false), "SEARCH r USING COVERING INDEX idx_runs_course_status_duration_run");
+    }
+    
+    @Test
+    void topTimesPageSearchesCourseStatusDurationIndex() throws SQLException {
+        assertPlan(QueryDao.topTimesSql(true), "SEARCH r USING COVERING INDEX idx_runs_course_status_duration_run");
+    }
+    
+    @Test
+    void playerBestIsPersonalBestsKeyLookup() throws SQLException {
+        assertPlan(QueryDao.PLAYER_BEST_SQL, "SEARCH pb USING PRIMARY KEY (course_id=? AND player_id=?)");
+    }
+    
+    @Test
+    void recentRunsSearchPlayerCreatedIndex() throws SQLException {
+        assertPlan(QueryDao.playerRunsSql(false), "SEARCH r USING INDEX idx_runs_player_created_run");
+    }
+    
+    @Test
+    void olderRunsPageSearchesPlayerCreatedIndex() throws SQLException {
+        assertPlan(QueryDao.playerRunsSql(true), "SEARCH r USING INDEX idx_runs_player_created_run");
+    }
+    
+    private static void assertPlan(String sql, String expectedStep) throws SQLException {
+        List<String> plan = explain(sql);
+        String joined = String.join("\n", plan);
+        assertTrue(plan.stream().anyMatch(step -> step.startsWith(expectedStep)),
+            "Expected \"" + expectedStep + "\" in plan:\n" + joined);
+        assertFalse(joined.contains(SORT_STEP), "Query sorts instead of reading in index order:\n" + joined);
+    }
+    
+    private static List<String> explain(String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection(jdbcUrl);
+             PreparedStatement stmt = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            // The plan does not depend on the values, only on which parameters are bound
+            int parameters = stmt.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                stmt.setNull(i, Types.NULL);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+}